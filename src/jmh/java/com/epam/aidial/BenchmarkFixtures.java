@@ -0,0 +1,73 @@
+package com.epam.aidial;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.config.DockerAuthScheme;
+import com.epam.aidial.service.BuildKitBuilder;
+import com.epam.aidial.service.ConfigService;
+import com.epam.aidial.service.ImageBuilder;
+import com.epam.aidial.service.KanikoBuilder;
+import com.epam.aidial.service.RegistryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import lombok.experimental.UtilityClass;
+import okhttp3.OkHttpClient;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.PropertySourcesPlaceholdersResolver;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+@UtilityClass
+public class BenchmarkFixtures {
+    public static final String REGISTRY = "benchmark-registry";
+
+    @SneakyThrows
+    public AppConfiguration appConfiguration() {
+        StandardEnvironment environment = new StandardEnvironment();
+        MutablePropertySources sources = environment.getPropertySources();
+        sources.addFirst(new MapPropertySource("benchmark", Map.of(
+                "app.docker-registry", REGISTRY,
+                "app.dial-base-url", "http://benchmark-dial")));
+        new YamlPropertySourceLoader()
+                .load("application", new ClassPathResource("application.yaml"))
+                .forEach(sources::addLast);
+
+        Binder binder = new Binder(
+                ConfigurationPropertySources.from(sources),
+                new PropertySourcesPlaceholdersResolver(environment));
+        return binder.bind("app", AppConfiguration.class).get();
+    }
+
+    public RegistryService registryService() {
+        return new RegistryService(
+                new OkHttpClient(),
+                new SimpleMeterRegistry(),
+                REGISTRY,
+                URI.create("https"),
+                "app-%s",
+                "latest",
+                "app-build-cache",
+                "app-base-image",
+                DockerAuthScheme.BASIC,
+                "user",
+                "password",
+                1000,
+                300);
+    }
+
+    public ConfigService configService() {
+        RegistryService registryService = registryService();
+        AppConfiguration appConfiguration = appConfiguration();
+        List<ImageBuilder> imageBuilders = List.of(
+                new KanikoBuilder(registryService, appConfiguration, "/kaniko/.docker/config.json"),
+                new BuildKitBuilder(registryService, appConfiguration, "/home/user/.docker/config.json"));
+        return new ConfigService(registryService, appConfiguration, imageBuilders, "/kaniko/.docker/config.json", true, "numpy\npandas\n", "");
+    }
+}
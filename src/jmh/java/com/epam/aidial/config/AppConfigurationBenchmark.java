@@ -0,0 +1,69 @@
+package com.epam.aidial.config;
+
+import com.epam.aidial.BenchmarkFixtures;
+import com.epam.aidial.kubernetes.knative.V1Service;
+import io.kubernetes.client.openapi.models.V1Container;
+import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1Secret;
+import io.kubernetes.client.util.Yaml;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AppConfigurationBenchmark {
+    private AppConfiguration appConfiguration;
+    private String jobConfigYaml;
+
+    @Setup
+    public void setup() {
+        appConfiguration = BenchmarkFixtures.appConfiguration();
+        jobConfigYaml = Yaml.dump(appConfiguration.getJobConfig());
+    }
+
+    @Benchmark
+    public V1Secret cloneSecretConfig() {
+        return appConfiguration.cloneSecretConfig();
+    }
+
+    @Benchmark
+    public V1Job cloneJobConfig() {
+        return appConfiguration.cloneJobConfig();
+    }
+
+    @Benchmark
+    public V1Service cloneServiceConfig() {
+        return appConfiguration.cloneServiceConfig();
+    }
+
+    @Benchmark
+    public V1Container cloneTemplateContainer() {
+        return appConfiguration.cloneTemplateContainer();
+    }
+
+    @Benchmark
+    public V1Container cloneBuilderContainer() {
+        return appConfiguration.cloneBuilderContainer();
+    }
+
+    @Benchmark
+    public V1Container cloneServiceContainer() {
+        return appConfiguration.cloneServiceContainer();
+    }
+
+    /**
+     * Baseline: the YAML round trip previously used to clone the templates.
+     */
+    @Benchmark
+    public V1Job cloneJobConfigYaml() {
+        return Yaml.loadAs(jobConfigYaml, V1Job.class);
+    }
+}
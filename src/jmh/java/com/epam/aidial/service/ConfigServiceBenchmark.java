@@ -0,0 +1,55 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.BenchmarkFixtures;
+import com.epam.aidial.kubernetes.knative.V1Service;
+import io.kubernetes.client.openapi.models.V1Job;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigServiceBenchmark {
+    private ConfigService configService;
+
+    @Setup
+    public void setup() {
+        configService = BenchmarkFixtures.configService();
+    }
+
+    @Benchmark
+    public V1Job buildJobConfig() {
+        return configService.buildJobConfig("benchmark-app", "files/bucket/sources/", "python3.11", null, null);
+    }
+
+    @Benchmark
+    public V1Service appServiceConfig(Environment environment) {
+        return configService.appServiceConfig("benchmark-app", environment.env, null, null, null, null, null);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Environment {
+        @Param({"1", "50", "500"})
+        private int envSize;
+
+        private Map<String, String> env;
+
+        @Setup
+        public void setup() {
+            env = IntStream.range(0, envSize)
+                    .boxed()
+                    .collect(Collectors.toMap("ENV_VAR_%d"::formatted, "value-%d"::formatted));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.epam.aidial.util;
+
+import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1JobCondition;
+import io.kubernetes.client.openapi.models.V1JobStatus;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KubernetesUtilsBenchmark {
+    private V1Job completedJob;
+    private V1Job runningJob;
+
+    @Setup
+    public void setup() {
+        completedJob = new V1Job()
+                .metadata(new V1ObjectMeta().name("app-ctrl-build-benchmark"))
+                .status(new V1JobStatus()
+                        .addConditionsItem(new V1JobCondition().type("SuccessCriteriaMet").status("False"))
+                        .addConditionsItem(new V1JobCondition().type("Complete").status("True")));
+        runningJob = new V1Job()
+                .metadata(new V1ObjectMeta().name("app-ctrl-build-benchmark"))
+                .status(new V1JobStatus());
+    }
+
+    @Benchmark
+    public boolean extractCompletedJobStatus() {
+        return KubernetesUtils.extractJobCompletionStatus(completedJob);
+    }
+
+    @Benchmark
+    public boolean extractRunningJobStatus() {
+        return KubernetesUtils.extractJobCompletionStatus(runningJob);
+    }
+}
@@ -0,0 +1,30 @@
+package com.epam.aidial.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogScannerBenchmark {
+    private static final String LOG_LINE = "Collecting some-package==1.0.0 (from -r requirements.txt (line 1))\n";
+
+    @Param({"1024", "1048576", "52428800"})
+    private int logSize;
+
+    @Benchmark
+    public String scan() {
+        LogScanner scanner = new LogScanner("AppValidationException: ", 20, 1000);
+        for (int size = 0; size < logSize; size += LOG_LINE.length()) {
+            scanner.accept(LOG_LINE);
+        }
+        return scanner.tail();
+    }
+}
@@ -0,0 +1,36 @@
+package com.epam.aidial.util;
+
+import com.epam.aidial.dto.CreateImageResponseDto;
+import com.epam.aidial.dto.ErrorResponseDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SseUtilsBenchmark {
+    private final CreateImageResponseDto result = new CreateImageResponseDto("benchmark-registry/app-benchmark:latest", "sha256:benchmark");
+    private final ErrorResponseDto error = new ErrorResponseDto("Failed to build image");
+
+    @Benchmark
+    public ServerSentEvent<Object> heartbeat() {
+        return SseUtils.heartbeat();
+    }
+
+    @Benchmark
+    public ServerSentEvent<Object> result() {
+        return SseUtils.result(result);
+    }
+
+    @Benchmark
+    public ServerSentEvent<Object> error() {
+        return SseUtils.error(error);
+    }
+}
@@ -0,0 +1,34 @@
+package com.epam.aidial.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextUtilsBenchmark {
+    private static final String LOG_LINE = "Collecting some-package==1.0.0 (from -r requirements.txt (line 1))\n";
+
+    @Param({"1024", "1048576", "52428800"})
+    private int logSize;
+
+    private String log;
+
+    @Setup
+    public void setup() {
+        log = LOG_LINE.repeat(logSize / LOG_LINE.length() + 1).substring(0, logSize);
+    }
+
+    @Benchmark
+    public String truncateText() {
+        return TextUtils.truncateText(log, 20, 1000);
+    }
+}
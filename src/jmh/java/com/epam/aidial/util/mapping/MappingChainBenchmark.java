@@ -0,0 +1,51 @@
+package com.epam.aidial.util.mapping;
+
+import io.kubernetes.client.openapi.models.V1Container;
+import io.kubernetes.client.openapi.models.V1EnvVar;
+import io.kubernetes.client.openapi.models.V1PodSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.epam.aidial.util.mapping.Mappers.CONTAINER_ENV_FIELD;
+import static com.epam.aidial.util.mapping.Mappers.CONTAINER_NAME;
+import static com.epam.aidial.util.mapping.Mappers.ENV_VAR_NAME;
+import static com.epam.aidial.util.mapping.Mappers.POD_CONTAINERS_FIELD;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MappingChainBenchmark {
+    @Param({"1", "50", "500"})
+    private int envSize;
+
+    private V1PodSpec podSpec;
+    private String lastEnvName;
+
+    @Setup
+    public void setup() {
+        V1Container container = new V1Container().name("container");
+        for (int i = 0; i < envSize; ++i) {
+            container.addEnvItem(new V1EnvVar().name("ENV_VAR_%d".formatted(i)).value("value"));
+        }
+        podSpec = new V1PodSpec().addContainersItem(container);
+        lastEnvName = "ENV_VAR_%d".formatted(envSize - 1);
+    }
+
+    @Benchmark
+    public V1EnvVar getExistingItem() {
+        return new MappingChain<>(podSpec)
+                .getList(POD_CONTAINERS_FIELD, CONTAINER_NAME)
+                .get("container")
+                .getList(CONTAINER_ENV_FIELD, ENV_VAR_NAME)
+                .get(lastEnvName)
+                .data();
+    }
+}
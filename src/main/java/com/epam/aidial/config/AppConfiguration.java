@@ -3,14 +3,17 @@ package com.epam.aidial.config;
 import com.epam.aidial.kubernetes.knative.V1Service;
 import io.kubernetes.client.openapi.models.V1Container;
 import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1Secret;
-import io.kubernetes.client.util.Yaml;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
 @Component
@@ -18,27 +21,35 @@ import java.util.Map;
 public class AppConfiguration {
     @Getter
     private V1Secret secretConfig;
-    private String secretConfigString;
+    private ModelPrototype<V1Secret> secretConfigPrototype;
 
     @Getter
     private V1Job jobConfig;
-    private String jobConfigString;
+    private ModelPrototype<V1Job> jobConfigPrototype;
 
     @Getter
     private V1Service serviceConfig;
-    private String serviceConfigString;
+    private ModelPrototype<V1Service> serviceConfigPrototype;
 
     @Getter
     private V1Container templateContainer;
-    private String templateContainerString;
+    private ModelPrototype<V1Container> templateContainerPrototype;
 
     @Getter
     private V1Container builderContainer;
-    private String builderContainerString;
+    private ModelPrototype<V1Container> builderContainerPrototype;
+
+    @Getter
+    private V1Container buildkitContainer;
+    private ModelPrototype<V1Container> buildkitContainerPrototype;
 
     @Getter
     private V1Container serviceContainer;
-    private String serviceContainerString;
+    private ModelPrototype<V1Container> serviceContainerPrototype;
+
+    @Getter
+    private V1Pod builderPoolPodConfig;
+    private ModelPrototype<V1Pod> builderPoolPodConfigPrototype;
 
     @Getter
     @Setter
@@ -46,61 +57,107 @@ public class AppConfiguration {
 
     public void setSecretConfig(V1Secret secretConfig) {
         this.secretConfig = secretConfig;
-        this.secretConfigString = Yaml.dump(secretConfig);
+        this.secretConfigPrototype = new ModelPrototype<>(secretConfig, V1Secret.class);
     }
 
     public void setJobConfig(V1Job jobConfig) {
         this.jobConfig = jobConfig;
-        this.jobConfigString = Yaml.dump(jobConfig);
+        this.jobConfigPrototype = new ModelPrototype<>(jobConfig, V1Job.class);
     }
 
     public void setServiceConfig(V1Service serviceConfig) {
         this.serviceConfig = serviceConfig;
-        this.serviceConfigString = Yaml.dump(serviceConfig);
+        this.serviceConfigPrototype = new ModelPrototype<>(serviceConfig, V1Service.class);
     }
 
     public void setTemplateContainer(V1Container container) {
         this.templateContainer = container;
-        this.templateContainerString = Yaml.dump(container);
+        this.templateContainerPrototype = new ModelPrototype<>(container, V1Container.class);
     }
 
     public void setBuilderContainer(V1Container container) {
         this.builderContainer = container;
-        this.builderContainerString = Yaml.dump(container);
+        this.builderContainerPrototype = new ModelPrototype<>(container, V1Container.class);
+    }
+
+    public void setBuildkitContainer(V1Container container) {
+        this.buildkitContainer = container;
+        this.buildkitContainerPrototype = new ModelPrototype<>(container, V1Container.class);
     }
 
     public void setServiceContainer(V1Container container) {
         this.serviceContainer = container;
-        this.serviceContainerString = Yaml.dump(container);
+        this.serviceContainerPrototype = new ModelPrototype<>(container, V1Container.class);
+    }
+
+    public void setBuilderPoolPodConfig(V1Pod builderPoolPodConfig) {
+        this.builderPoolPodConfig = builderPoolPodConfig;
+        this.builderPoolPodConfigPrototype = new ModelPrototype<>(builderPoolPodConfig, V1Pod.class);
     }
 
     public V1Secret cloneSecretConfig() {
-        return Yaml.loadAs(secretConfigString, V1Secret.class);
+        return secretConfigPrototype.copy();
     }
 
     public V1Job cloneJobConfig() {
-        return Yaml.loadAs(jobConfigString, V1Job.class);
+        return jobConfigPrototype.copy();
     }
 
     public V1Service cloneServiceConfig() {
-        return Yaml.loadAs(serviceConfigString, V1Service.class);
+        return serviceConfigPrototype.copy();
     }
 
     public V1Container cloneTemplateContainer() {
-        return Yaml.loadAs(templateContainerString, V1Container.class);
+        return templateContainerPrototype.copy();
     }
 
     public V1Container cloneBuilderContainer() {
-        return Yaml.loadAs(builderContainerString, V1Container.class);
+        return builderContainerPrototype.copy();
+    }
+
+    public V1Container cloneBuildkitContainer() {
+        return buildkitContainerPrototype.copy();
     }
 
     public V1Container cloneServiceContainer() {
-        return Yaml.loadAs(serviceContainerString, V1Container.class);
+        return serviceContainerPrototype.copy();
+    }
+
+    public V1Pod cloneBuilderPoolPodConfig() {
+        return builderPoolPodConfigPrototype.copy();
     }
 
     @Data
     public static class RuntimeConfiguration {
         private String image;
         private String profile;
+        // Name of the backend building the apps, e.g. kaniko or buildkit
+        private String builder = "kaniko";
+        // Compression of the layers pushed by the builder, the default of the builder if not set
+        @Nullable
+        private LayerCompression layerCompression;
+        // Repository in the docker registry for the layers cached by the builder, no layer caching if not set
+        @Nullable
+        private String cacheRepository;
+        // How long the cached layers are reused, the default of the builder if not set
+        @Nullable
+        private Duration cacheTtl;
+        // Persistent volume claim with the base images pulled in advance by the Kaniko warmer
+        @Nullable
+        private String baseImageCacheClaim;
+        // Persistent volume claim shared by the builds to cache downloaded and built dependencies, e.g. pip wheels.
+        // Passed as the PIP_CACHE_DIR build argument, PIP_NO_CACHE_DIR=1 if not set, which the template Dockerfile declares
+        @Nullable
+        private String dependencyCacheClaim;
+        // Whether apps are built on an image of the runtime with the allowed packages preinstalled
+        private boolean prebuildBaseImage;
+        // Directory of the sources in apps built by appending them to the prebuilt base image, always built by a builder pod if not set
+        @Nullable
+        private String layerAppendWorkingDir;
+        // Command of apps built by appending their sources, the command of the base image if not set
+        @Nullable
+        private List<String> layerAppendCommand;
+        // Number of idle builder pods kept for the builds of the runtime, no pool if 0
+        private int builderPoolSize;
     }
 }
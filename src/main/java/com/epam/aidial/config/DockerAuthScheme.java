@@ -2,5 +2,6 @@ package com.epam.aidial.config;
 
 public enum DockerAuthScheme {
     NONE,
-    BASIC
+    BASIC,
+    BEARER
 }
@@ -0,0 +1,49 @@
+package com.epam.aidial.config;
+
+import lombok.Data;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pools of the HTTP clients. Short Kubernetes calls and long-lived watches and log streams
+ * use separate pools, so that streams never hold up the connections of short calls.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.http-client")
+public class HttpClientConfiguration {
+    private Pool kubernetes;
+    private Pool kubernetesWatch;
+    private Pool registry;
+
+    @Data
+    public static class Pool {
+        /**
+         * Maximum number of asynchronous requests running at once, others wait in the dispatcher queue.
+         */
+        private int maxRequests;
+        private int maxRequestsPerHost;
+        private int maxIdleConnections;
+        private int keepAliveSec;
+        /**
+         * Whether HTTP/2 is negotiated with TLS servers, multiplexing the requests over fewer connections.
+         */
+        private boolean http2;
+
+        public OkHttpClient.Builder configure(OkHttpClient.Builder builder) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(maxRequests);
+            dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+            return builder.dispatcher(dispatcher)
+                    .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSec, TimeUnit.SECONDS))
+                    .protocols(http2 ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1));
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.epam.aidial.config;
+
+public enum LayerCompression {
+    GZIP,
+    ZSTD,
+    ESTARGZ
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.epam.aidial.config;
+
+import io.kubernetes.client.openapi.ApiClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+@Configuration
+public class MetricsConfig {
+    /**
+     * Asynchronous Kubernetes and registry calls wait in the queues of the OkHttp dispatchers
+     * when the per-host limit of concurrent requests is reached.
+     */
+    @Bean
+    public MeterBinder httpClientMetrics(
+            @Qualifier("buildKubeClient") ApiClient buildKubeClient,
+            @Qualifier("buildKubeWatchClient") ApiClient buildKubeWatchClient,
+            @Qualifier("deployKubeClient") ApiClient deployKubeClient,
+            @Qualifier("deployKubeWatchClient") ApiClient deployKubeWatchClient,
+            OkHttpClient okHttpClient) {
+        return registry -> {
+            bindClient(registry, "kubernetes-build", buildKubeClient::getHttpClient);
+            bindClient(registry, "kubernetes-build-watch", buildKubeWatchClient::getHttpClient);
+            bindClient(registry, "kubernetes-deploy", deployKubeClient::getHttpClient);
+            bindClient(registry, "kubernetes-deploy-watch", deployKubeWatchClient::getHttpClient);
+            bindClient(registry, "registry", () -> okHttpClient);
+        };
+    }
+
+    /**
+     * Container log streams are read on a capped executor, whose queue grows when all its threads are busy with followed logs.
+     */
+    @Bean
+    public MeterBinder logReaderMetrics(ThreadPoolExecutor logReaderExecutor) {
+        return registry -> {
+            Gauge.builder("app.log.reader.queued", logReaderExecutor, executor -> executor.getQueue().size())
+                    .register(registry);
+            Gauge.builder("app.log.reader.active", logReaderExecutor, ThreadPoolExecutor::getActiveCount)
+                    .register(registry);
+        };
+    }
+
+    private static void bindClient(MeterRegistry registry, String client, Supplier<OkHttpClient> httpClient) {
+        bindGauge(registry, "app.http.client.queued", client, httpClient, http -> http.dispatcher().queuedCallsCount());
+        bindGauge(registry, "app.http.client.running", client, httpClient, http -> http.dispatcher().runningCallsCount());
+        bindGauge(registry, "app.http.client.connections", client, httpClient, http -> http.connectionPool().connectionCount());
+        bindGauge(registry, "app.http.client.connections.idle", client, httpClient, http -> http.connectionPool().idleConnectionCount());
+    }
+
+    private static void bindGauge(
+            MeterRegistry registry,
+            String name,
+            String client,
+            Supplier<OkHttpClient> httpClient,
+            ToDoubleFunction<OkHttpClient> value) {
+        Gauge.builder(name, httpClient, supplier -> value.applyAsDouble(supplier.get()))
+                .tag("client", client)
+                .strongReference(true)
+                .register(registry);
+    }
+}
@@ -0,0 +1,22 @@
+package com.epam.aidial.config;
+
+import com.google.gson.JsonElement;
+import io.kubernetes.client.openapi.JSON;
+
+/**
+ * Immutable prototype of a Kubernetes model. The prototype is kept as a JSON tree,
+ * so a deep copy is bound straight from the tree without producing or parsing any text.
+ */
+public class ModelPrototype<T> {
+    private final JsonElement prototype;
+    private final Class<T> type;
+
+    public ModelPrototype(T model, Class<T> type) {
+        this.prototype = JSON.getGson().toJsonTree(model, type);
+        this.type = type;
+    }
+
+    public T copy() {
+        return JSON.getGson().fromJson(prototype, type);
+    }
+}
@@ -8,26 +8,68 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class WebFluxConfig {
     @Bean
     public ApiClient buildKubeClient(
             @Value("${app.kube-config}") String configPath,
-            @Value("${app.build-context:#{null}}") String context) throws IOException {
-        return KubernetesUtils.createClient(configPath, context);
+            @Value("${app.build-context:#{null}}") String context,
+            HttpClientConfiguration httpClientConfiguration) throws IOException {
+        return createClient(configPath, context, httpClientConfiguration.getKubernetes());
+    }
+
+    @Bean
+    public ApiClient buildKubeWatchClient(
+            @Value("${app.kube-config}") String configPath,
+            @Value("${app.build-context:#{null}}") String context,
+            HttpClientConfiguration httpClientConfiguration) throws IOException {
+        return createClient(configPath, context, httpClientConfiguration.getKubernetesWatch());
     }
 
     @Bean
     public ApiClient deployKubeClient(
             @Value("${app.kube-config}") String configPath,
-            @Value("${app.deploy-context:#{null}}") String context) throws IOException {
-        return KubernetesUtils.createClient(configPath, context);
+            @Value("${app.deploy-context:#{null}}") String context,
+            HttpClientConfiguration httpClientConfiguration) throws IOException {
+        return createClient(configPath, context, httpClientConfiguration.getKubernetes());
+    }
+
+    @Bean
+    public ApiClient deployKubeWatchClient(
+            @Value("${app.kube-config}") String configPath,
+            @Value("${app.deploy-context:#{null}}") String context,
+            HttpClientConfiguration httpClientConfiguration) throws IOException {
+        return createClient(configPath, context, httpClientConfiguration.getKubernetesWatch());
     }
 
     @Bean
-    public OkHttpClient okHttpClient() {
-        return new OkHttpClient.Builder()
+    public OkHttpClient okHttpClient(HttpClientConfiguration httpClientConfiguration) {
+        return httpClientConfiguration.getRegistry()
+                .configure(new OkHttpClient.Builder())
                 .build();
     }
+
+    /**
+     * Reads the bodies of container log streams, which block a thread while a followed log waits to be written.
+     * The threads and the queue are capped, so that log streams neither exhaust the threads shared by the application
+     * nor pile up: a log stream is refused once the queue is full.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor logReaderExecutor(
+            @Value("${app.log-reader-threads}") int threads,
+            @Value("${app.log-reader-queue-size}") int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize),
+                Thread.ofPlatform().name("log-reader-", 0).daemon().factory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ApiClient createClient(String configPath, String context, HttpClientConfiguration.Pool pool) throws IOException {
+        ApiClient client = KubernetesUtils.createClient(configPath, context);
+        return client.setHttpClient(pool.configure(client.getHttpClient().newBuilder()).build());
+    }
 }
@@ -0,0 +1,37 @@
+package com.epam.aidial.controller;
+
+import com.epam.aidial.dto.CreateBaseImageResponseDto;
+import com.epam.aidial.service.BaseImageService;
+import com.epam.aidial.service.HeartbeatService;
+import com.epam.aidial.util.SseUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Slf4j
+@RestController
+@RequestMapping("/v1/base-image")
+@RequiredArgsConstructor
+public class BaseImageController {
+    private final BaseImageService baseImageService;
+    private final HeartbeatService heartbeatService;
+
+    /**
+     * Prebuilds the base image of the runtime on demand, e.g. once the cause of a failed prebuild is fixed.
+     */
+    @PostMapping(value = "{runtime}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> create(@PathVariable("runtime") String runtime) {
+        Mono<CreateBaseImageResponseDto> result = baseImageService.prebuild(runtime)
+                .doOnError(e -> log.error("Failed to prebuild base image for {}", runtime, e))
+                .map(CreateBaseImageResponseDto::new);
+
+        return heartbeatService.setupHeartbeats(SseUtils.mapToSseEvent(result));
+    }
+}
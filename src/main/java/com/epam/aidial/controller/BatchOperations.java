@@ -0,0 +1,57 @@
+package com.epam.aidial.controller;
+
+import com.epam.aidial.dto.BatchItemEventDto;
+import com.epam.aidial.dto.BatchResponseDto;
+import com.epam.aidial.dto.ErrorResponseDto;
+import com.epam.aidial.service.HeartbeatService;
+import com.epam.aidial.service.OperationEvent;
+import com.epam.aidial.util.SseUtils;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the operations of a batch request with bounded parallelism on a single event stream.
+ * The events and results of each item are wrapped with its name, and the final result counts the failed items.
+ */
+@Slf4j
+@UtilityClass
+class BatchOperations {
+    static final String ITEM_RESULT = "item-result";
+    static final String ITEM_ERROR = "item-error";
+
+    <T> Flux<ServerSentEvent<Object>> execute(
+            HeartbeatService heartbeatService,
+            List<T> items,
+            Function<T, String> name,
+            BiFunction<T, Consumer<OperationEvent>, Mono<?>> operation,
+            int concurrency) {
+        OperationEventSink events = new OperationEventSink();
+        AtomicInteger failed = new AtomicInteger();
+        Flux<ServerSentEvent<Object>> results = Flux.fromIterable(items)
+                .flatMap(item -> {
+                    String itemName = name.apply(item);
+                    Consumer<OperationEvent> listener = event -> events.accept(
+                            new OperationEvent(event.type(), new BatchItemEventDto(itemName, event.data())));
+                    return Mono.defer(() -> operation.apply(item, listener))
+                            .map(result -> SseUtils.event(ITEM_RESULT, new BatchItemEventDto(itemName, result)))
+                            .onErrorResume(e -> {
+                                log.error("Batch operation failed for {}", itemName, e);
+                                failed.incrementAndGet();
+                                return Mono.just(SseUtils.event(
+                                        ITEM_ERROR, new BatchItemEventDto(itemName, new ErrorResponseDto(e.getMessage()))));
+                            });
+                }, concurrency)
+                .concatWith(Mono.fromSupplier(() -> SseUtils.result(new BatchResponseDto(items.size() - failed.get(), failed.get()))));
+
+        return heartbeatService.setupHeartbeats(events.asSseEvents(), results);
+    }
+}
@@ -1,14 +1,19 @@
 package com.epam.aidial.controller;
 
+import com.epam.aidial.dto.BatchDeploymentRequestDto;
 import com.epam.aidial.dto.CreateDeploymentRequestDto;
 import com.epam.aidial.dto.CreateDeploymentResponseDto;
 import com.epam.aidial.dto.DeleteImageResponseDto;
+import com.epam.aidial.dto.GetApplicationLogsRequestDto;
 import com.epam.aidial.dto.GetApplicationLogsResponseDto;
+import com.epam.aidial.dto.GetDeploymentResponseDto;
+import com.epam.aidial.dto.ListDeploymentsResponseDto;
 import com.epam.aidial.service.DeployService;
 import com.epam.aidial.service.HeartbeatService;
 import com.epam.aidial.util.SseUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -17,10 +22,13 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.annotation.Nullable;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -32,17 +40,40 @@ public class DeploymentController {
     private final DeployService deployService;
     private final HeartbeatService heartbeatService;
 
+    @Value("${app.max-concurrent-batch-operations}")
+    private final int maxConcurrentBatchOperations;
+
     @PostMapping(value = "{name}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<ServerSentEvent<Object>> create(
             @PathVariable("name") String name,
             @RequestBody CreateDeploymentRequestDto request) {
         Map<String, String> env = Objects.requireNonNullElse(request.env(), Map.of());
+        OperationEventSink events = new OperationEventSink();
         Mono<CreateDeploymentResponseDto> result = deployService.deploy(
-                name, env, request.image(), request.initialScale(), request.minScale(), request.maxScale())
+                name, env, request.image(), request.initialScale(), request.minScale(), request.maxScale(), events)
                 .doOnError(e -> log.error("Failed to deploy service {}", name, e))
                 .map(CreateDeploymentResponseDto::new);
 
-        return heartbeatService.setupHeartbeats(SseUtils.mapToSseEvent(result));
+        return heartbeatService.setupHeartbeats(events.asSseEvents(), SseUtils.mapToSseEvent(result));
+    }
+
+    @PostMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> executeAll(@RequestBody BatchDeploymentRequestDto request) {
+        List<BatchDeploymentRequestDto.Operation> operations = Objects.requireNonNullElse(request.operations(), List.of());
+        return BatchOperations.execute(heartbeatService, operations, BatchDeploymentRequestDto.Operation::name, (operation, events) ->
+                switch (operation.type()) {
+                    case DEPLOY -> deployService.deploy(
+                                    operation.name(),
+                                    Objects.requireNonNullElse(operation.env(), Map.of()),
+                                    operation.image(),
+                                    operation.initialScale(),
+                                    operation.minScale(),
+                                    operation.maxScale(),
+                                    events)
+                            .map(CreateDeploymentResponseDto::new);
+                    case UNDEPLOY -> deployService.undeploy(operation.name())
+                            .map(DeleteImageResponseDto::new);
+                }, maxConcurrentBatchOperations);
     }
 
     @DeleteMapping(value = "{name}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
@@ -54,10 +85,45 @@ public class DeploymentController {
         return heartbeatService.setupHeartbeats(SseUtils.mapToSseEvent(result));
     }
 
-    @GetMapping(value = "{name}/logs")
-    public Mono<GetApplicationLogsResponseDto> logs(@PathVariable("name") String name) {
-        return deployService.logs(name)
-                .map(GetApplicationLogsResponseDto::new)
+    @GetMapping
+    public Mono<ListDeploymentsResponseDto> list() {
+        return deployService.list()
+                .map(ListDeploymentsResponseDto::new)
+                .doOnError(e -> log.error("Failed to list deployments", e));
+    }
+
+    @GetMapping(value = "{name}")
+    public Mono<GetDeploymentResponseDto> get(@PathVariable("name") String name) {
+        return deployService.status(name)
+                .doOnError(e -> log.error("Failed to retrieve deployment status for {}", name, e));
+    }
+
+    @GetMapping(value = "{name}/logs", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<GetApplicationLogsResponseDto> logs(@PathVariable("name") String name, GetApplicationLogsRequestDto request) {
+        return readLogs(name, request)
+                .collectList()
+                .map(GetApplicationLogsResponseDto::new);
+    }
+
+    @GetMapping(value = "{name}/logs", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<GetApplicationLogsResponseDto.LogEntry> streamLogs(@PathVariable("name") String name, GetApplicationLogsRequestDto request) {
+        return readLogs(name, request);
+    }
+
+    private Flux<GetApplicationLogsResponseDto.LogEntry> readLogs(String name, GetApplicationLogsRequestDto request) {
+        List<String> cursors = Objects.requireNonNullElse(request.cursor(), List.of());
+        return deployService.logs(name, request.tailLines(), request.limitBytes(), request.since(), cursors)
                 .doOnError(e -> log.error("Failed to retrieve logs for {}", name, e));
     }
+
+    @GetMapping(value = "{name}/logs/follow", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<byte[]> followLogs(
+            @PathVariable("name")
+            String name,
+            @Nullable
+            @RequestParam(value = "tailLines", required = false)
+            Integer tailLines) {
+        return deployService.followLogs(name, tailLines)
+                .doOnError(e -> log.error("Failed to follow logs for {}", name, e));
+    }
 }
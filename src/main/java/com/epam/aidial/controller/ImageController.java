@@ -1,8 +1,11 @@
 package com.epam.aidial.controller;
 
+import com.epam.aidial.dto.BatchImageRequestDto;
+import com.epam.aidial.dto.BuildPriority;
 import com.epam.aidial.dto.CreateImageRequestDto;
 import com.epam.aidial.dto.CreateImageResponseDto;
 import com.epam.aidial.dto.DeleteImageResponseDto;
+import com.epam.aidial.dto.GetImageResponseDto;
 import com.epam.aidial.service.BuildService;
 import com.epam.aidial.service.HeartbeatService;
 import com.epam.aidial.util.SseUtils;
@@ -13,6 +16,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -23,6 +27,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.annotation.Nullable;
 
+import java.util.List;
 import java.util.Objects;
 
 @Slf4j
@@ -38,6 +43,9 @@ public class ImageController {
     @Value("${app.default-runtime}")
     private final String pythonDefaultRuntime;
 
+    @Value("${app.max-concurrent-batch-operations}")
+    private final int maxConcurrentBatchOperations;
+
     @PostMapping(value = "{name}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<ServerSentEvent<Object>> create(
             @Nullable
@@ -50,18 +58,38 @@ public class ImageController {
             String name,
             @RequestBody
             CreateImageRequestDto request) {
-        String jwt = StringUtils.startsWithIgnoreCase(authorization, AUTHORIZATION_PREFIX)
-                ? authorization.substring(AUTHORIZATION_PREFIX.length()).trim()
-                : null;
+        BuildService.BuildParameters buildParameters = buildParameters(
+                name, request.sources(), apiKey, authorization, request.runtime(), request.priority());
+        boolean streamLogs = Boolean.TRUE.equals(request.streamLogs());
+        OperationEventSink events = new OperationEventSink(streamLogs);
+        Mono<CreateImageResponseDto> result = buildService.build(buildParameters, streamLogs, events)
+                .doOnError(e -> log.error("Failed to create image {}", name, e));
 
-        String runtime = Objects.requireNonNullElse(request.runtime(), pythonDefaultRuntime);
-        BuildService.BuildParameters buildParameters = new BuildService.BuildParameters(
-                name, request.sources(), apiKey, jwt, runtime);
-        Mono<CreateImageResponseDto> result = buildService.build(buildParameters)
-                .doOnError(e -> log.error("Failed to create image {}", name, e))
-                .map(CreateImageResponseDto::new);
+        return heartbeatService.setupHeartbeats(events.asSseEvents(), SseUtils.mapToSseEvent(result));
+    }
 
-        return heartbeatService.setupHeartbeats(SseUtils.mapToSseEvent(result));
+    @PostMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> createAll(
+            @Nullable
+            @RequestHeader("api-key")
+            String apiKey,
+            @Nullable
+            @RequestHeader("Authorization")
+            String authorization,
+            @RequestBody
+            BatchImageRequestDto request) {
+        List<BatchImageRequestDto.Item> images = Objects.requireNonNullElse(request.images(), List.of());
+        return BatchOperations.execute(heartbeatService, images, BatchImageRequestDto.Item::name, (image, events) -> {
+            BuildService.BuildParameters buildParameters = buildParameters(
+                    image.name(), image.sources(), apiKey, authorization, image.runtime(), image.priority());
+            return buildService.build(buildParameters, false, events);
+        }, maxConcurrentBatchOperations);
+    }
+
+    @GetMapping(value = "{name}")
+    public Mono<GetImageResponseDto> get(@PathVariable("name") String name) {
+        return buildService.status(name)
+                .doOnError(e -> log.error("Failed to retrieve image status for {}", name, e));
     }
 
     @DeleteMapping(value = "{name}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
@@ -72,4 +100,24 @@ public class ImageController {
 
         return heartbeatService.setupHeartbeats(SseUtils.mapToSseEvent(result));
     }
+
+    private BuildService.BuildParameters buildParameters(
+            String name,
+            String sources,
+            @Nullable String apiKey,
+            @Nullable String authorization,
+            @Nullable String runtime,
+            @Nullable BuildPriority priority) {
+        String jwt = StringUtils.startsWithIgnoreCase(authorization, AUTHORIZATION_PREFIX)
+                ? authorization.substring(AUTHORIZATION_PREFIX.length()).trim()
+                : null;
+
+        return new BuildService.BuildParameters(
+                name,
+                sources,
+                apiKey,
+                jwt,
+                Objects.requireNonNullElse(runtime, pythonDefaultRuntime),
+                Objects.requireNonNullElse(priority, BuildPriority.NORMAL));
+    }
 }
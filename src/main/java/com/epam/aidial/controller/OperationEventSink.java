@@ -0,0 +1,76 @@
+package com.epam.aidial.controller;
+
+import com.epam.aidial.dto.LogEventDto;
+import com.epam.aidial.service.OperationEvent;
+import com.epam.aidial.util.SseUtils;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Buffers the events of an operation until they are streamed to the caller.
+ * Logs are only relayed if the caller asked for them, and are dropped rather than buffered
+ * without limit when the caller falls behind, in which case the caller is told how many once it catches up.
+ */
+class OperationEventSink implements Consumer<OperationEvent> {
+    private static final Duration EMIT_TIMEOUT = Duration.ofSeconds(1);
+    private static final int MAX_PENDING_LOGS = 1000;
+
+    private final Sinks.Many<OperationEvent> events = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicInteger pendingLogs = new AtomicInteger();
+    private final AtomicInteger droppedLogs = new AtomicInteger();
+    private final boolean logs;
+    private volatile String droppedContainer;
+
+    OperationEventSink() {
+        this(false);
+    }
+
+    OperationEventSink(boolean logs) {
+        this.logs = logs;
+    }
+
+    @Override
+    public void accept(OperationEvent event) {
+        if (isLog(event)) {
+            if (!logs) {
+                return;
+            }
+
+            if (pendingLogs.incrementAndGet() > MAX_PENDING_LOGS) {
+                pendingLogs.decrementAndGet();
+                droppedContainer = ((LogEventDto) event.data()).container();
+                droppedLogs.incrementAndGet();
+                return;
+            }
+        }
+
+        events.emitNext(event, Sinks.EmitFailureHandler.busyLooping(EMIT_TIMEOUT));
+    }
+
+    public Flux<ServerSentEvent<Object>> asSseEvents() {
+        return events.asFlux()
+                .concatMapIterable(event -> {
+                    // Logs are only dropped while the limit is reached, so they are all counted once none is pending
+                    if (isLog(event) && pendingLogs.decrementAndGet() == 0) {
+                        int dropped = droppedLogs.getAndSet(0);
+                        if (dropped > 0) {
+                            return List.of(event, OperationEvent.log(new LogEventDto(
+                                    droppedContainer, "%d log lines were dropped as they were not received in time".formatted(dropped))));
+                        }
+                    }
+
+                    return List.of(event);
+                })
+                .map(event -> SseUtils.event(event.type(), event.data()));
+    }
+
+    private static boolean isLog(OperationEvent event) {
+        return OperationEvent.LOG.equals(event.type());
+    }
+}
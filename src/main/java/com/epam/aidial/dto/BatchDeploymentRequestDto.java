@@ -0,0 +1,22 @@
+package com.epam.aidial.dto;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+public record BatchDeploymentRequestDto(List<Operation> operations) {
+    public record Operation(
+            Type type,
+            String name,
+            @Nullable Map<String, String> env,
+            @Nullable String image,
+            @Nullable Integer initialScale,
+            @Nullable Integer minScale,
+            @Nullable Integer maxScale) {
+    }
+
+    public enum Type {
+        DEPLOY, UNDEPLOY
+    }
+}
@@ -0,0 +1,14 @@
+package com.epam.aidial.dto;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+public record BatchImageRequestDto(List<Item> images) {
+    public record Item(
+            String name,
+            String sources,
+            @Nullable String runtime,
+            @Nullable BuildPriority priority) {
+    }
+}
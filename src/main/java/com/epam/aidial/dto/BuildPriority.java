@@ -0,0 +1,5 @@
+package com.epam.aidial.dto;
+
+public enum BuildPriority {
+    LOW, NORMAL, HIGH
+}
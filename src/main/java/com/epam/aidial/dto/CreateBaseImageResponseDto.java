@@ -0,0 +1,7 @@
+package com.epam.aidial.dto;
+
+/**
+ * @param image the prebuilt base image pinned by digest
+ */
+public record CreateBaseImageResponseDto(String image) {
+}
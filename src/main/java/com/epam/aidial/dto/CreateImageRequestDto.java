@@ -4,5 +4,7 @@ import org.jetbrains.annotations.Nullable;
 
 public record CreateImageRequestDto(
         String sources,
-        @Nullable String runtime) {
+        @Nullable String runtime,
+        @Nullable BuildPriority priority,
+        @Nullable Boolean streamLogs) {
 }
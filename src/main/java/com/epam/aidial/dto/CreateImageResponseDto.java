@@ -1,4 +1,9 @@
 package com.epam.aidial.dto;
 
-public record CreateImageResponseDto(String image) {
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * @param digest the digest of the pushed image, so that it can be deployed pinned as image@digest
+ */
+public record CreateImageResponseDto(String image, @Nullable String digest) {
 }
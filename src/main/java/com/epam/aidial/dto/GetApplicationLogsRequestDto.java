@@ -0,0 +1,13 @@
+package com.epam.aidial.dto;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.List;
+
+public record GetApplicationLogsRequestDto(
+        @Nullable Integer tailLines,
+        @Nullable Integer limitBytes,
+        @Nullable Instant since,
+        @Nullable List<String> cursor) {
+}
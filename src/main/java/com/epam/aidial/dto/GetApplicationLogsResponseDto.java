@@ -1,8 +1,10 @@
 package com.epam.aidial.dto;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.util.List;
 
 public record GetApplicationLogsResponseDto(List<LogEntry> logs) {
-    public record LogEntry(String instance, String content) {
+    public record LogEntry(String instance, String content, @Nullable String cursor) {
     }
 }
@@ -0,0 +1,16 @@
+package com.epam.aidial.dto;
+
+import org.jetbrains.annotations.Nullable;
+
+public record GetDeploymentResponseDto(
+        String name,
+        Status status,
+        @Nullable String url,
+        @Nullable String message,
+        int instances) {
+    public enum Status {
+        DEPLOYING,
+        READY,
+        FAILED
+    }
+}
@@ -0,0 +1,15 @@
+package com.epam.aidial.dto;
+
+import org.jetbrains.annotations.Nullable;
+
+public record GetImageResponseDto(
+        String name,
+        Status status,
+        @Nullable String image,
+        @Nullable String message) {
+    public enum Status {
+        BUILDING,
+        READY,
+        FAILED
+    }
+}
@@ -0,0 +1,6 @@
+package com.epam.aidial.dto;
+
+import java.util.List;
+
+public record ListDeploymentsResponseDto(List<GetDeploymentResponseDto> deployments) {
+}
@@ -0,0 +1,15 @@
+package com.epam.aidial.dto;
+
+public record ProgressEventDto(Stage stage) {
+    public enum Stage {
+        SECRET_CREATED,
+        JOB_CREATED,
+        JOB_SCHEDULED,
+        VALIDATING,
+        BUILDING,
+        SERVICE_CREATED,
+        REVISION_CREATED,
+        REVISION_READY,
+        READY
+    }
+}
@@ -0,0 +1,4 @@
+package com.epam.aidial.dto;
+
+public record QueuePositionEventDto(int position) {
+}
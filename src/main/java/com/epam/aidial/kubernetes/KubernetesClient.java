@@ -1,315 +1,565 @@
 package com.epam.aidial.kubernetes;
 
 import com.epam.aidial.kubernetes.knative.V1Service;
+import com.epam.aidial.kubernetes.knative.V1ServiceList;
 import com.epam.aidial.util.KubernetesUtils;
-import com.google.gson.reflect.TypeToken;
+import com.epam.aidial.util.LogUtils;
+import com.epam.aidial.util.MetricsUtils;
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.openapi.ApiCallback;
 import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.JSON;
 import io.kubernetes.client.openapi.apis.BatchV1Api;
 import io.kubernetes.client.openapi.apis.CoreV1Api;
 import io.kubernetes.client.openapi.apis.CustomObjectsApi;
+import io.kubernetes.client.openapi.models.V1DeleteOptions;
 import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1JobList;
 import io.kubernetes.client.openapi.models.V1ObjectMeta;
 import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1PodList;
+import io.kubernetes.client.openapi.models.V1Preconditions;
+import io.kubernetes.client.openapi.models.V1ResourceQuotaList;
 import io.kubernetes.client.openapi.models.V1Secret;
-import io.kubernetes.client.openapi.models.V1Status;
+import io.kubernetes.client.util.CallGenerator;
 import io.kubernetes.client.util.ModelMapper;
-import io.kubernetes.client.util.Watch;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.Call;
-import org.apache.commons.lang3.Validate;
+import okhttp3.Callback;
+import okhttp3.Response;
+import okio.BufferedSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 @Slf4j
-@RequiredArgsConstructor
 public class KubernetesClient {
+    public static final String BUILDER_POOL_LABEL = "app-ctrl/builder-pool";
     private static final String SERVICES = "services";
-    private static final TypeToken<Watch.Response<V1Job>> JOB_TYPE_TOKEN = new TypeToken<>() {
-    };
-    private static final TypeToken<Watch.Response<V1Service>> SERVICE_TYPE_TOKEN = new TypeToken<>() {
-    };
+    private static final String JOBS = "jobs";
+    private static final String PODS = "pods";
+    private static final String KNATIVE_SERVICE_LABEL = "serving.knative.dev/service";
+    private static final String JOB_NAME_LABEL = "job-name";
+    private static final long MAX_LOG_CHUNK_BYTES = 16 * 1024;
     private static final String FOREGROUND_POLICY = "Foreground";
-    private static final String NAME_SELECTOR_PREFIX = "metadata.name=";
-
-    private final ApiClient apiClient;
+    private static final String BACKGROUND_POLICY = "Background";
+    private static final int HTTP_CONFLICT = 409;
+    private static final String REQUEST_METRIC = "app.kubernetes.requests";
+    private static final String WATCH_REQUEST_METRIC = "app.kubernetes.watch.requests";
+
+    private final ApiClient watchClient;
+    private final Scheduler logReader;
+    private final MeterRegistry meterRegistry;
+    private final CoreV1Api coreApi;
+    private final BatchV1Api batchApi;
+    private final CustomObjectsApi customObjectsApi;
+    private final CoreV1Api watchCoreApi;
+    private final BatchV1Api watchBatchApi;
+    private final CustomObjectsApi watchCustomObjectsApi;
+    private final Map<String, ResourceWatcher<V1Job>> jobWatchers = new ConcurrentHashMap<>();
+    private final Map<String, ResourceWatcher<V1Service>> serviceWatchers = new ConcurrentHashMap<>();
+    private final Map<String, ResourceWatcher<V1Pod>> knativeServicePodWatchers = new ConcurrentHashMap<>();
+    private final Map<String, ResourceWatcher<V1Pod>> jobPodWatchers = new ConcurrentHashMap<>();
+    private final Map<String, ResourceWatcher<V1Pod>> builderPoolPodWatchers = new ConcurrentHashMap<>();
+
+    /**
+     * @param apiClient   the client for short calls
+     * @param watchClient the client for long-lived watches and log streams, which must have no read timeout
+     * @param logReader   the scheduler reading the log streams, whose threads block while a followed log waits to be written
+     */
+    public KubernetesClient(ApiClient apiClient, ApiClient watchClient, Scheduler logReader, MeterRegistry meterRegistry) {
+        this.watchClient = watchClient;
+        this.logReader = logReader;
+        this.meterRegistry = meterRegistry;
+        // The API stubs hold no state of their own, so they are shared by all requests
+        this.coreApi = new CoreV1Api(apiClient);
+        this.batchApi = new BatchV1Api(apiClient);
+        this.customObjectsApi = new CustomObjectsApi(apiClient);
+        this.watchCoreApi = new CoreV1Api(watchClient);
+        this.watchBatchApi = new BatchV1Api(watchClient);
+        this.watchCustomObjectsApi = new CustomObjectsApi(watchClient);
+    }
 
     public Mono<Void> createSecret(String namespace, V1Secret secret) {
-        return Mono.create(sink -> {
-            V1ObjectMeta metadata = secret.getMetadata();
-            String name = metadata.getName();
-
-            CoreV1Api coreApi = new CoreV1Api(apiClient);
+        String name = secret.getMetadata().getName();
+        return timed("createSecret", Mono.defer(() -> {
             log.info("Creating secret {}", name);
-            try {
-                coreApi.createNamespacedSecret(namespace, secret)
-                        .executeAsync(new NoProgressApiCallback<>() {
-                            @Override
-                            public void onFailure(ApiException e, int i, Map<String, List<String>> map) {
-                                sink.error(e);
-                            }
-
-                            @Override
-                            public void onSuccess(V1Secret state, int i, Map<String, List<String>> map) {
-                                log.info("Secret {} has been successfully created", name);
-                                sink.success();
-                            }
-                        });
-            } catch (ApiException e) {
-                sink.error(e);
-            }
-        });
+            return execute(coreApi.createNamespacedSecret(namespace, secret)::executeAsync)
+                    .doOnNext(created -> log.info("Secret {} has been successfully created", name))
+                    .then();
+        }));
     }
 
     public Mono<Boolean> deleteSecret(String namespace, String name) {
-        return handleMissing(Mono.create(sink -> {
-            CoreV1Api coreApi = new CoreV1Api(apiClient);
+        return timed("deleteSecret", handleMissing(Mono.defer(() -> {
             log.info("Deleting secret {}", name);
-            try {
-                coreApi.deleteNamespacedSecret(name, namespace)
-                        .executeAsync(new NoProgressApiCallback<>() {
-                            @Override
-                            public void onFailure(ApiException e, int i, Map<String, List<String>> map) {
-                                sink.error(e);
-                            }
-
-                            @Override
-                            public void onSuccess(V1Status state, int i, Map<String, List<String>> map) {
-                                log.info("Secret {} has been deleted", name);
-                                sink.success();
-                            }
-                        });
-            } catch (ApiException e) {
-                sink.error(e);
-            }
-        }));
+            return execute(coreApi.deleteNamespacedSecret(name, namespace)::executeAsync)
+                    .doOnNext(status -> log.info("Secret {} has been deleted", name))
+                    .then();
+        })));
     }
 
     public Mono<Void> createJob(String namespace, V1Job job, int imageBuildTimeoutSec) {
-        // Currently there is no asynchronous Watch api
-        return Mono.<Void>fromCallable(() -> {
-            String name = job.getMetadata().getName();
-
-            BatchV1Api batchApi = new BatchV1Api(apiClient);
-            Call call = batchApi.listNamespacedJob(namespace)
-                    .watch(true)
-                    .fieldSelector(NAME_SELECTOR_PREFIX + name)
-                    .timeoutSeconds(imageBuildTimeoutSec)
-                    .buildCall(null);
-
-            try (Watch<V1Job> watch = Watch.createWatch(batchApi.getApiClient(), call, JOB_TYPE_TOKEN.getType())) {
-                log.info("Creating job {}", name);
-                batchApi.createNamespacedJob(namespace, job)
-                        .execute();
-
-                log.info("Waiting for job {} to complete", name);
-                for (Watch.Response<V1Job> item : watch) {
-                    V1Job jobState = item.object;
-                    if (jobState != null) {
-                        Validate.isTrue(name.equals(jobState.getMetadata().getName()));
-                        if (KubernetesUtils.extractJobCompletionStatus(jobState)) {
-                            log.info("Job {} has completed successfully", name);
-                            return null;
-                        }
-                    } else {
-                        logStatus(item.status);
-                    }
-                }
-            }
+        String name = job.getMetadata().getName();
+        return awaitJob(name, jobWatcher(namespace).watch(name)
+                .publish(events -> createNamespacedJob(namespace, job)
+                        .flatMapMany(created -> {
+                            log.info("Waiting for job {} to complete", name);
+                            return events.filter(state -> isSameObject(created, state));
+                        })), imageBuildTimeoutSec);
+    }
 
-            throw new IllegalStateException("Subscription to job %s events expired".formatted(name));
-        })
-        .subscribeOn(Schedulers.boundedElastic());
+    /**
+     * Creates the job without waiting for it, so that the caller learns its UID, e.g. to delete only the job it has created.
+     * Fails with a 409 {@link ApiException} if a job with the same name exists.
+     */
+    public Mono<V1Job> startJob(String namespace, V1Job job) {
+        return createNamespacedJob(namespace, job);
     }
 
-    private static void logStatus(V1Status status) {
-        if (status != null) {
-            log.info("Received status: {}", status.toJson());
-        } else {
-            log.info("Unknown event type received");
-        }
+    /**
+     * Waits for the job created by {@link #startJob} to complete, failing if it fails.
+     */
+    public Mono<Void> awaitJob(String namespace, V1Job created, int imageBuildTimeoutSec) {
+        String name = created.getMetadata().getName();
+        log.info("Waiting for job {} to complete", name);
+        // The job may have completed before the watch has started, so its cached state is checked too
+        return awaitJob(name, jobWatcher(namespace).watch(name)
+                .mergeWith(getCachedJob(namespace, name))
+                .filter(state -> isSameObject(created, state)), imageBuildTimeoutSec);
+    }
+
+    private static Mono<Void> awaitJob(String name, Flux<V1Job> states, int imageBuildTimeoutSec) {
+        return states.filter(state -> KubernetesUtils.extractJobCompletionStatus(state) || failIfDeleted("Job", state))
+                .next()
+                .timeout(Duration.ofSeconds(imageBuildTimeoutSec), Mono.error(() -> new IllegalStateException(
+                        "Subscription to job %s events expired".formatted(name))))
+                .doOnNext(state -> log.info("Job {} has completed successfully", name))
+                .then();
+    }
+
+    private Mono<V1Job> createNamespacedJob(String namespace, V1Job job) {
+        String name = job.getMetadata().getName();
+        return timed("createJob", Mono.defer(() -> {
+            log.info("Creating job {}", name);
+            return execute(batchApi.createNamespacedJob(namespace, job)::executeAsync)
+                    .doOnNext(created -> log.info("Job {} has been created", name));
+        }));
     }
 
     public Mono<V1PodList> getJobPods(String namespace, String name) {
-        return getPods(namespace, "job-name=" + name);
+        return getPods(namespace, JOB_NAME_LABEL + "=" + name);
+    }
+
+    public Flux<V1Pod> watchJobPods(String namespace, String name) {
+        return jobPodWatcher(namespace).watch(JOB_NAME_LABEL, name);
+    }
+
+    public Flux<V1Pod> watchKnativeServicePods(String namespace, String name) {
+        return knativeServicePodWatcher(namespace).watch(KNATIVE_SERVICE_LABEL, name);
+    }
+
+    public Flux<V1Service> watchKnativeService(String namespace, String name, String serviceVersion) {
+        return serviceWatcher(namespace, ServiceVersion.parse(serviceVersion)).watch(name);
     }
 
     public Mono<V1PodList> getKnativeServicePods(String namespace, String name) {
-        return getPods(namespace, "serving.knative.dev/service=" + name);
+        return getPods(namespace, KNATIVE_SERVICE_LABEL + "=" + name);
+    }
+
+    public Mono<V1PodList> getBuilderPoolPods(String namespace, String runtime) {
+        return getPods(namespace, BUILDER_POOL_LABEL + "=" + runtime);
     }
 
     private Mono<V1PodList> getPods(String namespace, String label) {
-        return Mono.create(sink -> {
-            CoreV1Api coreV1Api = new CoreV1Api(apiClient);
+        return timed("listPods", Mono.defer(() -> {
             log.info("Querying pods with label {}", label);
-            try {
-                coreV1Api.listNamespacedPod(namespace)
-                        .labelSelector(label)
-                        .executeAsync(new NoProgressApiCallback<>() {
-                            @Override
-                            public void onFailure(ApiException e, int i, Map<String, List<String>> map) {
-                                sink.error(e);
-                            }
-
-                            @Override
-                            public void onSuccess(V1PodList state, int i, Map<String, List<String>> map) {
-                                if (state.getItems().isEmpty()) {
-                                    log.info("No pods with label {}", label);
-                                } else {
-                                    log.info("Received a pod list for label {}", label);
-                                }
-                                sink.success(state);
-                            }
-                        });
-            } catch (ApiException e) {
-                sink.error(e);
-            }
-        });
+            return execute(coreApi.listNamespacedPod(namespace).labelSelector(label)::executeAsync)
+                    .doOnNext(pods -> {
+                        if (pods.getItems().isEmpty()) {
+                            log.info("No pods with label {}", label);
+                        } else {
+                            log.info("Received a pod list for label {}", label);
+                        }
+                    });
+        }));
     }
 
-    public Mono<String> getContainerLog(String namespace, String pod, String container) {
-        return Mono.create(sink -> {
-            CoreV1Api coreV1Api = new CoreV1Api(apiClient);
-            log.info("Retrieving pod {} container {} logs", pod, container);
+    /**
+     * Follows the container log like {@link #streamContainerLog}, but passes on the chunks as bytes without decoding them.
+     */
+    public Flux<byte[]> followContainerLogBytes(String namespace, String pod, String container, @Nullable Integer tailLines) {
+        return readContainerLog(namespace, pod, container, new LogQuery(true, tailLines, null, null, false),
+                source -> LogUtils.readChunkBytes(source, MAX_LOG_CHUNK_BYTES));
+    }
+
+    /**
+     * Streams the container log in chunks of at most a line, optionally following it as it is written.
+     * Chunks are read from the connection only as they are requested, so a slow consumer slows down reading
+     * rather than the log being buffered in memory.
+     */
+    public Flux<String> streamContainerLog(String namespace, String pod, String container, boolean follow) {
+        return streamContainerLog(namespace, pod, container, new LogQuery(follow, null, null, null, false));
+    }
+
+    public Flux<String> streamContainerLog(String namespace, String pod, String container, LogQuery query) {
+        return readContainerLog(namespace, pod, container, query, source -> LogUtils.readChunk(source, MAX_LOG_CHUNK_BYTES));
+    }
+
+    private <T> Flux<T> readContainerLog(String namespace, String pod, String container, LogQuery query, ChunkReader<T> reader) {
+        Mono<Response> logResponse = Mono.create(sink -> {
+            log.info("Streaming pod {} container {} logs", pod, container);
+            AtomicBoolean cancelled = new AtomicBoolean();
             try {
-                coreV1Api.readNamespacedPodLog(pod, namespace)
+                Call call = watchCoreApi.readNamespacedPodLog(pod, namespace)
                         .container(container)
-                        .executeAsync(new NoProgressApiCallback<>() {
-                            @Override
-                            public void onFailure(ApiException e, int i, Map<String, List<String>> map) {
-                                sink.error(e);
-                            }
-
-                            @Override
-                            public void onSuccess(String logs, int i, Map<String, List<String>> map) {
-                                log.info("Retrieved pod {} container {} logs", pod, container);
-                                sink.success(logs);
-                            }
-                        });
+                        .follow(query.follow())
+                        .tailLines(query.tailLines())
+                        .limitBytes(query.limitBytes())
+                        .sinceSeconds(query.sinceSeconds())
+                        .timestamps(query.timestamps())
+                        .buildCall(null);
+                // The response headers are awaited without holding a thread
+                call.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                        if (!cancelled.get()) {
+                            sink.error(e);
+                        }
+                    }
+
+                    @Override
+                    public void onResponse(@NotNull Call call, @NotNull Response response) {
+                        if (cancelled.get()) {
+                            response.close();
+                        } else if (!response.isSuccessful()) {
+                            response.close();
+                            sink.error(new ApiException(response.code(), "Failed to stream pod %s container %s logs".formatted(pod, container)));
+                        } else {
+                            sink.success(response);
+                        }
+                    }
+                });
+                sink.onCancel(() -> {
+                    cancelled.set(true);
+                    call.cancel();
+                });
             } catch (ApiException e) {
                 sink.error(e);
             }
         });
+        Function<Response, Mono<Void>> close = response -> Mono.fromRunnable(response::close);
+        // A followed log is timed until it is no longer followed, so it is told apart from reads
+        return timed(query.follow() ? "followContainerLog" : "readContainerLog", Flux.usingWhen(
+                logResponse,
+                // Reading the body blocks until a followed log is written, so it takes a thread of the log readers
+                response -> Flux.<T>generate(sink -> {
+                    try {
+                        T chunk = reader.read(response.body().source());
+                        if (chunk == null) {
+                            sink.complete();
+                        } else {
+                            sink.next(chunk);
+                        }
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                }).subscribeOn(logReader),
+                close,
+                (response, e) -> close.apply(response),
+                close));
+    }
+
+    public Mono<V1ResourceQuotaList> getResourceQuotas(String namespace) {
+        return timed("listResourceQuotas", Mono.defer(() -> {
+            log.info("Querying resource quotas in {}", namespace);
+            return execute(coreApi.listNamespacedResourceQuota(namespace)::executeAsync)
+                    .doOnNext(quotas -> log.info("Received {} resource quotas in {}", quotas.getItems().size(), namespace));
+        }));
     }
 
     public Mono<Boolean> deleteJob(String namespace, String name) {
-        return handleMissing(Mono.create(sink -> {
-            BatchV1Api batchV1Api = new BatchV1Api(apiClient);
+        return timed("deleteJob", handleMissing(Mono.defer(() -> {
             log.info("Deleting job {}", name);
-            try {
-                batchV1Api.deleteNamespacedJob(name, namespace)
-                        .executeAsync(new NoProgressApiCallback<>() {
-                            @Override
-                            public void onFailure(ApiException e, int i, Map<String, List<String>> map) {
-                                sink.error(e);
-                            }
-
-                            @Override
-                            public void onSuccess(V1Status state, int i, Map<String, List<String>> map) {
-                                log.info("Job {} has been deleted", name);
-                                sink.success();
-                            }
-                        });
-            } catch (ApiException e) {
-                sink.error(e);
-            }
-        }));
+            return execute(batchApi.deleteNamespacedJob(name, namespace)::executeAsync)
+                    .doOnNext(status -> log.info("Job {} has been deleted", name))
+                    .then();
+        })));
+    }
+
+    /**
+     * Deletes the job only if it is still the object with the UID, along with its pods and the objects it owns.
+     *
+     * @return false if there is no such job, e.g. because the name now belongs to another job
+     */
+    public Mono<Boolean> deleteJob(String namespace, String name, String uid) {
+        return timed("deleteJob", handleMissing(Mono.defer(() -> {
+            log.info("Deleting job {} with UID {}", name, uid);
+            return execute(batchApi.deleteNamespacedJob(name, namespace)
+                    .propagationPolicy(BACKGROUND_POLICY)
+                    .body(new V1DeleteOptions().preconditions(new V1Preconditions().uid(uid)))::executeAsync)
+                    .doOnNext(status -> log.info("Job {} has been deleted", name))
+                    .then();
+        })).onErrorResume(KubernetesClient::isConflict, e -> Mono.just(Boolean.FALSE)));
     }
 
     public Mono<String> createKnativeService(String namespace, V1Service service, int serviceSetupTimeoutSec) {
-        // Currently there is no asynchronous Watch api
-        return Mono.fromCallable(() -> {
-            String name = service.getMetadata().getName();
-            ServiceVersion version = ServiceVersion.parse(service.getApiVersion());
-
-            CustomObjectsApi customObjectsApi = new CustomObjectsApi(apiClient);
-            Call call = customObjectsApi.listNamespacedCustomObject(version.group(), version.version(), namespace, SERVICES)
-                    .watch(true)
-                    .fieldSelector(NAME_SELECTOR_PREFIX + name)
-                    .timeoutSeconds(serviceSetupTimeoutSec)
-                    .buildCall(null);
-            try (Watch<V1Service> watch = Watch.createWatch(
-                    customObjectsApi.getApiClient(), call, SERVICE_TYPE_TOKEN.getType())) {
-                log.info("Creating service {}", name);
-                customObjectsApi.createNamespacedCustomObject(version.group(), version.version(), namespace, SERVICES, service)
-                        .execute();
-
-                for (Watch.Response<V1Service> item : watch) {
-                    V1Service serviceState = item.object;
-                    if (serviceState != null) {
-                        Validate.isTrue(name.equals(serviceState.getMetadata().getName()));
-                        String url = KubernetesUtils.extractServiceUrl(serviceState);
-                        if (url != null) {
-                            log.info("Service {} has been set up", name);
-                            return url;
-                        }
-                    } else {
-                        logStatus(item.status);
-                    }
-                }
-            }
+        String name = service.getMetadata().getName();
+        ServiceVersion version = ServiceVersion.parse(service.getApiVersion());
+        return serviceWatcher(namespace, version).watch(name)
+                .publish(events -> createNamespacedKnativeService(namespace, service, version)
+                        .flatMapMany(created -> events.filter(state -> isSameObject(created, state))))
+                .doOnNext(state -> failIfDeleted("Service", state))
+                .mapNotNull(KubernetesUtils::extractServiceUrl)
+                .next()
+                .timeout(Duration.ofSeconds(serviceSetupTimeoutSec), Mono.error(() -> new IllegalStateException(
+                        "Subscription to service %s events expired".formatted(name))))
+                .doOnNext(url -> log.info("Service {} has been set up", name));
+    }
 
-            throw new IllegalStateException("Subscription to service %s events expired".formatted(name));
-        })
-        .subscribeOn(Schedulers.boundedElastic());
+    private Mono<V1Service> createNamespacedKnativeService(String namespace, V1Service service, ServiceVersion version) {
+        String name = service.getMetadata().getName();
+        return timed("createKnativeService", Mono.defer(() -> {
+            log.info("Creating service {}", name);
+            return execute(customObjectsApi.createNamespacedCustomObject(
+                    version.group(), version.version(), namespace, SERVICES, service)::executeAsync)
+                    .doOnNext(created -> log.info("Service {} has been created", name))
+                    // Custom objects are returned as generic maps
+                    .map(created -> JSON.getGson().fromJson(JSON.getGson().toJsonTree(created), V1Service.class));
+        }));
     }
 
     public Mono<Boolean> deleteKnativeService(String namespace, String name, String serviceVersion) {
-        return handleMissing(Mono.create(sink -> {
+        return timed("deleteKnativeService", handleMissing(Mono.defer(() -> {
             ServiceVersion version = ServiceVersion.parse(serviceVersion);
-
-            CustomObjectsApi customObjectsApi = new CustomObjectsApi(apiClient);
             log.info("Deleting service {}", name);
-            try {
-                customObjectsApi.deleteNamespacedCustomObject(version.group(), version.version(), namespace, SERVICES, name)
-                        .propagationPolicy(FOREGROUND_POLICY)
-                        .gracePeriodSeconds(0)
-                        .executeAsync(new NoProgressApiCallback<>() {
-                            @Override
-                            public void onFailure(ApiException e, int i, Map<String, List<String>> map) {
-                                sink.error(e);
-                            }
-
-                            @Override
-                            public void onSuccess(Object state, int i, Map<String, List<String>> map) {
-                                log.info("Service {} has been deleted", name);
-                                sink.success();
-                            }
-                        });
-            } catch (ApiException e) {
-                sink.error(e);
-            }
+            return execute(customObjectsApi.deleteNamespacedCustomObject(
+                    version.group(), version.version(), namespace, SERVICES, name)
+                    .propagationPolicy(FOREGROUND_POLICY)
+                    .gracePeriodSeconds(0)::executeAsync)
+                    .doOnNext(status -> log.info("Service {} has been deleted", name))
+                    .then();
+        })));
+    }
+
+    public Mono<String> createPod(String namespace, V1Pod pod) {
+        return timed("createPod", Mono.defer(() -> {
+            log.info("Creating pod {}", pod.getMetadata().getGenerateName());
+            return execute(coreApi.createNamespacedPod(namespace, pod)::executeAsync)
+                    .map(created -> created.getMetadata().getName())
+                    .doOnNext(name -> log.info("Pod {} has been created", name));
         }));
     }
 
     public Mono<Boolean> deletePod(String namespace, String name) {
-        return handleMissing(Mono.create(sink -> {
-            CoreV1Api batchV1Api = new CoreV1Api(apiClient);
+        return timed("deletePod", handleMissing(Mono.defer(() -> {
             log.info("Deleting pod {}", name);
+            return execute(coreApi.deleteNamespacedPod(name, namespace).gracePeriodSeconds(0)::executeAsync)
+                    .doOnNext(pod -> log.info("Pod {} has been deleted", name))
+                    .then();
+        })));
+    }
+
+    public Mono<V1Job> getCachedJob(String namespace, String name) {
+        return jobWatcher(namespace).get(name);
+    }
+
+    public Mono<V1Service> getCachedKnativeService(String namespace, String name, String serviceVersion) {
+        return serviceWatcher(namespace, ServiceVersion.parse(serviceVersion)).get(name);
+    }
+
+    public Mono<List<V1Service>> getCachedKnativeServices(String namespace, String serviceVersion) {
+        return serviceWatcher(namespace, ServiceVersion.parse(serviceVersion)).list();
+    }
+
+    public Mono<List<V1Pod>> getCachedJobPods(String namespace, String name) {
+        return jobPodWatcher(namespace).list(JOB_NAME_LABEL, name);
+    }
+
+    public Mono<List<V1Pod>> getCachedKnativeServicePods(String namespace, String name) {
+        return knativeServicePodWatcher(namespace).list(KNATIVE_SERVICE_LABEL, name);
+    }
+
+    public Mono<List<V1Pod>> getCachedBuilderPoolPods(String namespace, String runtime) {
+        return builderPoolPodWatcher(namespace).list(BUILDER_POOL_LABEL, runtime);
+    }
+
+    public void close() {
+        jobWatchers.values().forEach(ResourceWatcher::stop);
+        serviceWatchers.values().forEach(ResourceWatcher::stop);
+        knativeServicePodWatchers.values().forEach(ResourceWatcher::stop);
+        jobPodWatchers.values().forEach(ResourceWatcher::stop);
+        builderPoolPodWatchers.values().forEach(ResourceWatcher::stop);
+    }
+
+    private ResourceWatcher<V1Job> jobWatcher(String namespace) {
+        return jobWatchers.computeIfAbsent(namespace, ns -> new ResourceWatcher<>(
+                watchClient,
+                counted(JOBS, params -> watchBatchApi.listNamespacedJob(ns)
+                        .watch(params.watch)
+                        .allowWatchBookmarks(params.watch)
+                        .resourceVersion(params.resourceVersion)
+                        .timeoutSeconds(params.timeoutSeconds)
+                        .buildCall(null)),
+                V1Job.class,
+                V1JobList.class,
+                ns,
+                JOBS,
+                Map.of()));
+    }
+
+    private ResourceWatcher<V1Service> serviceWatcher(String namespace, ServiceVersion version) {
+        return serviceWatchers.computeIfAbsent(namespace, ns -> new ResourceWatcher<>(
+                watchClient,
+                counted(SERVICES, params -> watchCustomObjectsApi
+                        .listNamespacedCustomObject(version.group(), version.version(), ns, SERVICES)
+                        .watch(params.watch)
+                        .allowWatchBookmarks(params.watch)
+                        .resourceVersion(params.resourceVersion)
+                        .timeoutSeconds(params.timeoutSeconds)
+                        .buildCall(null)),
+                V1Service.class,
+                V1ServiceList.class,
+                ns,
+                SERVICES,
+                Map.of()));
+    }
+
+    private ResourceWatcher<V1Pod> knativeServicePodWatcher(String namespace) {
+        return knativeServicePodWatchers.computeIfAbsent(namespace, ns -> new ResourceWatcher<>(
+                watchClient,
+                counted(PODS, params -> watchCoreApi.listNamespacedPod(ns)
+                        .labelSelector(KNATIVE_SERVICE_LABEL)
+                        .watch(params.watch)
+                        .allowWatchBookmarks(params.watch)
+                        .resourceVersion(params.resourceVersion)
+                        .timeoutSeconds(params.timeoutSeconds)
+                        .buildCall(null)),
+                V1Pod.class,
+                V1PodList.class,
+                ns,
+                PODS,
+                Map.of(KNATIVE_SERVICE_LABEL, labelIndexer(KNATIVE_SERVICE_LABEL))));
+    }
+
+    private ResourceWatcher<V1Pod> jobPodWatcher(String namespace) {
+        return jobPodWatchers.computeIfAbsent(namespace, ns -> new ResourceWatcher<>(
+                watchClient,
+                counted(PODS, params -> watchCoreApi.listNamespacedPod(ns)
+                        .labelSelector(JOB_NAME_LABEL)
+                        .watch(params.watch)
+                        .allowWatchBookmarks(params.watch)
+                        .resourceVersion(params.resourceVersion)
+                        .timeoutSeconds(params.timeoutSeconds)
+                        .buildCall(null)),
+                V1Pod.class,
+                V1PodList.class,
+                ns,
+                PODS,
+                Map.of(JOB_NAME_LABEL, labelIndexer(JOB_NAME_LABEL))));
+    }
+
+    private ResourceWatcher<V1Pod> builderPoolPodWatcher(String namespace) {
+        return builderPoolPodWatchers.computeIfAbsent(namespace, ns -> new ResourceWatcher<>(
+                watchClient,
+                counted(PODS, params -> watchCoreApi.listNamespacedPod(ns)
+                        .labelSelector(BUILDER_POOL_LABEL)
+                        .watch(params.watch)
+                        .allowWatchBookmarks(params.watch)
+                        .resourceVersion(params.resourceVersion)
+                        .timeoutSeconds(params.timeoutSeconds)
+                        .buildCall(null)),
+                V1Pod.class,
+                V1PodList.class,
+                ns,
+                PODS,
+                Map.of(BUILDER_POOL_LABEL, labelIndexer(BUILDER_POOL_LABEL))));
+    }
+
+    private static Function<V1Pod, List<String>> labelIndexer(String label) {
+        return pod -> Optional.ofNullable(pod.getMetadata().getLabels())
+                .map(labels -> labels.get(label))
+                .map(List::of)
+                .orElseGet(List::of);
+    }
+
+    /**
+     * Adapts an asynchronous API request to a Mono. The request is sent on subscription
+     * and its call is cancelled if the subscriber cancels, so that it stops holding a connection.
+     */
+    private static <T> Mono<T> execute(AsyncRequest<T> request) {
+        return Mono.create(sink -> {
+            AtomicBoolean cancelled = new AtomicBoolean();
             try {
-                batchV1Api.deleteNamespacedPod(name, namespace)
-                        .gracePeriodSeconds(0)
-                        .executeAsync(new NoProgressApiCallback<>() {
-                            @Override
-                            public void onFailure(ApiException e, int i, Map<String, List<String>> map) {
-                                sink.error(e);
-                            }
-
-                            @Override
-                            public void onSuccess(V1Pod pod, int i, Map<String, List<String>> map) {
-                                log.info("Pod {} has been deleted", name);
-                                sink.success();
-                            }
-                        });
+                Call call = request.executeAsync(new NoProgressApiCallback<>() {
+                    @Override
+                    public void onFailure(ApiException e, int statusCode, Map<String, List<String>> headers) {
+                        // A cancelled call fails too, but nobody is waiting for it anymore
+                        if (!cancelled.get()) {
+                            sink.error(e);
+                        }
+                    }
+
+                    @Override
+                    public void onSuccess(T result, int statusCode, Map<String, List<String>> headers) {
+                        sink.success(result);
+                    }
+                });
+                sink.onCancel(() -> {
+                    cancelled.set(true);
+                    call.cancel();
+                });
             } catch (ApiException e) {
                 sink.error(e);
             }
-        }));
+        });
+    }
+
+    private <T> Mono<T> timed(String method, Mono<T> request) {
+        return MetricsUtils.timed(meterRegistry, REQUEST_METRIC, Tags.of("method", method), request);
+    }
+
+    private <T> Flux<T> timed(String method, Flux<T> request) {
+        return MetricsUtils.timed(meterRegistry, REQUEST_METRIC, Tags.of("method", method), request);
+    }
+
+    private CallGenerator counted(String resource, CallGenerator generator) {
+        // The informer lists the resource on start and after a watch has expired, and re-watches after every disconnect
+        return params -> {
+            meterRegistry.counter(WATCH_REQUEST_METRIC, "resource", resource, "type", params.watch ? "watch" : "list")
+                    .increment();
+            return generator.generate(params);
+        };
+    }
+
+    private static boolean isSameObject(KubernetesObject expected, KubernetesObject actual) {
+        return Objects.equals(expected.getMetadata().getUid(), actual.getMetadata().getUid());
+    }
+
+    /**
+     * Fails the wait for an object that is deleted before reaching the awaited state, rather than letting it time out.
+     */
+    private static boolean failIfDeleted(String kind, KubernetesObject state) {
+        if (ResourceWatcher.isDeleted(state)) {
+            throw new IllegalStateException("%s %s has been deleted".formatted(kind, state.getMetadata().getName()));
+        }
+
+        return false;
     }
 
     public static void addKnativeServiceToModelMap(String serviceVersion) {
@@ -325,6 +575,13 @@ public class KubernetesClient {
                         : Mono.error(e));
     }
 
+    /**
+     * Whether the request has failed as the object already exists, or no longer matches the preconditions of the request.
+     */
+    public static boolean isConflict(Throwable e) {
+        return e instanceof ApiException apiException && apiException.getCode() == HTTP_CONFLICT;
+    }
+
     public record ServiceVersion(String group, String version) {
         public static ServiceVersion parse(String apiVersion) {
             int splitter = apiVersion.indexOf("/");
@@ -334,4 +591,26 @@ public class KubernetesClient {
             return new ServiceVersion(group, version);
         }
     }
+
+    /**
+     * Which part of a container log to read. With timestamps, each line starts with its RFC 3339 timestamp and a space.
+     */
+    public record LogQuery(
+            boolean follow,
+            @Nullable Integer tailLines,
+            @Nullable Integer limitBytes,
+            @Nullable Integer sinceSeconds,
+            boolean timestamps) {
+    }
+
+    @FunctionalInterface
+    private interface AsyncRequest<T> {
+        Call executeAsync(ApiCallback<T> callback) throws ApiException;
+    }
+
+    @FunctionalInterface
+    private interface ChunkReader<T> {
+        @Nullable
+        T read(BufferedSource source) throws IOException;
+    }
 }
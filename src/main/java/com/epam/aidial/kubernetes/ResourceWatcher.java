@@ -0,0 +1,168 @@
+package com.epam.aidial.kubernetes;
+
+import io.kubernetes.client.common.KubernetesListObject;
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.informer.ResourceEventHandler;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.util.CallGenerator;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Maintains a single namespace-wide list and watch for one resource kind and fans the updates out
+ * to the subscribers of individual objects. The watch is resumed from the last seen resource version
+ * (bookmarks included), so waiting for an object costs neither a thread nor a connection.
+ * The listed objects are kept in an in-memory cache that can be queried without calling the API server.
+ * A deleted object is passed to the subscribers of its name with the deletion timestamp set, so that those waiting
+ * for it to reach a state fail fast, while those waiting for a new object with the same name tell it by its UID.
+ */
+@Slf4j
+public final class ResourceWatcher<T extends KubernetesObject> implements ResourceEventHandler<T> {
+    private static final Duration SYNC_POLL_PERIOD = Duration.ofMillis(100);
+    private static final Duration SYNC_TIMEOUT = Duration.ofSeconds(30);
+
+    private final String namespace;
+    private final String resource;
+    private final SharedInformerFactory informerFactory;
+    private final SharedIndexInformer<T> informer;
+    private final Map<String, Function<T, List<String>>> indexers;
+    private final Map<String, List<FluxSink<T>>> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, List<FluxSink<T>>>> indexSubscribers = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    public <L extends KubernetesListObject> ResourceWatcher(
+            ApiClient apiClient,
+            CallGenerator callGenerator,
+            Class<T> type,
+            Class<L> listType,
+            String namespace,
+            String resource,
+            Map<String, Function<T, List<String>>> indexers) {
+        this.namespace = namespace;
+        this.resource = "%s/%s".formatted(namespace, resource);
+        this.informerFactory = new SharedInformerFactory(apiClient);
+        this.informer = informerFactory.sharedIndexInformerFor(callGenerator, type, listType);
+        this.indexers = indexers;
+        this.informer.addIndexers(indexers);
+        this.informer.addEventHandler(this);
+    }
+
+    public Mono<T> get(String name) {
+        return synced().then(Mono.fromSupplier(() -> informer.getIndexer().getByKey("%s/%s".formatted(namespace, name))));
+    }
+
+    public Mono<List<T>> list() {
+        return synced().then(Mono.fromSupplier(() -> informer.getIndexer().list()));
+    }
+
+    public Mono<List<T>> list(String index, String value) {
+        return synced().then(Mono.fromSupplier(() -> informer.getIndexer().byIndex(index, value)));
+    }
+
+    public Flux<T> watch(String name) {
+        return watch(subscribers, name);
+    }
+
+    /**
+     * Watches the objects having the value in the index, e.g. the pods of a job.
+     */
+    public Flux<T> watch(String index, String value) {
+        if (!indexers.containsKey(index)) {
+            throw new IllegalArgumentException("Unknown index %s of %s".formatted(index, resource));
+        }
+
+        return watch(indexSubscribers.computeIfAbsent(index, key -> new ConcurrentHashMap<>()), value);
+    }
+
+    private Flux<T> watch(Map<String, List<FluxSink<T>>> keySubscribers, String key) {
+        return Flux.create(sink -> {
+            keySubscribers.compute(key, (k, sinks) -> {
+                List<FluxSink<T>> result = sinks == null ? new CopyOnWriteArrayList<>() : sinks;
+                result.add(sink);
+                return result;
+            });
+            sink.onDispose(() -> keySubscribers.computeIfPresent(key, (k, sinks) -> {
+                sinks.remove(sink);
+                return sinks.isEmpty() ? null : sinks;
+            }));
+            start();
+        });
+    }
+
+    public void stop() {
+        if (started.get()) {
+            log.info("Stopping watch for {}", resource);
+            informerFactory.stopAllRegisteredInformers();
+        }
+    }
+
+    @Override
+    public void onAdd(T object) {
+        dispatch(object);
+    }
+
+    @Override
+    public void onUpdate(T oldObject, T newObject) {
+        dispatch(newObject);
+    }
+
+    @Override
+    public void onDelete(T object, boolean deletedFinalStateUnknown) {
+        // The final state is no longer in the cache, so it is marked in place
+        if (object.getMetadata().getDeletionTimestamp() == null) {
+            object.getMetadata().setDeletionTimestamp(OffsetDateTime.now());
+        }
+
+        dispatch(subscribers, object.getMetadata().getName(), object);
+    }
+
+    public static boolean isDeleted(KubernetesObject object) {
+        return object.getMetadata().getDeletionTimestamp() != null;
+    }
+
+    private void dispatch(T object) {
+        dispatch(subscribers, object.getMetadata().getName(), object);
+        indexSubscribers.forEach((index, keySubscribers) -> indexers.get(index).apply(object)
+                .forEach(key -> dispatch(keySubscribers, key, object)));
+    }
+
+    private static <T> void dispatch(Map<String, List<FluxSink<T>>> keySubscribers, String key, T object) {
+        List<FluxSink<T>> sinks = keySubscribers.get(key);
+        if (sinks != null) {
+            sinks.forEach(sink -> sink.next(object));
+        }
+    }
+
+    private Mono<Void> synced() {
+        start();
+        if (informer.hasSynced()) {
+            return Mono.empty();
+        }
+
+        return Flux.interval(SYNC_POLL_PERIOD)
+                .filter(ignore -> informer.hasSynced())
+                .next()
+                .timeout(SYNC_TIMEOUT, Mono.error(() -> new IllegalStateException("Cache of %s is not synced".formatted(resource))))
+                .then();
+    }
+
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            log.info("Starting watch for {}", resource);
+            informerFactory.startAllRegisteredInformers();
+        }
+    }
+}
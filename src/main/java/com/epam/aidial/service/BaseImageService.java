@@ -0,0 +1,173 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.kubernetes.KubernetesClient;
+import com.epam.aidial.util.KubernetesUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
+
+import static com.epam.aidial.util.NamingUtils.baseImageJobName;
+
+/**
+ * Prebuilds an image per runtime with the allowed packages installed, so that application builds only install
+ * the packages missing from it and deployments share its layers. The image is tagged by its Dockerfile, so it is
+ * built only once for the same runtime image and packages, and applications are built on it pinned by digest.
+ * Until the image is ready, applications are built on the image of the runtime.
+ * Every instance prebuilds the images, so an instance finding the job of another one waits for the image instead.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BaseImageService {
+    private static final Duration BUILD_POLL_PERIOD = Duration.ofSeconds(10);
+
+    private final KubernetesService kubernetesService;
+    private final ConfigService templateService;
+    private final RegistryService registryService;
+    private final AppConfiguration appconfig;
+
+    @Value("${app.build-namespace}")
+    private final String namespace;
+
+    @Value("${app.image-build-timeout-sec}")
+    private final int imageBuildTimeoutSec;
+
+    @Value("${app.base-image-retry-min-backoff-sec}")
+    private final int retryMinBackoffSec;
+
+    @Value("${app.base-image-retry-max-backoff-sec}")
+    private final int retryMaxBackoffSec;
+
+    // Runtime to the digest of its base image
+    private final Map<String, String> baseImageDigests = new ConcurrentHashMap<>();
+    private Disposable prebuild;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        prebuild = Flux.fromIterable(appconfig.getRuntimes().entrySet())
+                .filter(runtime -> runtime.getValue().isPrebuildBaseImage())
+                .map(Map.Entry::getKey)
+                // Each runtime is retried on its own, so that one failing does not hold up the others
+                .flatMap(runtime -> prebuild(runtime)
+                        .doOnError(e -> log.warn("Failed to prebuild base image for {}, retrying", runtime, e))
+                        .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(retryMinBackoffSec))
+                                .maxBackoff(Duration.ofSeconds(retryMaxBackoffSec))))
+                .subscribe();
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (prebuild != null) {
+            prebuild.dispose();
+        }
+    }
+
+    /**
+     * The prebuilt base image of the runtime, or null if it is not enabled or not ready.
+     */
+    @Nullable
+    public String baseImage(String runtime) {
+        String digest = baseImageDigests.get(runtime);
+        return digest == null ? null : registryService.pinnedBaseImageName(digest);
+    }
+
+    /**
+     * The digest of the prebuilt base image of the runtime, or null if it is not enabled or not ready.
+     */
+    @Nullable
+    public String baseImageDigest(String runtime) {
+        return baseImageDigests.get(runtime);
+    }
+
+    /**
+     * Builds the base image of the runtime unless it is already in the registry.
+     * It is started for every runtime with a base image once the application is ready, and may be started on demand too.
+     */
+    public Mono<String> prebuild(String runtime) {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = appconfig.getRuntimes().get(runtime);
+        if (runtimeConfig == null || !runtimeConfig.isPrebuildBaseImage()) {
+            return Mono.error(new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "Runtime %s has no prebuilt base image".formatted(runtime)));
+        }
+
+        return Mono.fromCallable(() -> templateService.baseImageTag(runtime))
+                .flatMap(tag -> registryService.getBaseImageDigest(tag)
+                        .switchIfEmpty(Mono.defer(() -> build(runtime, tag, true))
+                                .then(Mono.defer(() -> registryService.getBaseImageDigest(tag))))
+                        .switchIfEmpty(Mono.error(() -> new IllegalStateException(
+                                "Base image %s is not found after build".formatted(tag)))))
+                .doOnNext(digest -> baseImageDigests.put(runtime, digest))
+                .map(registryService::pinnedBaseImageName)
+                .doOnNext(image -> log.info("Base image of {}: {}", runtime, image));
+    }
+
+    /**
+     * Builds the image with a job unless another job holds its name. Only the job created here is deleted,
+     * and its secret along with it, so that instances never delete the jobs of one another.
+     *
+     * @param deleteLeftover whether a finished job holding the name is deleted and the image built again
+     */
+    private Mono<Void> build(String runtime, String tag, boolean deleteLeftover) {
+        KubernetesClient kubernetesClient = kubernetesService.buildClient();
+        String name = baseImageJobName(runtime);
+        // The secret is named after this very build, as it is only created once the job is
+        String secretName = "%s-%s".formatted(name, UUID.randomUUID().toString().substring(0, 8));
+        String targetImage = registryService.fullBaseImageName(tag);
+        log.info("Building base image {} for {}", targetImage, runtime);
+        return Mono.fromCallable(() -> templateService.baseImageJobConfig(runtime, targetImage, secretName))
+                .flatMap(job -> kubernetesClient.startJob(namespace, job))
+                .flatMap(created -> {
+                    Mono<Boolean> cleanup = Mono.defer(() -> kubernetesClient.deleteJob(namespace, name, created.getMetadata().getUid()));
+                    return Mono.fromCallable(() -> templateService.baseImageSecretConfig(runtime, secretName, created))
+                            .flatMap(secret -> kubernetesClient.createSecret(namespace, secret))
+                            .then(kubernetesClient.awaitJob(namespace, created, imageBuildTimeoutSec))
+                            .onErrorResume(e -> cleanup.then(Mono.error(e)))
+                            .then(cleanup)
+                            .then();
+                })
+                .onErrorResume(KubernetesClient::isConflict, e -> awaitBuild(kubernetesClient, runtime, tag, deleteLeftover));
+    }
+
+    /**
+     * Waits for the image built by the job holding the name. A finished job is a leftover, e.g. of an instance
+     * stopped during the build, so it is deleted by its UID, should another instance replace it meanwhile.
+     */
+    private Mono<Void> awaitBuild(KubernetesClient kubernetesClient, String runtime, String tag, boolean deleteLeftover) {
+        String name = baseImageJobName(runtime);
+        return kubernetesClient.getCachedJob(namespace, name)
+                .filter(job -> deleteLeftover && KubernetesUtils.isJobFinished(job))
+                .flatMap(leftover -> {
+                    log.info("Deleting leftover job {}", name);
+                    return kubernetesClient.deleteJob(namespace, name, leftover.getMetadata().getUid())
+                            .then(Mono.defer(() -> build(runtime, tag, false)))
+                            .thenReturn(Boolean.TRUE);
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.info("Waiting for base image {} built by job {}", tag, name);
+                    return Flux.interval(BUILD_POLL_PERIOD)
+                            .concatMap(ignore -> registryService.getBaseImageDigest(tag))
+                            .next()
+                            .timeout(Duration.ofSeconds(imageBuildTimeoutSec), Mono.error(() -> new IllegalStateException(
+                                    "Base image %s is not built by job %s in time".formatted(tag, name))))
+                            .thenReturn(Boolean.TRUE);
+                }))
+                .then();
+    }
+}
@@ -0,0 +1,95 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.config.LayerCompression;
+import io.kubernetes.client.openapi.models.V1Container;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.epam.aidial.util.mapping.Mappers.CONTAINER_ARGS_FIELD;
+
+/**
+ * Builds with rootless BuildKit of {@code app.buildkit-container}, run daemonless in the builder container.
+ * The build steps run in their own containers, so the dependency cache is kept by cache mounts of the Dockerfile
+ * rather than by volumes of the builder container, and layers are cached in the registry per application.
+ */
+@Component
+@RequiredArgsConstructor
+public class BuildKitBuilder implements ImageBuilder {
+    public static final String NAME = "buildkit";
+
+    private final RegistryService registryService;
+    private final AppConfiguration appconfig;
+
+    @Value("${app.buildkit-docker-config-path}")
+    private final String dockerConfigPath;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Set<Capability> capabilities() {
+        return Set.of(Capability.CACHE_MOUNTS, Capability.PARALLEL_STAGES, Capability.REGISTRY_CACHE);
+    }
+
+    @Override
+    public Set<LayerCompression> compressions() {
+        return Set.of(LayerCompression.GZIP, LayerCompression.ZSTD, LayerCompression.ESTARGZ);
+    }
+
+    @Override
+    public V1Container containerConfig() {
+        return appconfig.getBuildkitContainer();
+    }
+
+    @Override
+    public V1Container cloneContainerConfig() {
+        return appconfig.cloneBuildkitContainer();
+    }
+
+    @Override
+    public String dockerConfigPath() {
+        return dockerConfigPath;
+    }
+
+    @Override
+    public List<String> versionCommand() {
+        return List.of("buildctl", "--version");
+    }
+
+    @Override
+    public void configure(BuildJob job) {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = job.runtimeConfig();
+        List<String> args = job.container().get(CONTAINER_ARGS_FIELD).data();
+        args.add("--opt=build-arg:BASE_IMAGE=%s".formatted(job.baseImage()));
+        // The names are quoted, as the output is a list of comma separated options
+        String names = job.cacheImage() == null ? job.targetImage() : job.targetImage() + "," + job.cacheImage();
+        StringBuilder output = new StringBuilder("type=image,\"name=%s\",push=true".formatted(names));
+        if (runtimeConfig.getLayerCompression() != null) {
+            output.append(",compression=%s,force-compression=true".formatted(runtimeConfig.getLayerCompression().name().toLowerCase()));
+        }
+        args.add("--output=%s".formatted(output));
+        if (runtimeConfig.getCacheRepository() != null) {
+            // A registry cache holds the layers of a single build, so each app has its own one, which no other build
+            // overwrites, and the one of the runtime seeds the builds of other apps with the last build of any app
+            String repository = registryService.fullRepositoryName(runtimeConfig.getCacheRepository());
+            String runtimeRef = "%s:buildkit-%s".formatted(repository, job.runtime());
+            // Hashed, as the name may not fit into a tag
+            String appRef = "%s-%s".formatted(runtimeRef, DigestUtils.sha256Hex(job.name()).substring(0, 16));
+            for (String cacheRef : List.of(appRef, runtimeRef)) {
+                // Every layer is exported, so that the dependency layers are reused even though the final stage changes
+                args.add("--export-cache=type=registry,ref=%s,mode=max".formatted(cacheRef));
+            }
+            for (String cacheRef : List.of(appRef, runtimeRef)) {
+                args.add("--import-cache=type=registry,ref=%s".formatted(cacheRef));
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.dto.BuildPriority;
+import com.epam.aidial.dto.QueuePositionEventDto;
+import com.epam.aidial.util.MetricsUtils;
+import io.kubernetes.client.openapi.models.V1ResourceQuota;
+import io.kubernetes.client.openapi.models.V1ResourceQuotaList;
+import io.kubernetes.client.openapi.models.V1ResourceQuotaStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Admits builds to the cluster no faster than it can run them. Builds above the concurrency limit wait in a queue
+ * ordered by priority, tenants of the same priority take turns, and waiting builds are notified of their position.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BuildScheduler {
+    public static final String QUEUE_EVENT = "queue";
+    private static final String JOB_QUOTA = "count/jobs.batch";
+    private static final String POD_QUOTA = "pods";
+    private static final Duration QUOTA_REFRESH_PERIOD = Duration.ofMinutes(1);
+
+    private final KubernetesService kubernetesService;
+    private final AppConfiguration appconfig;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.build-namespace}")
+    private final String namespace;
+
+    @Value("${app.max-concurrent-builds}")
+    private final int maxConcurrentBuilds;
+
+    @Value("${app.max-concurrent-builds-from-quota}")
+    private final boolean maxConcurrentBuildsFromQuota;
+
+    private final Map<BuildPriority, Map<String, Deque<Ticket>>> queues = new TreeMap<>(Comparator.reverseOrder());
+    private int running;
+    private int capacity;
+    private Disposable quotaRefresh;
+
+    @PostConstruct
+    private void initialize() {
+        capacity = maxConcurrentBuilds;
+        Gauge.builder("app.build.queue.size", this, BuildScheduler::queued)
+                .register(meterRegistry);
+        Gauge.builder("app.build.running", this, BuildScheduler::running)
+                .register(meterRegistry);
+        if (maxConcurrentBuildsFromQuota) {
+            quotaRefresh = Flux.interval(Duration.ZERO, QUOTA_REFRESH_PERIOD)
+                    .concatMap(ignore -> kubernetesService.buildClient().getResourceQuotas(namespace)
+                            .onErrorResume(e -> {
+                                log.warn("Failed to retrieve resource quotas in {}", namespace, e);
+                                return Mono.empty();
+                            }))
+                    .subscribe(quotas -> updateCapacity(Math.max(1, Math.min(maxConcurrentBuilds, quotaLimit(quotas, poolSize())))));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (quotaRefresh != null) {
+            quotaRefresh.dispose();
+        }
+    }
+
+    public <T> Mono<T> admit(String tenant, BuildPriority priority, Consumer<OperationEvent> listener, Supplier<Mono<T>> build) {
+        return Mono.defer(() -> {
+            Ticket ticket = new Ticket(tenant, priority, listener);
+            synchronized (this) {
+                queues.computeIfAbsent(priority, key -> new LinkedHashMap<>())
+                        .computeIfAbsent(tenant, key -> new ArrayDeque<>())
+                        .add(ticket);
+            }
+            dispatch();
+            return MetricsUtils.stage(meterRegistry, "build", "queue", ticket.admission.asMono())
+                    .then(Mono.defer(build))
+                    .doFinally(signal -> release(ticket));
+        });
+    }
+
+    private synchronized int queued() {
+        return queues.values().stream()
+                .flatMap(tenants -> tenants.values().stream())
+                .mapToInt(Deque::size)
+                .sum();
+    }
+
+    private synchronized int running() {
+        return running;
+    }
+
+    private void release(Ticket ticket) {
+        synchronized (this) {
+            if (ticket.admitted) {
+                --running;
+            } else {
+                Map<String, Deque<Ticket>> tenants = queues.get(ticket.priority);
+                Deque<Ticket> tickets = tenants.get(ticket.tenant);
+                tickets.remove(ticket);
+                if (tickets.isEmpty()) {
+                    tenants.remove(ticket.tenant);
+                }
+            }
+        }
+        dispatch();
+    }
+
+    private void updateCapacity(int value) {
+        synchronized (this) {
+            if (capacity != value) {
+                log.info("Build concurrency limit changed from {} to {}", capacity, value);
+                capacity = value;
+            }
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        List<Ticket> admitted = new ArrayList<>();
+        List<Map.Entry<Ticket, Integer>> moved = new ArrayList<>();
+        synchronized (this) {
+            while (running < capacity) {
+                Ticket ticket = poll();
+                if (ticket == null) {
+                    break;
+                }
+                ticket.admitted = true;
+                ++running;
+                admitted.add(ticket);
+            }
+
+            List<Ticket> waiting = admissionOrder();
+            for (int i = 0; i < waiting.size(); ++i) {
+                Ticket ticket = waiting.get(i);
+                int position = i + 1;
+                if (ticket.position != position) {
+                    ticket.position = position;
+                    moved.add(Map.entry(ticket, position));
+                }
+            }
+        }
+
+        // Listeners may block on slow clients, so they are notified outside the lock not to hold up other builds
+        moved.forEach(entry -> entry.getKey().listener.accept(new OperationEvent(QUEUE_EVENT, new QueuePositionEventDto(entry.getValue()))));
+        admitted.forEach(ticket -> ticket.admission.tryEmitEmpty());
+    }
+
+    @Nullable
+    private Ticket poll() {
+        for (Map<String, Deque<Ticket>> tenants : queues.values()) {
+            if (tenants.isEmpty()) {
+                continue;
+            }
+
+            // The tenant goes to the end of the line, so that tenants take turns
+            String tenant = tenants.keySet().iterator().next();
+            Deque<Ticket> tickets = tenants.remove(tenant);
+            Ticket ticket = tickets.poll();
+            if (!tickets.isEmpty()) {
+                tenants.put(tenant, tickets);
+            }
+            return ticket;
+        }
+
+        return null;
+    }
+
+    private List<Ticket> admissionOrder() {
+        List<Ticket> order = new ArrayList<>();
+        for (Map<String, Deque<Ticket>> tenants : queues.values()) {
+            List<Iterator<Ticket>> turns = tenants.values().stream()
+                    .map(Deque::iterator)
+                    .toList();
+            boolean remaining = true;
+            while (remaining) {
+                remaining = false;
+                for (Iterator<Ticket> turn : turns) {
+                    if (turn.hasNext()) {
+                        order.add(turn.next());
+                        remaining = true;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    private int poolSize() {
+        return appconfig.getRuntimes().values().stream()
+                .mapToInt(AppConfiguration.RuntimeConfiguration::getBuilderPoolSize)
+                .sum();
+    }
+
+    /**
+     * The number of builds the quotas leave room for. Idle builder pods take pods but no jobs,
+     * so they are taken off the pod quota only.
+     */
+    static int quotaLimit(V1ResourceQuotaList quotas, int poolSize) {
+        return quotas.getItems().stream()
+                .map(V1ResourceQuota::getStatus)
+                .filter(Objects::nonNull)
+                .map(V1ResourceQuotaStatus::getHard)
+                .filter(Objects::nonNull)
+                .flatMapToInt(hard -> IntStream.concat(
+                        Stream.ofNullable(hard.get(JOB_QUOTA)).mapToInt(quantity -> quantity.getNumber().intValue()),
+                        Stream.ofNullable(hard.get(POD_QUOTA)).mapToInt(quantity -> quantity.getNumber().intValue() - poolSize)))
+                .min()
+                .orElse(Integer.MAX_VALUE);
+    }
+
+    private static class Ticket {
+        private final String tenant;
+        private final BuildPriority priority;
+        private final Consumer<OperationEvent> listener;
+        private final Sinks.Empty<Void> admission = Sinks.empty();
+        private boolean admitted;
+        private int position;
+
+        Ticket(String tenant, BuildPriority priority, Consumer<OperationEvent> listener) {
+            this.tenant = tenant;
+            this.priority = priority;
+            this.listener = listener;
+        }
+    }
+}
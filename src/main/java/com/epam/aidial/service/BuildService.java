@@ -1,25 +1,58 @@
 package com.epam.aidial.service;
 
+import com.epam.aidial.dto.BuildPriority;
+import com.epam.aidial.dto.CreateImageResponseDto;
+import com.epam.aidial.dto.GetImageResponseDto;
+import com.epam.aidial.dto.LogEventDto;
+import com.epam.aidial.dto.ProgressEventDto;
 import com.epam.aidial.kubernetes.KubernetesClient;
 import com.epam.aidial.util.KubernetesUtils;
-import com.epam.aidial.util.TextUtils;
+import com.epam.aidial.util.LogScanner;
+import com.epam.aidial.util.MetricsUtils;
+import com.epam.aidial.util.TenantUtils;
+import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1JobCondition;
+import io.kubernetes.client.openapi.models.V1JobStatus;
+import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1PodList;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 import static com.epam.aidial.util.NamingUtils.buildJobName;
 import static com.epam.aidial.util.NamingUtils.dialAuthSecretName;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class BuildService {
     private static final String APP_VALIDATION_ERROR_PREFIX = "AppValidationException: ";
+    private static final String CLEAN_REQUEST = "clean";
+    private static final String BUILD_OPERATION = "build";
     private final KubernetesService kubernetesService;
     private final ConfigService templateService;
     private final RegistryService registryService;
+    private final OperationCoordinator operationCoordinator;
+    private final BuildScheduler buildScheduler;
+    private final BuilderPool builderPool;
+    private final BaseImageService baseImageService;
+    private final LayerAppendBuilder layerAppendBuilder;
+    private final DialFileService dialFileService;
+    private final MeterRegistry meterRegistry;
 
     @Value("${app.build-namespace}")
     private final String namespace;
@@ -33,12 +66,125 @@ public class BuildService {
     @Value("${app.image-build-timeout-sec}")
     private final int imageBuildTimeoutSec;
 
-    public Mono<String> build(BuildParameters params) {
+    @Value("${app.template-container.name}")
+    private final String templateContainer;
+
+    @Value("${app.builder-container.name}")
+    private final String builderContainer;
+
+    /**
+     * Builds the image, unless an identical build is already running, in which case its result is shared.
+     * The logs of the build are relayed to the listeners if the build is started with followLogs, so only builds
+     * following logs alike are shared, otherwise a caller asking for logs would join a build not following them.
+     */
+    public Mono<CreateImageResponseDto> build(BuildParameters params, boolean followLogs, Consumer<OperationEvent> listener) {
+        return operationCoordinator.execute(resource(params.name), new BuildRequest(params, followLogs), listener,
+                events -> MetricsUtils.operation(meterRegistry, BUILD_OPERATION, buildOrRestore(params, followLogs, events)
+                        .flatMap(image -> pushedDigest(params.name)
+                                .map(digest -> new CreateImageResponseDto(image, digest))
+                                .defaultIfEmpty(new CreateImageResponseDto(image, null)))));
+    }
+
+    private Mono<String> buildOrRestore(BuildParameters params, boolean followLogs, Consumer<OperationEvent> listener) {
+        return sourcesDigest(params)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(digest -> {
+                    // Read once, so that the cache key matches the image built even if the prebuilt base image is pushed meanwhile
+                    String baseImage = baseImageService.baseImage(params.runtime);
+                    String cacheKey = digest.map(value -> templateService.buildCacheKey(value, params.runtime, baseImage)).orElse(null);
+                    return (cacheKey == null ? Mono.just(false) : restoreFromCache(cacheKey, params.name))
+                            .flatMap(restored -> restored
+                                    ? Mono.just(registryService.fullImageName(params.name))
+                                    // Appending the sources takes no builder pod, so only their validation is subject to admission
+                                    : layerAppendBuilder.build(params, digest.orElse(null), validate(params, digest.orElse(null), followLogs, listener))
+                                            .switchIfEmpty(Mono.defer(() -> admit(params, listener,
+                                                    () -> runBuild(params, baseImage, cacheKey, digest.orElse(null), followLogs, listener)))));
+                });
+    }
+
+    private <T> Mono<T> admit(BuildParameters params, Consumer<OperationEvent> listener, Supplier<Mono<T>> job) {
+        return buildScheduler.admit(TenantUtils.tenant(params.apiKey, params.jwt), params.priority, listener, job);
+    }
+
+    /**
+     * Computes the digest of the sources rather than taking one from the caller, so that the cache only serves
+     * an image built from the very sources the caller can read.
+     */
+    private Mono<String> sourcesDigest(BuildParameters params) {
+        return MetricsUtils.stage(meterRegistry, BUILD_OPERATION, "digest",
+                        dialFileService.sourcesDigest(params.sources, params.apiKey, params.jwt))
+                .onErrorResume(e -> {
+                    log.warn("Failed to compute digest of sources of {}", params.name, e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Boolean> restoreFromCache(String cacheKey, String name) {
+        return MetricsUtils.stage(meterRegistry, BUILD_OPERATION, "cache", registryService.restoreFromCache(cacheKey, name))
+                .doOnNext(restored -> log.info("Build cache {} for {}", restored ? "hit" : "miss", name))
+                .onErrorResume(e -> {
+                    log.warn("Failed to restore {} from build cache", name, e);
+                    return Mono.just(false);
+                });
+    }
+
+    private Mono<String> runBuild(
+            BuildParameters params,
+            @Nullable String baseImage,
+            @Nullable String cacheKey,
+            @Nullable String sourcesDigest,
+            boolean followLogs,
+            Consumer<OperationEvent> listener) {
+        Mono<V1Job> job = Mono.fromCallable(() -> templateService.buildJobConfig(params.name, params.sources, params.runtime, baseImage, cacheKey))
+                .flatMap(config -> builderPool.place(config, params.runtime));
+        return runJob(params, job, "job", List.of(templateContainer, builderContainer), KubernetesUtils::extractBuildStage, followLogs, listener)
+                .then(Mono.defer(() -> recordValidated(params, sourcesDigest)))
+                .then(Mono.defer(() -> refreshDigest(params.name)))
+                .thenReturn(registryService.fullImageName(params.name));
+    }
+
+    /**
+     * Validates the sources in a validation job, which runs the template container alone and builds nothing,
+     * so that sources it has not seen yet may be appended without a builder pod. The job takes a pod, so it is admitted like a build.
+     */
+    private Mono<Void> validate(BuildParameters params, @Nullable String sourcesDigest, boolean followLogs, Consumer<OperationEvent> listener) {
+        Mono<V1Job> job = Mono.fromCallable(() -> templateService.validationJobConfig(params.name, params.sources, params.runtime));
+        return Mono.defer(() -> admit(params, listener,
+                        () -> runJob(params, job, "validation", List.of(templateContainer), KubernetesUtils::extractValidationStage, followLogs, listener)))
+                .then(Mono.defer(() -> recordValidated(params, sourcesDigest)));
+    }
+
+    /**
+     * Runs the job with the secret of the DIAL credentials, and deletes both once the job succeeds.
+     * A failed job is kept, so that its status is reported, and its error is extracted from the logs of the failed container.
+     */
+    private Mono<Void> runJob(
+            BuildParameters params,
+            Mono<V1Job> jobConfig,
+            String stage,
+            List<String> containers,
+            Function<V1Pod, ProgressEventDto.Stage> progress,
+            boolean followLogs,
+            Consumer<OperationEvent> listener) {
         KubernetesClient kubernetesClient = kubernetesService.buildClient();
         return Mono.fromCallable(() -> templateService.dialAuthSecretConfig(params.name, params.apiKey, params.jwt))
-                .flatMap(secret -> kubernetesClient.createSecret(namespace, secret))
-                .then(Mono.fromCallable(() -> templateService.buildJobConfig(params.name, params.sources, params.runtime)))
-                .flatMap(job -> kubernetesClient.createJob(namespace, job, imageBuildTimeoutSec))
+                .flatMap(secret -> MetricsUtils.stage(meterRegistry, BUILD_OPERATION, "secret",
+                        kubernetesClient.createSecret(namespace, secret)))
+                .doOnSuccess(ignore -> listener.accept(OperationEvent.progress(ProgressEventDto.Stage.SECRET_CREATED)))
+                .then(jobConfig)
+                .flatMap(job -> {
+                    String jobName = job.getMetadata().getName();
+                    Mono<Void> createJob = kubernetesClient.createJob(namespace, job, imageBuildTimeoutSec);
+                    if (followLogs) {
+                        createJob = ProgressUtils.withLogs(createJob, followLogs(kubernetesClient, jobName, containers), listener);
+                    }
+
+                    return MetricsUtils.stage(meterRegistry, BUILD_OPERATION, stage, ProgressUtils.withProgress(
+                            createJob,
+                            kubernetesClient.watchJobPods(namespace, jobName).map(progress),
+                            listener));
+                })
                 .onErrorResume(e -> {
                     String jobName = buildJobName(params.name);
 
@@ -47,38 +193,140 @@ public class BuildService {
                             .flatMap(error -> Mono.error(new RuntimeException(error)))
                             .then(Mono.error(e));
                 })
-                .then(kubernetesClient.deleteSecret(namespace, dialAuthSecretName(params.name)))
-                .then(kubernetesClient.deleteJob(namespace, buildJobName(params.name)))
-                .thenReturn(registryService.fullImageName(params.name));
+                .then(MetricsUtils.stage(meterRegistry, BUILD_OPERATION, "cleanup",
+                        kubernetesClient.deleteSecret(namespace, dialAuthSecretName(params.name))
+                                .then(kubernetesClient.deleteJob(namespace, buildJobName(params.name)))))
+                .then();
+    }
+
+    /**
+     * Records the sources as validated by the template container, so that they may later be appended without a builder pod.
+     * The digest is computed again to check that the template container has seen the very sources it was computed for.
+     */
+    private Mono<Void> recordValidated(BuildParameters params, @Nullable String sourcesDigest) {
+        if (sourcesDigest == null) {
+            return Mono.empty();
+        }
+
+        return sourcesDigest(params)
+                .filter(sourcesDigest::equals)
+                .doOnNext(digest -> layerAppendBuilder.validated(digest, params.runtime))
+                .then();
+    }
+
+    /**
+     * The digest of the image just pushed, which every way of building caches, so that it costs no registry round trip.
+     */
+    private Mono<String> pushedDigest(String name) {
+        return registryService.getDigest(name)
+                .onErrorResume(e -> {
+                    log.warn("Failed to retrieve digest of {}", name, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Caches the digest of the pushed image, so that the status of the image is served from memory.
+     */
+    private Mono<String> refreshDigest(String name) {
+        return registryService.refreshDigest(name)
+                .onErrorResume(e -> {
+                    log.warn("Failed to retrieve digest of {}", name, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Follows the logs of the containers of the job in turn, e.g. the template container then the builder container, each once it starts.
+     */
+    private Flux<LogEventDto> followLogs(KubernetesClient kubernetesClient, String jobName, List<String> containers) {
+        return Flux.fromIterable(containers)
+                .concatMap(container -> kubernetesClient.watchJobPods(namespace, jobName)
+                        .mergeWith(kubernetesClient.getCachedJobPods(namespace, jobName).flatMapIterable(Function.identity()))
+                        .filter(pod -> KubernetesUtils.isContainerStarted(pod, container))
+                        .next()
+                        .flatMapMany(pod -> kubernetesClient.streamContainerLog(namespace, pod.getMetadata().getName(), container, true))
+                        .map(text -> new LogEventDto(container, StringUtils.stripEnd(text, "\r\n"))));
     }
 
     public Mono<Boolean> clean(String name) {
+        return operationCoordinator.execute(
+                resource(name), CLEAN_REQUEST, () -> MetricsUtils.operation(meterRegistry, "clean", deleteImage(name)));
+    }
+
+    private Mono<Boolean> deleteImage(String name) {
         KubernetesClient kubernetesClient = kubernetesService.buildClient();
         return kubernetesClient.deleteJob(namespace, buildJobName(name))
                 .flatMap(deleted -> kubernetesClient.deleteSecret(namespace, dialAuthSecretName(name))
                         .map(d -> d || deleted))
-                .flatMap(deleted -> registryService.getDigest(name)
+                // Not from the cache, as the image may have been rebuilt by another instance since
+                .flatMap(deleted -> registryService.refreshDigest(name)
                         .flatMap(digest -> registryService.deleteManifest(name, digest))
                         .map(d -> d || deleted)
                         .defaultIfEmpty(deleted));
     }
 
+    public Mono<GetImageResponseDto> status(String name) {
+        KubernetesClient kubernetesClient = kubernetesService.buildClient();
+        return kubernetesClient.getCachedJob(namespace, buildJobName(name))
+                .map(job -> jobStatus(name, job))
+                // Successfully completed jobs are deleted, so the registry is the source of truth for them
+                .switchIfEmpty(Mono.defer(() -> registryService.getDigest(name))
+                        .map(digest -> new GetImageResponseDto(
+                                name, GetImageResponseDto.Status.READY, registryService.fullImageName(name), null)))
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, "Image %s is not found".formatted(name))));
+    }
+
+    private GetImageResponseDto jobStatus(String name, V1Job job) {
+        List<V1JobCondition> conditions = Optional.ofNullable(job.getStatus())
+                .map(V1JobStatus::getConditions)
+                .orElseGet(List::of);
+        for (V1JobCondition condition : conditions) {
+            if ("True".equals(condition.getStatus())) {
+                if ("Complete".equals(condition.getType())) {
+                    return new GetImageResponseDto(
+                            name, GetImageResponseDto.Status.READY, registryService.fullImageName(name), null);
+                }
+
+                if ("Failed".equals(condition.getType())) {
+                    return new GetImageResponseDto(
+                            name, GetImageResponseDto.Status.FAILED, null, condition.getMessage());
+                }
+            }
+        }
+
+        return new GetImageResponseDto(name, GetImageResponseDto.Status.BUILDING, null, null);
+    }
+
     private Mono<String> extractErrorFromLog(V1PodList podList) {
         KubernetesClient kubernetesClient = kubernetesService.buildClient();
         return Mono.fromCallable(() -> KubernetesUtils.extractFailedContainer(podList))
-                .flatMap(container -> kubernetesClient.getContainerLog(
-                        namespace, container.getKey(), container.getValue()))
-                .map(text -> {
-                    int validationErrorIndex = text.indexOf(APP_VALIDATION_ERROR_PREFIX);
-                    return validationErrorIndex == StringUtils.INDEX_NOT_FOUND
-                            ? "Failed to build image. Logs: %s".formatted(
-                                    TextUtils.truncateText(text, maxErrorLogLines, maxErrorLogChars))
-                            : "Validation error: %s".formatted(
-                                    text.substring(validationErrorIndex + APP_VALIDATION_ERROR_PREFIX.length())).trim();
-
+                .flatMap(container -> {
+                    // The log is scanned as it is read, so that a huge log is never held in memory
+                    LogScanner scanner = new LogScanner(APP_VALIDATION_ERROR_PREFIX, maxErrorLogLines, maxErrorLogChars);
+                    return kubernetesClient.streamContainerLog(namespace, container.getKey(), container.getValue(), false)
+                            .doOnNext(scanner::accept)
+                            .takeUntil(ignore -> scanner.isComplete())
+                            .then(Mono.fromSupplier(() -> scanner.message() == null
+                                    ? "Failed to build image. Logs: %s".formatted(scanner.tail())
+                                    : "Validation error: %s".formatted(scanner.message()).trim()));
                 });
     }
 
-    public record BuildParameters(String name, String sources, String apiKey, String jwt, String runtime) {
+    private static String resource(String name) {
+        return "image/%s".formatted(name);
+    }
+
+    private record BuildRequest(BuildParameters params, boolean followLogs) {
+    }
+
+    public record BuildParameters(
+            String name,
+            String sources,
+            String apiKey,
+            String jwt,
+            String runtime,
+            BuildPriority priority) {
     }
 }
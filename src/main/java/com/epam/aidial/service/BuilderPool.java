@@ -0,0 +1,209 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.kubernetes.KubernetesClient;
+import io.kubernetes.client.openapi.models.V1Affinity;
+import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1NodeAffinity;
+import io.kubernetes.client.openapi.models.V1NodeSelectorRequirement;
+import io.kubernetes.client.openapi.models.V1NodeSelectorTerm;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodSpec;
+import io.kubernetes.client.openapi.models.V1PreferredSchedulingTerm;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+
+/**
+ * Keeps idle builder pods per runtime, which pull the images of the build and hold the resources of a build on their nodes,
+ * as much as its template and builder containers request.
+ * A build claims an idle pod and takes its place on the node, so that it waits neither for a node nor for the images.
+ * The build still runs in a job of its own, as the builder can not be handed a build once started.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BuilderPool {
+    private static final String CLAIM_METRIC = "app.build.pool.claims";
+    private static final Duration REPLENISH_PERIOD = Duration.ofSeconds(10);
+
+    private final KubernetesService kubernetesService;
+    private final AppConfiguration appconfig;
+    private final ConfigService templateService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.build-namespace}")
+    private final String namespace;
+
+    @Value("${app.builder-pool-idle-ttl-sec}")
+    private final int idleTtlSec;
+
+    // Pods handed to builds per runtime, which are listed until their deletion is observed
+    private final Map<String, Set<String>> claimed = new ConcurrentHashMap<>();
+    private final Sinks.Many<String> replenishRequests = Sinks.many().multicast().onBackpressureBuffer();
+    private Disposable replenishment;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        List<String> runtimes = pooledRuntimes();
+        if (runtimes.isEmpty()) {
+            return;
+        }
+
+        log.info("Keeping builder pools for {}", runtimes);
+        replenishment = Flux.interval(Duration.ZERO, REPLENISH_PERIOD)
+                .flatMapIterable(ignore -> runtimes)
+                .mergeWith(replenishRequests.asFlux())
+                .concatMap(runtime -> Mono.defer(() -> replenish(runtime))
+                        .onErrorResume(e -> {
+                            log.warn("Failed to replenish builder pool for {}", runtime, e);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (replenishment != null) {
+            replenishment.dispose();
+        }
+    }
+
+    /**
+     * Places the build job on the node of an idle pod of the runtime, if there is one. The job is scheduled
+     * as usual if there is no idle pod or the node has no room for it anymore.
+     */
+    public Mono<V1Job> place(V1Job job, String runtime) {
+        if (poolSize(runtime) == 0) {
+            return Mono.just(job);
+        }
+
+        return claim(runtime)
+                .map(node -> preferNode(job, node))
+                .doOnNext(ignore -> meterRegistry.counter(CLAIM_METRIC, "runtime", runtime, "result", "hit").increment())
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    meterRegistry.counter(CLAIM_METRIC, "runtime", runtime, "result", "miss").increment();
+                    return job;
+                }))
+                // A request dropped under contention is covered by the periodic replenishment
+                .doFinally(signal -> replenishRequests.tryEmitNext(runtime));
+    }
+
+    private Mono<String> claim(String runtime) {
+        KubernetesClient kubernetesClient = kubernetesService.buildClient();
+        return kubernetesClient.getCachedBuilderPoolPods(namespace, runtime)
+                .mapNotNull(pods -> claimIdlePod(runtime, pods))
+                .flatMap(pod -> kubernetesClient.deletePod(namespace, pod.getMetadata().getName())
+                        .thenReturn(pod.getSpec().getNodeName()))
+                .onErrorResume(e -> {
+                    log.warn("Failed to claim builder pod for {}", runtime, e);
+                    return Mono.empty();
+                });
+    }
+
+    @Nullable
+    private V1Pod claimIdlePod(String runtime, List<V1Pod> pods) {
+        Set<String> runtimeClaimed = claimed.computeIfAbsent(runtime, key -> ConcurrentHashMap.newKeySet());
+        for (V1Pod pod : pods) {
+            if (isReady(pod) && runtimeClaimed.add(pod.getMetadata().getName())) {
+                return pod;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Replaces the pods of the runtime which are claimed, failed or idle for too long, so that the pool is full again.
+     */
+    Mono<Void> replenish(String runtime) {
+        KubernetesClient kubernetesClient = kubernetesService.buildClient();
+        return kubernetesClient.getBuilderPoolPods(namespace, runtime)
+                .flatMap(pods -> {
+                    Set<String> names = pods.getItems().stream()
+                            .map(pod -> pod.getMetadata().getName())
+                            .collect(Collectors.toSet());
+                    Set<String> runtimeClaimed = claimed.computeIfAbsent(runtime, key -> ConcurrentHashMap.newKeySet());
+                    runtimeClaimed.retainAll(names);
+                    Instant expiry = Instant.now().minusSeconds(idleTtlSec);
+                    List<V1Pod> available = pods.getItems().stream()
+                            .filter(pod -> pod.getMetadata().getDeletionTimestamp() == null)
+                            .filter(pod -> !runtimeClaimed.contains(pod.getMetadata().getName()))
+                            .toList();
+                    List<V1Pod> stale = available.stream()
+                            .filter(pod -> isFailed(pod) || isExpired(pod, expiry))
+                            .toList();
+                    int missing = poolSize(runtime) - available.size() + stale.size();
+                    return Flux.fromIterable(stale)
+                            .concatMap(pod -> kubernetesClient.deletePod(namespace, pod.getMetadata().getName()))
+                            .thenMany(Flux.range(0, Math.max(0, missing)))
+                            .concatMap(ignore -> kubernetesClient.createPod(namespace, templateService.builderPoolPodConfig(runtime)))
+                            .then();
+                });
+    }
+
+    private List<String> pooledRuntimes() {
+        return appconfig.getRuntimes().keySet().stream()
+                .filter(runtime -> poolSize(runtime) > 0)
+                .sorted()
+                .toList();
+    }
+
+    private int poolSize(String runtime) {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = appconfig.getRuntimes().get(runtime);
+        return runtimeConfig == null ? 0 : runtimeConfig.getBuilderPoolSize();
+    }
+
+    /**
+     * The builder images are pulled once the init containers of the pod complete and it starts running.
+     */
+    private static boolean isReady(V1Pod pod) {
+        return pod.getMetadata().getDeletionTimestamp() == null
+                && pod.getStatus() != null
+                && "Running".equals(pod.getStatus().getPhase());
+    }
+
+    private static boolean isFailed(V1Pod pod) {
+        return pod.getStatus() != null && "Failed".equals(pod.getStatus().getPhase());
+    }
+
+    private static boolean isExpired(V1Pod pod, Instant expiry) {
+        return pod.getMetadata().getCreationTimestamp() != null
+                && pod.getMetadata().getCreationTimestamp().toInstant().isBefore(expiry);
+    }
+
+    private static V1Job preferNode(V1Job job, String node) {
+        V1PodSpec spec = job.getSpec().getTemplate().getSpec();
+        V1Affinity affinity = Objects.requireNonNullElseGet(spec.getAffinity(), V1Affinity::new);
+        V1NodeAffinity nodeAffinity = Objects.requireNonNullElseGet(affinity.getNodeAffinity(), V1NodeAffinity::new);
+        // Preferred rather than required, so that the build is not stuck if another pod takes the room on the node
+        nodeAffinity.addPreferredDuringSchedulingIgnoredDuringExecutionItem(new V1PreferredSchedulingTerm()
+                .weight(100)
+                .preference(new V1NodeSelectorTerm()
+                        .addMatchFieldsItem(new V1NodeSelectorRequirement()
+                                .key("metadata.name")
+                                .operator("In")
+                                .addValuesItem(node))));
+        spec.setAffinity(affinity.nodeAffinity(nodeAffinity));
+        return job;
+    }
+}
@@ -2,35 +2,51 @@ package com.epam.aidial.service;
 
 
 import com.epam.aidial.config.AppConfiguration;
-import com.epam.aidial.config.DockerAuthScheme;
+import com.epam.aidial.kubernetes.KubernetesClient;
 import com.epam.aidial.kubernetes.knative.V1RevisionTemplateSpec;
 import com.epam.aidial.kubernetes.knative.V1Service;
 import com.epam.aidial.util.mapping.ListMapper;
 import com.epam.aidial.util.mapping.MappingChain;
+import io.kubernetes.client.custom.Quantity;
+import io.kubernetes.client.openapi.JSON;
 import io.kubernetes.client.openapi.models.V1Container;
 import io.kubernetes.client.openapi.models.V1EnvFromSource;
 import io.kubernetes.client.openapi.models.V1EnvVar;
 import io.kubernetes.client.openapi.models.V1Job;
 import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1OwnerReference;
+import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1PodSpec;
+import io.kubernetes.client.openapi.models.V1ResourceRequirements;
 import io.kubernetes.client.openapi.models.V1Secret;
 import io.kubernetes.client.openapi.models.V1SecretEnvSource;
 import io.kubernetes.client.openapi.models.V1SecretVolumeSource;
 import io.kubernetes.client.openapi.models.V1VolumeMount;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
 
 import static com.epam.aidial.util.NamingUtils.appName;
+import static com.epam.aidial.util.NamingUtils.baseImageJobName;
 import static com.epam.aidial.util.NamingUtils.buildJobName;
+import static com.epam.aidial.util.NamingUtils.builderPoolPodPrefix;
 import static com.epam.aidial.util.NamingUtils.dialAuthSecretName;
 import static com.epam.aidial.util.mapping.Mappers.CONTAINER_ARGS_FIELD;
 import static com.epam.aidial.util.mapping.Mappers.CONTAINER_ENV_FIELD;
@@ -44,6 +60,8 @@ import static com.epam.aidial.util.mapping.Mappers.JOB_TEMPLATE_FIELD;
 import static com.epam.aidial.util.mapping.Mappers.JOB_TEMPLATE_SPEC_FIELD;
 import static com.epam.aidial.util.mapping.Mappers.POD_CONTAINERS_FIELD;
 import static com.epam.aidial.util.mapping.Mappers.POD_INIT_CONTAINERS_FIELD;
+import static com.epam.aidial.util.mapping.Mappers.POD_METADATA_FIELD;
+import static com.epam.aidial.util.mapping.Mappers.POD_SPEC_FIELD;
 import static com.epam.aidial.util.mapping.Mappers.POD_VOLUMES_FIELD;
 import static com.epam.aidial.util.mapping.Mappers.SECRET_METADATA_FIELD;
 import static com.epam.aidial.util.mapping.Mappers.SERVICE_METADATA_FIELD;
@@ -60,13 +78,40 @@ import static com.epam.aidial.util.mapping.Mappers.VOLUME_NAME;
 @RequiredArgsConstructor
 public class ConfigService {
     private static final String DOCKER_CONFIG_KEY = "docker.config";
+    private static final String DOCKERFILE_KEY = "Dockerfile";
+    private static final String BASE_IMAGE_CONTEXT_PATH = "/workspace";
 
     private final RegistryService registryService;
     private final AppConfiguration appconfig;
+    private final List<ImageBuilder> imageBuilders;
 
     @Value("${app.docker-config-path}")
     private final String dockerConfigPath;
 
+    @Value("${app.build-cache-enabled}")
+    private final boolean buildCacheEnabled;
+
+    @Value("${app.allowed-python-packages}")
+    private final String allowedPythonPackages;
+
+    @Value("${app.additional-allowed-python-packages}")
+    private final String additionalAllowedPythonPackages;
+
+    /**
+     * Fails at startup rather than at the first build if a runtime selects a builder which does not exist
+     * or does not support the layer compression of the runtime.
+     */
+    @PostConstruct
+    public void validateBuilders() {
+        appconfig.getRuntimes().forEach((runtime, runtimeConfig) -> {
+            ImageBuilder imageBuilder = imageBuilder(runtimeConfig);
+            if (runtimeConfig.getLayerCompression() != null && !imageBuilder.compressions().contains(runtimeConfig.getLayerCompression())) {
+                throw new IllegalStateException("Builder %s of runtime %s does not support %s layer compression. Supported: %s".formatted(
+                        imageBuilder.name(), runtime, runtimeConfig.getLayerCompression(), imageBuilder.compressions()));
+            }
+        });
+    }
+
     public V1Secret dialAuthSecretConfig(String name, String apiKey, String jwt) {
         Map<String, String> creds = new HashMap<>();
         if (StringUtils.isNotBlank(apiKey)) {
@@ -75,7 +120,7 @@ public class ConfigService {
         if (StringUtils.isNotBlank(jwt)) {
             creds.put("JWT", jwt);
         }
-        if (registryService.getAuthScheme() == DockerAuthScheme.BASIC) {
+        if (registryService.hasCredentials()) {
             creds.put(DOCKER_CONFIG_KEY, registryService.dockerConfig());
         }
 
@@ -87,16 +132,111 @@ public class ConfigService {
         return config.data().stringData(creds);
     }
 
-    public V1Job buildJobConfig(String name, String sources, String runtime) {
-        String targetImage = registryService.fullImageName(name);
-        log.info("Target image: {}", targetImage);
+    /**
+     * Computes a key identifying the build result: the same sources built for the same runtime on the same base image
+     * with the same template container and builder produce the same image.
+     *
+     * @param baseImage the image built on instead of the image of the runtime, as passed to {@link #buildJobConfig}
+     * @return the key or null if the build result cannot be reused
+     */
+    @Nullable
+    public String buildCacheKey(@Nullable String sourcesDigest, String runtime, @Nullable String baseImage) {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = this.appconfig.getRuntimes().get(runtime);
+        if (!buildCacheEnabled || StringUtils.isBlank(sourcesDigest) || runtimeConfig == null) {
+            return null;
+        }
 
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        Stream.of(
+                        sourcesDigest,
+                        Objects.requireNonNullElse(baseImage, runtimeConfig.getImage()),
+                        runtimeConfig.getProfile(),
+                        JSON.serialize(appconfig.getJobConfig()),
+                        JSON.serialize(appconfig.getTemplateContainer()),
+                        runtimeConfig.getBuilder(),
+                        JSON.serialize(imageBuilder(runtimeConfig).containerConfig()),
+                        Objects.toString(runtimeConfig.getLayerCompression(), null))
+                .map(value -> Objects.requireNonNullElse(value, "") + "\n")
+                .forEach(value -> digest.update(value.getBytes(StandardCharsets.UTF_8)));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Computes a key identifying the validation of the sources by the template container:
+     * the same sources fetched for the same runtime profile by the same template container pass it alike.
+     *
+     * @return the key or null if the runtime is unknown
+     */
+    @Nullable
+    public String validationKey(String sourcesDigest, String runtime) {
         AppConfiguration.RuntimeConfiguration runtimeConfig = this.appconfig.getRuntimes().get(runtime);
         if (runtimeConfig == null) {
-            throw new IllegalArgumentException(
-                    "Unsupported runtime: %s. Supported: %s".formatted(runtime, this.appconfig.getRuntimes().keySet()));
+            return null;
+        }
+
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        Stream.of(
+                        sourcesDigest,
+                        runtimeConfig.getProfile(),
+                        JSON.serialize(appconfig.getTemplateContainer()))
+                .map(value -> Objects.requireNonNullElse(value, "") + "\n")
+                .forEach(value -> digest.update(value.getBytes(StandardCharsets.UTF_8)));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Builds the job config of an application image.
+     *
+     * @param baseImage the image to build on instead of the image of the runtime, e.g. its prebuilt base image
+     */
+    public V1Job buildJobConfig(String name, String sources, String runtime, @Nullable String baseImage, @Nullable String cacheKey) {
+        String targetImage = registryService.fullImageName(name);
+        log.info("Target image: {}", targetImage);
+
+        AppConfiguration.RuntimeConfiguration runtimeConfig = runtimeConfig(runtime);
+        MappingChain<V1Job> config = new MappingChain<>(this.appconfig.cloneJobConfig());
+        config.get(JOB_METADATA_FIELD)
+                .data()
+                .setName(buildJobName(name));
+        MappingChain<V1PodSpec> podSpec = config.get(JOB_SPEC_FIELD)
+                .get(JOB_TEMPLATE_FIELD)
+                .get(JOB_TEMPLATE_SPEC_FIELD);
+        ImageBuilder imageBuilder = imageBuilder(runtimeConfig);
+        configureTemplate(podSpec.getList(POD_INIT_CONTAINERS_FIELD, CONTAINER_NAME), name, sources, runtimeConfig, imageBuilder);
+        String secretName = dialAuthSecretName(name);
+        MappingChain<V1Container> builder = podSpec.getList(POD_CONTAINERS_FIELD, CONTAINER_NAME)
+                .getOrDefault(imageBuilder.containerConfig().getName(), imageBuilder::cloneContainerConfig);
+        imageBuilder.configure(new ImageBuilder.BuildJob(
+                podSpec,
+                builder,
+                name,
+                runtime,
+                runtimeConfig,
+                targetImage,
+                Objects.requireNonNullElse(baseImage, runtimeConfig.getImage()),
+                cacheKey == null ? null : registryService.fullCacheImageName(cacheKey)));
+        if (registryService.hasCredentials()) {
+            String volumeName = "secret-volume";
+            podSpec.getList(POD_VOLUMES_FIELD, VOLUME_NAME)
+                    .get(volumeName)
+                    .data()
+                    .setSecret(new V1SecretVolumeSource().secretName(secretName));
+            V1VolumeMount volumeMount = builder.getList(CONTAINER_VOLUME_MOUNTS_FIELD, VOLUME_MOUNT_PATH)
+                    .get(imageBuilder.dockerConfigPath())
+                    .data();
+            volumeMount.setName(volumeName);
+            volumeMount.setSubPath(DOCKER_CONFIG_KEY);
         }
 
+        return config.data();
+    }
+
+    /**
+     * Builds the job config validating the sources of an application without building its image:
+     * the template container runs as the only container of the job, which takes the name of the build job.
+     */
+    public V1Job validationJobConfig(String name, String sources, String runtime) {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = runtimeConfig(runtime);
         MappingChain<V1Job> config = new MappingChain<>(this.appconfig.cloneJobConfig());
         config.get(JOB_METADATA_FIELD)
                 .data()
@@ -104,8 +244,18 @@ public class ConfigService {
         MappingChain<V1PodSpec> podSpec = config.get(JOB_SPEC_FIELD)
                 .get(JOB_TEMPLATE_FIELD)
                 .get(JOB_TEMPLATE_SPEC_FIELD);
-        MappingChain<V1Container> template = podSpec.getList(POD_INIT_CONTAINERS_FIELD, CONTAINER_NAME)
-                .getOrDefault(appconfig.getTemplateContainer().getName(), appconfig::cloneTemplateContainer);
+        configureTemplate(podSpec.getList(POD_CONTAINERS_FIELD, CONTAINER_NAME), name, sources, runtimeConfig, imageBuilder(runtimeConfig));
+
+        return config.data();
+    }
+
+    private void configureTemplate(
+            ListMapper<V1Container> containers,
+            String name,
+            String sources,
+            AppConfiguration.RuntimeConfiguration runtimeConfig,
+            ImageBuilder imageBuilder) {
+        MappingChain<V1Container> template = containers.getOrDefault(appconfig.getTemplateContainer().getName(), appconfig::cloneTemplateContainer);
         ListMapper<V1EnvVar> pullerEnvs = template.getList(CONTAINER_ENV_FIELD, ENV_VAR_NAME);
         pullerEnvs.get("SOURCES")
                 .data()
@@ -113,37 +263,150 @@ public class ConfigService {
         pullerEnvs.get("PROFILE")
                 .data()
                 .setValue(runtimeConfig.getProfile());
-        String secretName = dialAuthSecretName(name);
         template.get(CONTAINER_ENV_FROM_FIELD)
                 .data()
-                .add(new V1EnvFromSource().secretRef(new V1SecretEnvSource().name(secretName)));
+                .add(new V1EnvFromSource().secretRef(new V1SecretEnvSource().name(dialAuthSecretName(name))));
+        pullerEnvs.get("BUILDER_CAPABILITIES")
+                .data()
+                .setValue(imageBuilder.capabilities().stream()
+                        .map(capability -> capability.name().toLowerCase().replace('_', '-'))
+                        .sorted()
+                        .collect(Collectors.joining(",")));
+    }
+
+    /**
+     * Computes the tag of the base image of the runtime from its Dockerfile,
+     * so that the image is built again only when the runtime image or the allowed packages change.
+     */
+    public String baseImageTag(String runtime) {
+        return "%s-%s".formatted(runtime, DigestUtils.sha256Hex(baseImageDockerfile(runtimeConfig(runtime))).substring(0, 16));
+    }
+
+    /**
+     * Builds the secret holding the Dockerfile of the base image of the runtime, and the docker config to push it.
+     * The secret is owned by the job building the image, so that it is deleted along with the job.
+     */
+    public V1Secret baseImageSecretConfig(String runtime, String name, V1Job job) {
+        Map<String, String> data = new HashMap<>();
+        data.put(DOCKERFILE_KEY, baseImageDockerfile(runtimeConfig(runtime)));
+        if (registryService.hasCredentials()) {
+            data.put(DOCKER_CONFIG_KEY, registryService.dockerConfig());
+        }
+
+        MappingChain<V1Secret> config = new MappingChain<>(this.appconfig.cloneSecretConfig());
+        V1ObjectMeta metadata = config.get(SECRET_METADATA_FIELD)
+                .data();
+        metadata.setName(name);
+        metadata.addOwnerReferencesItem(new V1OwnerReference()
+                .apiVersion(job.getApiVersion())
+                .kind(job.getKind())
+                .name(job.getMetadata().getName())
+                .uid(job.getMetadata().getUid()));
+
+        return config.data().stringData(data);
+    }
+
+    /**
+     * Builds the job config of the base image of the runtime.
+     *
+     * @param secretName the name of the secret built by {@link #baseImageSecretConfig}, which the job waits for
+     */
+    public V1Job baseImageJobConfig(String runtime, String targetImage, String secretName) {
+        String name = baseImageJobName(runtime);
+        MappingChain<V1Job> config = new MappingChain<>(this.appconfig.cloneJobConfig());
+        config.get(JOB_METADATA_FIELD)
+                .data()
+                .setName(name);
+        MappingChain<V1PodSpec> podSpec = config.get(JOB_SPEC_FIELD)
+                .get(JOB_TEMPLATE_FIELD)
+                .get(JOB_TEMPLATE_SPEC_FIELD);
+        String volumeName = "secret-volume";
+        podSpec.getList(POD_VOLUMES_FIELD, VOLUME_NAME)
+                .get(volumeName)
+                .data()
+                .setSecret(new V1SecretVolumeSource().secretName(secretName));
         MappingChain<V1Container> builder = podSpec.getList(POD_CONTAINERS_FIELD, CONTAINER_NAME)
-                .getOrDefault(appconfig.getBuilderContainer().getName(), appconfig::cloneBuilderContainer);
+                .get(appconfig.getBuilderContainer().getName());
+        builder.data()
+                .setImage(appconfig.getBuilderContainer().getImage());
         builder.get(CONTAINER_ARGS_FIELD)
                 .data()
                 .addAll(List.of(
-                        "--destination=%s".formatted(targetImage),
-                        "--build-arg=BASE_IMAGE=%s".formatted(runtimeConfig.getImage())));
-        if (registryService.getAuthScheme() == DockerAuthScheme.BASIC) {
-            String volumeName = "secret-volume";
-            podSpec.getList(POD_VOLUMES_FIELD, VOLUME_NAME)
-                    .get(volumeName)
-                    .data()
-                    .setSecret(new V1SecretVolumeSource().secretName(secretName));
-            V1VolumeMount volumeMount = builder.getList(CONTAINER_VOLUME_MOUNTS_FIELD, VOLUME_MOUNT_PATH)
-                    .get(dockerConfigPath)
+                        "--context=dir://%s".formatted(BASE_IMAGE_CONTEXT_PATH),
+                        "--dockerfile=%s/%s".formatted(BASE_IMAGE_CONTEXT_PATH, DOCKERFILE_KEY),
+                        "--destination=%s".formatted(targetImage)));
+        ListMapper<V1VolumeMount> volumeMounts = builder.getList(CONTAINER_VOLUME_MOUNTS_FIELD, VOLUME_MOUNT_PATH);
+        V1VolumeMount dockerfileMount = volumeMounts.get("%s/%s".formatted(BASE_IMAGE_CONTEXT_PATH, DOCKERFILE_KEY))
+                .data();
+        dockerfileMount.setName(volumeName);
+        dockerfileMount.setSubPath(DOCKERFILE_KEY);
+        if (registryService.hasCredentials()) {
+            V1VolumeMount dockerConfigMount = volumeMounts.get(dockerConfigPath)
                     .data();
-            volumeMount.setName(volumeName);
-            volumeMount.setSubPath(DOCKER_CONFIG_KEY);
+            dockerConfigMount.setName(volumeName);
+            dockerConfigMount.setSubPath(DOCKER_CONFIG_KEY);
         }
 
         return config.data();
     }
 
+    /**
+     * Builds an idle pod of the builder pool of the runtime. An init container pulls the image of the builder of the runtime,
+     * and the placeholder container, the first container of the pod, requests the resources of a build pod
+     * unless the config sets them, so that a build fits in its place on the node.
+     */
+    public V1Pod builderPoolPodConfig(String runtime) {
+        ImageBuilder imageBuilder = imageBuilder(runtimeConfig(runtime));
+        MappingChain<V1Pod> config = new MappingChain<>(this.appconfig.cloneBuilderPoolPodConfig());
+        V1ObjectMeta metadata = config.get(POD_METADATA_FIELD)
+                .data();
+        metadata.setGenerateName(builderPoolPodPrefix(runtime));
+        metadata.putLabelsItem(KubernetesClient.BUILDER_POOL_LABEL, runtime);
+        MappingChain<V1PodSpec> podSpec = config.get(POD_SPEC_FIELD);
+        V1Container builder = imageBuilder.containerConfig();
+        podSpec.getList(POD_INIT_CONTAINERS_FIELD, CONTAINER_NAME)
+                .get(builder.getName())
+                .data()
+                .image(builder.getImage())
+                .imagePullPolicy(builder.getImagePullPolicy())
+                .command(imageBuilder.versionCommand());
+        V1Container placeholder = podSpec.get(POD_CONTAINERS_FIELD)
+                .data()
+                .getFirst();
+        V1ResourceRequirements resources = Objects.requireNonNullElseGet(placeholder.getResources(), V1ResourceRequirements::new);
+        Map<String, Quantity> requests = buildPodRequests(appconfig.getTemplateContainer(), builder);
+        // Requests set on the placeholder explicitly take precedence
+        Optional.ofNullable(resources.getRequests()).ifPresent(requests::putAll);
+        placeholder.setResources(resources.requests(requests));
+        return config.data();
+    }
+
+    /**
+     * The resources requested by a build pod: the template container is an init container, which completes
+     * before the builder container starts, so the pod requests the larger of both.
+     */
+    private static Map<String, Quantity> buildPodRequests(V1Container template, V1Container builder) {
+        Map<String, Quantity> requests = new TreeMap<>();
+        Stream.of(template, builder)
+                .map(container -> Optional.ofNullable(container.getResources())
+                        .map(V1ResourceRequirements::getRequests)
+                        .orElseGet(Map::of))
+                .forEach(containerRequests -> containerRequests.forEach((resource, quantity) -> requests.merge(resource, quantity,
+                        (a, b) -> a.getNumber().compareTo(b.getNumber()) >= 0 ? a : b)));
+        return requests;
+    }
+
+    /**
+     * Builds the service config of an application.
+     *
+     * @param image  the image to deploy instead of the image of the application
+     * @param digest the digest of the image of the application to deploy it pinned, by its label if null
+     */
     public V1Service appServiceConfig(
             String name,
             Map<String, String> env,
             @Nullable String image,
+            @Nullable String digest,
             @Nullable Integer initScale,
             @Nullable Integer minScale,
             @Nullable Integer maxScale) {
@@ -171,8 +434,16 @@ public class ConfigService {
                 .getList(TEMPLATE_CONTAINERS_FIELD, CONTAINER_NAME)
                 .getOrDefault(appconfig.getServiceContainer().getName(), appconfig::cloneServiceContainer);
 
+        String containerImage = image != null
+                ? image
+                : digest != null ? registryService.pinnedImageName(name, digest) : registryService.fullImageName(name);
         container.data()
-                .setImage(Objects.requireNonNullElse(image, registryService.fullImageName(name)));
+                .setImage(containerImage);
+        // An image pinned by digest never changes, so a node having it skips the registry round trip on cold start
+        if (containerImage.contains("@")) {
+            container.data()
+                    .setImagePullPolicy("IfNotPresent");
+        }
         ListMapper<V1EnvVar> containerEnv = container.getList(CONTAINER_ENV_FIELD, ENV_VAR_NAME);
 
         env.forEach((key, value) -> containerEnv.get(key)
@@ -180,4 +451,32 @@ public class ConfigService {
                 .setValue(value));
         return config.data();
     }
+
+    private AppConfiguration.RuntimeConfiguration runtimeConfig(String runtime) {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = this.appconfig.getRuntimes().get(runtime);
+        if (runtimeConfig == null) {
+            throw new IllegalArgumentException(
+                    "Unsupported runtime: %s. Supported: %s".formatted(runtime, this.appconfig.getRuntimes().keySet()));
+        }
+
+        return runtimeConfig;
+    }
+
+    private ImageBuilder imageBuilder(AppConfiguration.RuntimeConfiguration runtimeConfig) {
+        return imageBuilders.stream()
+                .filter(imageBuilder -> imageBuilder.name().equals(runtimeConfig.getBuilder()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unsupported builder: %s. Supported: %s".formatted(
+                        runtimeConfig.getBuilder(), imageBuilders.stream().map(ImageBuilder::name).toList())));
+    }
+
+    private String baseImageDockerfile(AppConfiguration.RuntimeConfiguration runtimeConfig) {
+        String packages = Stream.of(allowedPythonPackages, additionalAllowedPythonPackages)
+                .flatMap(value -> Stream.of(StringUtils.split(value)))
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(" \\\n    "));
+        // The same build argument as the template Dockerfile, so that pip leaves no cache in the layer
+        return "FROM %s\nARG PIP_NO_CACHE_DIR=1\nRUN pip install \\\n    %s\n".formatted(runtimeConfig.getImage(), packages);
+    }
 }
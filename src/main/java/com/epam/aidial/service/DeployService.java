@@ -1,26 +1,55 @@
 package com.epam.aidial.service;
 
 import com.epam.aidial.dto.GetApplicationLogsResponseDto;
+import com.epam.aidial.dto.GetDeploymentResponseDto;
 import com.epam.aidial.kubernetes.KubernetesClient;
+import com.epam.aidial.kubernetes.knative.V1Condition;
+import com.epam.aidial.kubernetes.knative.V1Service;
+import com.epam.aidial.kubernetes.knative.V1ServiceStatus;
+import com.epam.aidial.util.KubernetesUtils;
+import com.epam.aidial.util.LogCollector;
+import com.epam.aidial.util.LogUtils;
+import com.epam.aidial.util.MetricsUtils;
 import io.kubernetes.client.openapi.models.V1ContainerStatus;
 import io.kubernetes.client.openapi.models.V1PodList;
 import io.kubernetes.client.openapi.models.V1PodStatus;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static com.epam.aidial.util.NamingUtils.appName;
+import static com.epam.aidial.util.NamingUtils.nameFromAppName;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class DeployService {
+    private static final String DEPLOY_OPERATION = "deploy";
+    private static final String UNDEPLOY_REQUEST = "undeploy";
+    private static final Duration LOG_CLOCK_SKEW = Duration.ofSeconds(5);
     private final KubernetesService kubernetesService;
     private final ConfigService templateService;
+    private final RegistryService registryService;
+    private final OperationCoordinator operationCoordinator;
+    private final MeterRegistry meterRegistry;
 
     @Value("${app.deploy-namespace}")
     private final String namespace;
@@ -31,47 +60,196 @@ public class DeployService {
     @Value("${app.service-setup-timeout-sec}")
     private final int serviceSetupTimeoutSec;
 
+    @Value("${app.max-concurrent-log-requests}")
+    private final int maxConcurrentLogRequests;
+
     public Mono<String> deploy(
             String name,
             Map<String, String> env,
             @Nullable String image,
             @Nullable Integer initialScale,
             @Nullable Integer minScale,
-            @Nullable Integer maxScale) {
+            @Nullable Integer maxScale,
+            Consumer<OperationEvent> listener) {
+        DeployRequest request = new DeployRequest(env, image, initialScale, minScale, maxScale);
         KubernetesClient kubernetesClient = kubernetesService.deployClient();
-        return Mono.fromCallable(() -> templateService.appServiceConfig(name, env, image, initialScale, minScale, maxScale))
-                .flatMap(service -> kubernetesClient.createKnativeService(namespace, service, serviceSetupTimeoutSec));
+        return operationCoordinator.execute(resource(name), request, listener, events -> MetricsUtils.operation(meterRegistry, DEPLOY_OPERATION,
+                imageDigest(name, image)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .map(digest -> templateService.appServiceConfig(name, env, image, digest.orElse(null), initialScale, minScale, maxScale))
+                        .flatMap(service -> MetricsUtils.stage(meterRegistry, DEPLOY_OPERATION, "service", ProgressUtils.withProgress(
+                                kubernetesClient.createKnativeService(namespace, service, serviceSetupTimeoutSec),
+                                kubernetesClient.watchKnativeService(namespace, service.getMetadata().getName(), kubernetesService.getKnativeServiceVersion())
+                                        .map(KubernetesUtils::extractServiceStage),
+                                events)))));
+    }
+
+    /**
+     * Retrieves the digest of the image of the application from the registry rather than from the cache,
+     * as the image may have been rebuilt by another instance. Deploys by the tag if there is no digest.
+     */
+    private Mono<String> imageDigest(String name, @Nullable String image) {
+        if (image != null) {
+            return Mono.empty();
+        }
+
+        return registryService.refreshDigest(name)
+                .onErrorResume(e -> {
+                    log.warn("Failed to retrieve digest of {}, deploying by tag", name, e);
+                    return Mono.empty();
+                });
     }
 
     public Mono<Boolean> undeploy(String name) {
+        return operationCoordinator.execute(resource(name), UNDEPLOY_REQUEST,
+                () -> MetricsUtils.operation(meterRegistry, UNDEPLOY_REQUEST, deleteDeployment(name)));
+    }
+
+    private Mono<Boolean> deleteDeployment(String name) {
         KubernetesClient kubernetesClient = kubernetesService.deployClient();
         String appName = appName(name);
-        return kubernetesClient.deleteKnativeService(
-                        namespace, appName, kubernetesService.getKnativeServiceVersion())
+        return MetricsUtils.stage(meterRegistry, UNDEPLOY_REQUEST, "service", kubernetesClient.deleteKnativeService(
+                        namespace, appName, kubernetesService.getKnativeServiceVersion()))
                 // Knative has a default termination grace period and ignores any configured value.
                 // Therefore, an extra step is performed to delete pods instantly.
-                .flatMap(deleted -> kubernetesClient.getKnativeServicePods(namespace, appName)
+                .flatMap(deleted -> MetricsUtils.stage(meterRegistry, UNDEPLOY_REQUEST, "pods",
+                        kubernetesClient.getKnativeServicePods(namespace, appName)
+                                .flatMapIterable(V1PodList::getItems)
+                                .flatMap(pod -> kubernetesClient.deletePod(namespace, pod.getMetadata().getName()))
+                                .reduce(deleted, (a, b) -> a || b)));
+    }
+
+    /**
+     * Reads the logs of the ready instances of the deployment, each entry as soon as its instance responds.
+     * The returned cursors let the next request read only the lines written since.
+     */
+    public Flux<GetApplicationLogsResponseDto.LogEntry> logs(
+            String name,
+            @Nullable Integer tailLines,
+            @Nullable Integer limitBytes,
+            @Nullable Instant since,
+            List<String> cursors) {
+        KubernetesClient kubernetesClient = kubernetesService.deployClient();
+        return Mono.fromCallable(() -> decodeCursors(cursors))
+                .flatMapMany(positions -> kubernetesClient.getKnativeServicePods(namespace, appName(name))
                         .flatMapIterable(V1PodList::getItems)
-                        .flatMap(pod -> kubernetesClient.deletePod(namespace, pod.getMetadata().getName()))
-                        .reduce(deleted, (a, b) -> a || b));
+                        .filter(pod -> isContainerReady(pod.getStatus(), serviceContainer))
+                        .flatMap(pod -> {
+                            String podName = pod.getMetadata().getName();
+                            return podLogs(kubernetesClient, podName, tailLines, limitBytes, since, positions.get(podName));
+                        }, maxConcurrentLogRequests));
+    }
+
+    private Mono<GetApplicationLogsResponseDto.LogEntry> podLogs(
+            KubernetesClient kubernetesClient,
+            String podName,
+            @Nullable Integer tailLines,
+            @Nullable Integer limitBytes,
+            @Nullable Instant since,
+            @Nullable Instant cursor) {
+        return Mono.defer(() -> {
+            // Kubernetes has no sinceTime for logs, so the lines are read with a margin and filtered by their timestamps
+            Instant start = cursor == null || (since != null && since.isAfter(cursor)) ? since : cursor;
+            Integer sinceSeconds = start == null
+                    ? null
+                    : (int) Math.max(1, Duration.between(start, Instant.now()).plus(LOG_CLOCK_SKEW).toSeconds() + 1);
+            // The byte limit is applied to the lines after the cursor rather than by Kubernetes to the whole margin,
+            // otherwise the lines already returned could take up the limit and the cursor would never advance
+            KubernetesClient.LogQuery query = new KubernetesClient.LogQuery(false, tailLines, null, sinceSeconds, true);
+            LogCollector collector = new LogCollector(cursor, since, limitBytes);
+            return kubernetesClient.streamContainerLog(namespace, podName, serviceContainer, query)
+                    .doOnNext(collector::accept)
+                    .takeUntil(ignore -> collector.isFull())
+                    .then(Mono.fromSupplier(() -> new GetApplicationLogsResponseDto.LogEntry(
+                            podName,
+                            collector.content(),
+                            collector.last() == null ? null : LogUtils.encodeCursor(podName, collector.last()))));
+        });
+    }
+
+    private static Map<String, Instant> decodeCursors(List<String> cursors) {
+        Map<String, Instant> positions = new HashMap<>();
+        for (String cursor : cursors) {
+            Pair<String, Instant> position;
+            try {
+                position = LogUtils.decodeCursor(cursor);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+            }
+
+            positions.merge(position.getKey(), position.getValue(), (a, b) -> a.isAfter(b) ? a : b);
+        }
+
+        return positions;
     }
 
-    public Mono<List<GetApplicationLogsResponseDto.LogEntry>> logs(String name) {
+    /**
+     * Follows the logs of all instances of the deployment, including those started later, as NDJSON lines
+     * of {@link GetApplicationLogsResponseDto.LogEntry}. The logs are passed on as bytes without being decoded.
+     */
+    public Flux<byte[]> followLogs(String name, @Nullable Integer tailLines) {
         KubernetesClient kubernetesClient = kubernetesService.deployClient();
-        return kubernetesClient.getKnativeServicePods(namespace, appName(name))
-                .flatMapIterable(V1PodList::getItems)
+        String appName = appName(name);
+        return kubernetesClient.watchKnativeServicePods(namespace, appName)
+                .mergeWith(kubernetesClient.getCachedKnativeServicePods(namespace, appName).flatMapIterable(Function.identity()))
+                .filter(pod -> KubernetesUtils.isContainerStarted(pod, serviceContainer))
+                .distinct(pod -> pod.getMetadata().getName())
                 .flatMap(pod -> {
-                    if (!isContainerReady(pod.getStatus(), serviceContainer)) {
-                        return Mono.empty();
-                    }
-
                     String podName = pod.getMetadata().getName();
-                    return kubernetesClient.getContainerLog(namespace, podName, serviceContainer)
-                            .map(text -> new GetApplicationLogsResponseDto.LogEntry(podName, text));
-                })
+                    return kubernetesClient.followContainerLogBytes(namespace, podName, serviceContainer, tailLines)
+                            .map(line -> LogUtils.encodeLogEntry(podName, line));
+                });
+    }
+
+    public Mono<List<GetDeploymentResponseDto>> list() {
+        KubernetesClient kubernetesClient = kubernetesService.deployClient();
+        return kubernetesClient.getCachedKnativeServices(namespace, kubernetesService.getKnativeServiceVersion())
+                .flatMapIterable(Function.identity())
+                .filter(service -> nameFromAppName(service.getMetadata().getName()) != null)
+                .flatMapSequential(service -> deploymentStatus(kubernetesClient, service))
                 .collectList();
     }
 
+    public Mono<GetDeploymentResponseDto> status(String name) {
+        KubernetesClient kubernetesClient = kubernetesService.deployClient();
+        return kubernetesClient.getCachedKnativeService(namespace, appName(name), kubernetesService.getKnativeServiceVersion())
+                .flatMap(service -> deploymentStatus(kubernetesClient, service))
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, "Deployment %s is not found".formatted(name))));
+    }
+
+    private Mono<GetDeploymentResponseDto> deploymentStatus(KubernetesClient kubernetesClient, V1Service service) {
+        String appName = service.getMetadata().getName();
+        return kubernetesClient.getCachedKnativeServicePods(namespace, appName)
+                .map(pods -> {
+                    int instances = (int) pods.stream()
+                            .filter(pod -> pod.getStatus() != null && "Running".equals(pod.getStatus().getPhase()))
+                            .count();
+                    V1ServiceStatus status = service.getStatus();
+                    V1Condition ready = Optional.ofNullable(status)
+                            .map(V1ServiceStatus::getConditions)
+                            .stream()
+                            .flatMap(Arrays::stream)
+                            .filter(condition -> "Ready".equals(condition.getType()))
+                            .findFirst()
+                            .orElse(null);
+                    String name = nameFromAppName(appName);
+                    if (ready == null) {
+                        return new GetDeploymentResponseDto(name, GetDeploymentResponseDto.Status.DEPLOYING, null, null, instances);
+                    }
+
+                    return switch (ready.getStatus()) {
+                        case "True" -> new GetDeploymentResponseDto(
+                                name, GetDeploymentResponseDto.Status.READY, status.getUrl(), null, instances);
+                        case "False" -> new GetDeploymentResponseDto(
+                                name, GetDeploymentResponseDto.Status.FAILED, null, ready.getMessage(), instances);
+                        default -> new GetDeploymentResponseDto(
+                                name, GetDeploymentResponseDto.Status.DEPLOYING, null, ready.getMessage(), instances);
+                    };
+                });
+    }
+
     private static boolean isContainerReady(V1PodStatus podStatus, String container) {
         V1ContainerStatus containerStatus = podStatus.getContainerStatuses().stream()
                 .filter(status -> container.equals(status.getName()))
@@ -79,4 +257,16 @@ public class DeployService {
                 .orElseThrow(() -> new IllegalStateException("Container %s is missing in service pod".formatted(container)));
         return containerStatus.getState().getWaiting() == null;
     }
+
+    private static String resource(String name) {
+        return "deployment/%s".formatted(name);
+    }
+
+    private record DeployRequest(
+            Map<String, String> env,
+            @Nullable String image,
+            @Nullable Integer initialScale,
+            @Nullable Integer minScale,
+            @Nullable Integer maxScale) {
+    }
 }
@@ -0,0 +1,199 @@
+package com.epam.aidial.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lists and downloads the sources of applications from the DIAL file storage with the credentials of the caller,
+ * for the builds done by the controller itself and for the build cache.
+ */
+@Service
+@RequiredArgsConstructor
+public class DialFileService {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int PAGE_SIZE = 1000;
+    private static final long MAX_PAGE_BYTES = 16L * 1024 * 1024;
+
+    private final OkHttpClient okHttpClient;
+
+    @Value("${app.dial-base-url}")
+    private final String dialBaseUrl;
+
+    /**
+     * Computes the digest of the files of the folder from their paths and etags, without downloading them.
+     * The files are listed with the credentials of the caller, so a caller only gets the digest of sources it can read.
+     *
+     * @return nothing if a file has no etag
+     */
+    public Mono<String> sourcesDigest(String folder, @Nullable String apiKey, @Nullable String jwt) {
+        return list(folder, apiKey, jwt)
+                .flatMap(files -> Mono.justOrEmpty(digest(files)));
+    }
+
+    /**
+     * Downloads the files of the folder, e.g. files/bucket/app/, by their paths relative to it.
+     * The listed sizes are checked before anything is downloaded, and no more than the bytes left
+     * within maxBytes are read of a file in case it has grown since.
+     *
+     * @param sourcesDigest the digest the listed files must have, e.g. of the sources validated before
+     * @return nothing if the listed files have another digest or take more than maxBytes
+     */
+    public Mono<Map<String, byte[]>> download(String folder, @Nullable String apiKey, @Nullable String jwt, String sourcesDigest, long maxBytes) {
+        return list(folder, apiKey, jwt)
+                .filter(files -> sourcesDigest.equals(digest(files)))
+                .filter(files -> files.stream().mapToLong(SourceFile::contentLength).sum() <= maxBytes)
+                .flatMap(files -> {
+                    AtomicLong remaining = new AtomicLong(maxBytes);
+                    return Flux.fromIterable(files)
+                            .concatMap(file -> get(file.url(), apiKey, jwt, remaining.get())
+                                    .doOnNext(content -> remaining.addAndGet(-content.length))
+                                    .map(content -> Map.entry(file.path(), content)))
+                            .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+                });
+    }
+
+    private Mono<List<SourceFile>> list(String folder, @Nullable String apiKey, @Nullable String jwt) {
+        List<String> folderSegments = List.of(StringUtils.split(folder, '/'));
+        return listFiles(folderSegments, apiKey, jwt, null)
+                .expand(page -> page.nextToken() == null
+                        ? Mono.empty()
+                        : listFiles(folderSegments, apiKey, jwt, page.nextToken()))
+                .flatMapIterable(Page::files)
+                .collectList();
+    }
+
+    /**
+     * The digest of the files by their sorted paths and etags, which change whenever the content of a file does.
+     */
+    @Nullable
+    static String digest(List<SourceFile> files) {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        List<SourceFile> sorted = files.stream()
+                .sorted(Comparator.comparing(SourceFile::path))
+                .toList();
+        for (SourceFile file : sorted) {
+            if (StringUtils.isBlank(file.etag())) {
+                return null;
+            }
+
+            digest.update("%s\0%s\n".formatted(file.path(), file.etag()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private Mono<Page> listFiles(List<String> folderSegments, @Nullable String apiKey, @Nullable String jwt, @Nullable String token) {
+        HttpUrl.Builder url = HttpUrl.get(dialBaseUrl).newBuilder()
+                .addPathSegment("v1")
+                .addPathSegment("metadata");
+        folderSegments.forEach(url::addPathSegment);
+        url.addPathSegment("")
+                .addQueryParameter("recursive", "true")
+                .addQueryParameter("limit", String.valueOf(PAGE_SIZE));
+        if (token != null) {
+            url.addQueryParameter("token", token);
+        }
+
+        return get(url.build(), apiKey, jwt, MAX_PAGE_BYTES)
+                .map(content -> {
+                    try {
+                        JsonNode root = MAPPER.readTree(content);
+                        List<SourceFile> files = new ArrayList<>();
+                        // Folders are listed along with their files, which carry their encoded paths
+                        root.path("items").forEach(item -> {
+                            if ("ITEM".equals(item.path("nodeType").asText())) {
+                                HttpUrl fileUrl = HttpUrl.get(dialBaseUrl).newBuilder()
+                                        .addPathSegment("v1")
+                                        .addEncodedPathSegments(item.path("url").asText())
+                                        .build();
+                                files.add(new SourceFile(
+                                        relativePath(fileUrl, folderSegments.size()),
+                                        fileUrl,
+                                        StringUtils.defaultIfBlank(item.path("etag").asText(), null),
+                                        item.path("contentLength").asLong()));
+                            }
+                        });
+                        return new Page(files, StringUtils.defaultIfBlank(root.path("nextToken").asText(), null));
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to read files of %s".formatted(folderSegments), e);
+                    }
+                });
+    }
+
+    /**
+     * Reads the response body, failing without reading further if it takes more than maxBytes.
+     */
+    private Mono<byte[]> get(HttpUrl url, @Nullable String apiKey, @Nullable String jwt, long maxBytes) {
+        return Mono.create(sink -> {
+            Request.Builder request = new Request.Builder()
+                    .get()
+                    .url(url);
+            if (StringUtils.isNotBlank(apiKey)) {
+                request.header("Api-Key", apiKey);
+            }
+            if (StringUtils.isNotBlank(jwt)) {
+                request.header("Authorization", "Bearer " + jwt);
+            }
+            okHttpClient.newCall(request.build()).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    sink.error(e);
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
+                    try (response) {
+                        if (!response.isSuccessful()) {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        } else if (response.body().contentLength() > maxBytes || response.body().source().request(maxBytes + 1)) {
+                            sink.error(new IllegalStateException("%s takes more than %d bytes".formatted(url, maxBytes)));
+                        } else {
+                            sink.success(response.body().source().readByteArray());
+                        }
+                    }
+                }
+            });
+        });
+    }
+
+    private static String relativePath(HttpUrl file, int folderSegments) {
+        // The path of a file starts with /v1 followed by the folder
+        List<String> segments = file.pathSegments();
+        return String.join("/", segments.subList(folderSegments + 1, segments.size()));
+    }
+
+    /**
+     * @param contentLength the listed size, 0 if it is not listed
+     */
+    record SourceFile(String path, HttpUrl url, @Nullable String etag, long contentLength) {
+    }
+
+    private record Page(List<SourceFile> files, @Nullable String nextToken) {
+    }
+}
@@ -1,7 +1,8 @@
 package com.epam.aidial.service;
 
 import com.epam.aidial.util.SseUtils;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
@@ -9,22 +10,52 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
-@RequiredArgsConstructor
 public class HeartbeatService {
-    @Value("${app.heartbeat-period-sec}")
     private final int heartbeatPeriodSec;
+    private final AtomicInteger openStreams;
+    private final Counter heartbeatCounter;
+
+    public HeartbeatService(
+            @Value("${app.heartbeat-period-sec}") int heartbeatPeriodSec,
+            MeterRegistry meterRegistry) {
+        this.heartbeatPeriodSec = heartbeatPeriodSec;
+        this.openStreams = meterRegistry.gauge("app.sse.streams", new AtomicInteger());
+        this.heartbeatCounter = meterRegistry.counter("app.sse.heartbeats");
+    }
 
     public Flux<ServerSentEvent<Object>> setupHeartbeats(Mono<ServerSentEvent<Object>> data) {
+        return setupHeartbeats(Flux.empty(), data);
+    }
+
+    public Flux<ServerSentEvent<Object>> setupHeartbeats(Flux<ServerSentEvent<Object>> events, Mono<ServerSentEvent<Object>> data) {
         // Share to avoid double invocation
         Mono<ServerSentEvent<Object>> shared = data.share();
-        Flux<ServerSentEvent<Object>> heartbeats = Flux.interval(
+        Flux<ServerSentEvent<Object>> heartbeats = heartbeats(events)
+                .takeUntilOther(shared);
+
+        return Flux.concat(heartbeats, shared)
+                .doOnSubscribe(ignore -> openStreams.incrementAndGet())
+                .doFinally(ignore -> openStreams.decrementAndGet());
+    }
+
+    /**
+     * Streams the data as it comes, with heartbeats and events in between, until the data completes.
+     */
+    public Flux<ServerSentEvent<Object>> setupHeartbeats(Flux<ServerSentEvent<Object>> events, Flux<ServerSentEvent<Object>> data) {
+        return data.publish(shared -> Flux.merge(shared, heartbeats(events).takeUntilOther(shared.then(Mono.just(true)))))
+                .doOnSubscribe(ignore -> openStreams.incrementAndGet())
+                .doFinally(ignore -> openStreams.decrementAndGet());
+    }
+
+    private Flux<ServerSentEvent<Object>> heartbeats(Flux<ServerSentEvent<Object>> events) {
+        return Flux.interval(
                 Duration.ZERO,
                 Duration.ofSeconds(heartbeatPeriodSec))
                 .map(ignore -> SseUtils.heartbeat())
-                .takeUntilOther(shared);
-
-        return Flux.concat(heartbeats, shared);
+                .doOnNext(ignore -> heartbeatCounter.increment())
+                .mergeWith(events);
     }
 }
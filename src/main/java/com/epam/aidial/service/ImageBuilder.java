@@ -0,0 +1,73 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.config.LayerCompression;
+import com.epam.aidial.util.mapping.MappingChain;
+import io.kubernetes.client.openapi.models.V1Container;
+import io.kubernetes.client.openapi.models.V1PodSpec;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A backend building the image of an application in the builder container of the build job, from the sources
+ * and the Dockerfile prepared by the template container. Runtimes select their backend by its name.
+ */
+public interface ImageBuilder {
+    String name();
+
+    /**
+     * Features of the backend, which are passed to the template container so that the Dockerfile can make use of them.
+     */
+    Set<Capability> capabilities();
+
+    Set<LayerCompression> compressions();
+
+    /**
+     * The configured builder container, which is named the same for every backend, so that logs and progress
+     * are reported the same way.
+     */
+    V1Container containerConfig();
+
+    V1Container cloneContainerConfig();
+
+    /**
+     * Where the builder reads the docker config to push to the registry.
+     */
+    String dockerConfigPath();
+
+    /**
+     * A command of the builder image which only prints its version, so that an idle pod pulls the image without building.
+     */
+    List<String> versionCommand();
+
+    /**
+     * Adds the arguments and volumes of the build to the builder container of the job.
+     */
+    void configure(BuildJob job);
+
+    enum Capability {
+        // RUN --mount=type=cache in the Dockerfile
+        CACHE_MOUNTS,
+        // Independent stages of the Dockerfile are built concurrently
+        PARALLEL_STAGES,
+        // Layers are cached in the registry and reused by the next builds of the application and, when not overwritten, of others
+        REGISTRY_CACHE
+    }
+
+    /**
+     * @param name the name of the application
+     * @param cacheImage another image to push the result to, so that it is reused for the same sources
+     */
+    record BuildJob(
+            MappingChain<V1PodSpec> podSpec,
+            MappingChain<V1Container> container,
+            String name,
+            String runtime,
+            AppConfiguration.RuntimeConfiguration runtimeConfig,
+            String targetImage,
+            String baseImage,
+            @Nullable String cacheImage) {
+    }
+}
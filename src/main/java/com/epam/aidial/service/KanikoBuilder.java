@@ -0,0 +1,128 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.config.LayerCompression;
+import io.kubernetes.client.openapi.models.V1Container;
+import io.kubernetes.client.openapi.models.V1PersistentVolumeClaimVolumeSource;
+import io.kubernetes.client.openapi.models.V1VolumeMount;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.epam.aidial.util.mapping.Mappers.CONTAINER_ARGS_FIELD;
+import static com.epam.aidial.util.mapping.Mappers.CONTAINER_VOLUME_MOUNTS_FIELD;
+import static com.epam.aidial.util.mapping.Mappers.POD_VOLUMES_FIELD;
+import static com.epam.aidial.util.mapping.Mappers.VOLUME_MOUNT_PATH;
+import static com.epam.aidial.util.mapping.Mappers.VOLUME_NAME;
+
+/**
+ * Builds with the Kaniko executor of {@code app.builder-container}, which runs the Dockerfile in its own filesystem,
+ * so volumes mounted into the builder container are visible to the build steps.
+ */
+@Component
+@RequiredArgsConstructor
+public class KanikoBuilder implements ImageBuilder {
+    public static final String NAME = "kaniko";
+    private static final String BASE_IMAGE_CACHE_PATH = "/cache";
+    private static final String DEPENDENCY_CACHE_PATH = "/dependency-cache";
+
+    private final RegistryService registryService;
+    private final AppConfiguration appconfig;
+
+    @Value("${app.docker-config-path}")
+    private final String dockerConfigPath;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Set<Capability> capabilities() {
+        return Set.of(Capability.REGISTRY_CACHE);
+    }
+
+    @Override
+    public Set<LayerCompression> compressions() {
+        return Set.of(LayerCompression.GZIP, LayerCompression.ZSTD);
+    }
+
+    @Override
+    public V1Container containerConfig() {
+        return appconfig.getBuilderContainer();
+    }
+
+    @Override
+    public V1Container cloneContainerConfig() {
+        return appconfig.cloneBuilderContainer();
+    }
+
+    @Override
+    public String dockerConfigPath() {
+        return dockerConfigPath;
+    }
+
+    @Override
+    public List<String> versionCommand() {
+        return List.of("/kaniko/executor", "version");
+    }
+
+    @Override
+    public void configure(BuildJob job) {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = job.runtimeConfig();
+        List<String> args = job.container().get(CONTAINER_ARGS_FIELD).data();
+        args.add("--destination=%s".formatted(job.targetImage()));
+        args.add("--build-arg=BASE_IMAGE=%s".formatted(job.baseImage()));
+        if (job.cacheImage() != null) {
+            args.add("--destination=%s".formatted(job.cacheImage()));
+        }
+        if (runtimeConfig.getCacheRepository() != null) {
+            args.add("--cache=true");
+            args.add("--cache-repo=%s".formatted(registryService.fullRepositoryName(runtimeConfig.getCacheRepository())));
+            if (runtimeConfig.getCacheTtl() != null) {
+                args.add("--cache-ttl=%ds".formatted(runtimeConfig.getCacheTtl().toSeconds()));
+            }
+        }
+        if (runtimeConfig.getLayerCompression() != null) {
+            args.add("--compression=%s".formatted(runtimeConfig.getLayerCompression().name().toLowerCase()));
+        }
+        if (runtimeConfig.getBaseImageCacheClaim() != null) {
+            String volumeName = "base-image-cache";
+            job.podSpec().getList(POD_VOLUMES_FIELD, VOLUME_NAME)
+                    .get(volumeName)
+                    .data()
+                    .setPersistentVolumeClaim(new V1PersistentVolumeClaimVolumeSource()
+                            .claimName(runtimeConfig.getBaseImageCacheClaim())
+                            .readOnly(true));
+            V1VolumeMount volumeMount = job.container().getList(CONTAINER_VOLUME_MOUNTS_FIELD, VOLUME_MOUNT_PATH)
+                    .get(BASE_IMAGE_CACHE_PATH)
+                    .data();
+            volumeMount.setName(volumeName);
+            volumeMount.setReadOnly(true);
+            args.add("--cache-dir=%s".formatted(BASE_IMAGE_CACHE_PATH));
+        }
+        if (runtimeConfig.getDependencyCacheClaim() != null) {
+            String volumeName = "dependency-cache";
+            job.podSpec().getList(POD_VOLUMES_FIELD, VOLUME_NAME)
+                    .get(volumeName)
+                    .data()
+                    .setPersistentVolumeClaim(new V1PersistentVolumeClaimVolumeSource()
+                            .claimName(runtimeConfig.getDependencyCacheClaim()));
+            // Runtimes sharing the claim keep their dependencies apart, as wheels are built for a Python version.
+            // The builder leaves mounted paths out of the image, so the cache never ends up in a layer.
+            V1VolumeMount volumeMount = job.container().getList(CONTAINER_VOLUME_MOUNTS_FIELD, VOLUME_MOUNT_PATH)
+                    .get(DEPENDENCY_CACHE_PATH)
+                    .data();
+            volumeMount.setName(volumeName);
+            volumeMount.setSubPath(job.runtime());
+            // Only used if the template Dockerfile declares ARG PIP_CACHE_DIR and does not pass --no-cache-dir to pip
+            args.add("--build-arg=PIP_CACHE_DIR=%s/pip".formatted(DEPENDENCY_CACHE_PATH));
+        } else {
+            // Without a shared cache, the cache pip writes by default would only end up in the image
+            args.add("--build-arg=PIP_NO_CACHE_DIR=1");
+        }
+    }
+}
@@ -2,13 +2,18 @@ package com.epam.aidial.service;
 
 import com.epam.aidial.kubernetes.KubernetesClient;
 import io.kubernetes.client.openapi.ApiClient;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.concurrent.ThreadPoolExecutor;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 @Service
 @RequiredArgsConstructor
@@ -16,24 +21,46 @@ public class KubernetesService {
     @Qualifier("buildKubeClient")
     private final ApiClient buildClient;
 
+    @Qualifier("buildKubeWatchClient")
+    private final ApiClient buildWatchClient;
+
     @Qualifier("deployKubeClient")
     private final ApiClient deployClient;
 
+    @Qualifier("deployKubeWatchClient")
+    private final ApiClient deployWatchClient;
+
+    private final ThreadPoolExecutor logReaderExecutor;
+
+    private final MeterRegistry meterRegistry;
+
     @Getter
     @Value("${app.service-config.apiVersion}")
     private final String knativeServiceVersion;
 
+    private KubernetesClient buildKubernetesClient;
+    private KubernetesClient deployKubernetesClient;
+
     @PostConstruct
     private void initialize() {
         KubernetesClient.addKnativeServiceToModelMap(knativeServiceVersion);
+        // Clients are long-lived to share resource watches between operations
+        Scheduler logReader = Schedulers.fromExecutorService(logReaderExecutor, "log-reader");
+        buildKubernetesClient = new KubernetesClient(buildClient, buildWatchClient, logReader, meterRegistry);
+        deployKubernetesClient = new KubernetesClient(deployClient, deployWatchClient, logReader, meterRegistry);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        buildKubernetesClient.close();
+        deployKubernetesClient.close();
     }
 
     public KubernetesClient buildClient() {
-        return new KubernetesClient(buildClient);
+        return buildKubernetesClient;
     }
 
     public KubernetesClient deployClient() {
-        return new KubernetesClient(deployClient);
+        return deployKubernetesClient;
     }
-
 }
@@ -0,0 +1,165 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.util.ExpiringCache;
+import com.epam.aidial.util.LayerUtils;
+import com.epam.aidial.util.MetricsUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+
+/**
+ * Builds the image of an application without a builder pod when all its requirements are installed in the prebuilt
+ * base image of the runtime: the sources are packed into a single layer, which is pushed on top of the base image
+ * through the registry API. Any other application is left to the builder pod.
+ * The template container still validates the sources, in a validation job building nothing unless it has validated them before.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LayerAppendBuilder {
+    private static final String REQUIREMENTS_FILE = "requirements.txt";
+    // A bare package name, versions, extras, markers and pip options are left to the builder pod
+    private static final Pattern REQUIREMENT = Pattern.compile("[A-Za-z0-9]([A-Za-z0-9._-]*[A-Za-z0-9])?");
+    private static final Pattern NAME_SEPARATORS = Pattern.compile("[-_.]+");
+
+    private final DialFileService dialFileService;
+    private final RegistryService registryService;
+    private final BaseImageService baseImageService;
+    private final ConfigService templateService;
+    private final AppConfiguration appconfig;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.allowed-python-packages}")
+    private final String allowedPythonPackages;
+
+    @Value("${app.additional-allowed-python-packages}")
+    private final String additionalAllowedPythonPackages;
+
+    @Value("${app.layer-append-max-sources-bytes}")
+    private final long maxSourcesBytes;
+
+    @Value("${app.validated-sources-cache-size}")
+    private final int validatedSourcesCacheSize;
+
+    @Value("${app.validated-sources-cache-ttl-sec}")
+    private final int validatedSourcesCacheTtlSec;
+
+    // Validation keys of the sources the template container has validated
+    private ExpiringCache<String, Boolean> validatedSources;
+
+    @PostConstruct
+    public void initialize() {
+        validatedSources = new ExpiringCache<>(validatedSourcesCacheSize, Duration.ofSeconds(validatedSourcesCacheTtlSec));
+    }
+
+    /**
+     * Records that the template container has validated the sources for the runtime, e.g. in a successful build.
+     */
+    public void validated(String sourcesDigest, String runtime) {
+        String key = templateService.validationKey(sourcesDigest, runtime);
+        if (key != null) {
+            validatedSources.put(key, true);
+        }
+    }
+
+    /**
+     * Builds the image of the application by appending its sources to the base image of the runtime.
+     * The sources are checked in the controller first, so that the validation job only runs for sources that can be appended.
+     *
+     * @param sourcesDigest the digest of the sources computed by the server, null if it is unknown
+     * @param validation validates the sources in the template container and records them as validated, fails if they are invalid
+     * @return the image, or nothing if the application has to be built by a builder pod
+     */
+    public Mono<String> build(BuildService.BuildParameters params, @Nullable String sourcesDigest, Mono<Void> validation) {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = appconfig.getRuntimes().get(params.runtime());
+        String baseDigest = baseImageService.baseImageDigest(params.runtime());
+        if (runtimeConfig == null || runtimeConfig.getLayerAppendWorkingDir() == null || baseDigest == null || sourcesDigest == null) {
+            return Mono.empty();
+        }
+
+        // Only the sources listed with the digest are downloaded, should they have changed since it was computed
+        return dialFileService.download(params.sources(), params.apiKey(), params.jwt(), sourcesDigest, maxSourcesBytes)
+                .filter(files -> isInstalled(files.get(REQUIREMENTS_FILE), installedPackages()))
+                .onErrorResume(e -> {
+                    log.warn("Failed to download sources of {}, building with a builder pod", params.name(), e);
+                    return Mono.empty();
+                })
+                // The errors of the validation are those of the build, a builder pod would fail alike
+                .flatMap(files -> (isValidated(sourcesDigest, params.runtime()) ? Mono.<Void>empty() : validation)
+                        .then(Mono.fromSupplier(() -> isValidated(sourcesDigest, params.runtime())))
+                        .filter(Boolean::booleanValue)
+                        .flatMap(ignore -> append(params, runtimeConfig, baseDigest, files)));
+    }
+
+    private Mono<String> append(
+            BuildService.BuildParameters params,
+            AppConfiguration.RuntimeConfiguration runtimeConfig,
+            String baseDigest,
+            Map<String, byte[]> files) {
+        String workingDir = runtimeConfig.getLayerAppendWorkingDir();
+        Mono<String> build = Mono.fromCallable(() -> LayerUtils.layer(workingDir, files))
+                .flatMap(layer -> registryService.appendLayer(
+                        params.name(), baseDigest, layer, workingDir, runtimeConfig.getLayerAppendCommand()))
+                .filter(Boolean::booleanValue)
+                .map(ignore -> registryService.fullImageName(params.name()));
+        return MetricsUtils.stage(meterRegistry, "build", "append", build)
+                .doOnNext(image -> log.info("Built {} by appending sources to {}", image, baseDigest))
+                .onErrorResume(e -> {
+                    log.warn("Failed to append sources of {}, building with a builder pod", params.name(), e);
+                    return Mono.empty();
+                });
+    }
+
+    private boolean isValidated(String sourcesDigest, String runtime) {
+        String key = templateService.validationKey(sourcesDigest, runtime);
+        return key != null && validatedSources.get(key) != null;
+    }
+
+    private Set<String> installedPackages() {
+        return Stream.of(allowedPythonPackages, additionalAllowedPythonPackages)
+                .flatMap(value -> Stream.of(StringUtils.split(value)))
+                .map(LayerAppendBuilder::normalize)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Whether the requirements are bare names of the installed packages, so that installing them changes nothing.
+     */
+    static boolean isInstalled(@Nullable byte[] requirements, Set<String> installedPackages) {
+        if (requirements == null) {
+            return true;
+        }
+
+        for (String line : new String(requirements, StandardCharsets.UTF_8).split("\\R")) {
+            String requirement = StringUtils.substringBefore(line, "#").trim();
+            if (requirement.isEmpty()) {
+                continue;
+            }
+
+            if (!REQUIREMENT.matcher(requirement).matches() || !installedPackages.contains(normalize(requirement))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String normalize(String name) {
+        return NAME_SEPARATORS.matcher(name.toLowerCase()).replaceAll("-");
+    }
+}
@@ -0,0 +1,77 @@
+package com.epam.aidial.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coordinates operations on the same resource: a request equal to the one in flight joins it
+ * and receives the same result, any other request waits until the operations queued before it complete.
+ * Operations on different resources do not wait for each other.
+ */
+@Slf4j
+@Service
+public class OperationCoordinator {
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    public <T> Mono<T> execute(String resource, Object request, Supplier<Mono<T>> action) {
+        return execute(resource, request, event -> { }, listener -> action.get());
+    }
+
+    /**
+     * Same as {@link #execute(String, Object, Supplier)}, the events reported by the action
+     * are delivered to the listeners of all the callers that joined it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(
+            String resource,
+            Object request,
+            Consumer<OperationEvent> listener,
+            Function<Consumer<OperationEvent>, Mono<T>> action) {
+        return Mono.defer(() -> {
+            Operation operation = operations.compute(resource, (key, last) -> {
+                if (last != null && last.request.equals(request)) {
+                    log.info("Joining operation in progress for {}", resource);
+                    return last;
+                }
+
+                return new Operation(resource, request, last, action);
+            });
+            operation.listeners.add(listener);
+            return ((Mono<T>) operation.result)
+                    .doFinally(signal -> operation.listeners.remove(listener));
+        });
+    }
+
+    private final class Operation {
+        private final Object request;
+        private final List<Consumer<OperationEvent>> listeners = new CopyOnWriteArrayList<>();
+        private final Mono<Object> result;
+
+        private <T> Operation(
+                String resource,
+                Object request,
+                @Nullable Operation previous,
+                Function<Consumer<OperationEvent>, Mono<T>> action) {
+            this.request = request;
+            Mono<Void> predecessor = previous == null
+                    ? Mono.empty()
+                    : previous.result.onErrorResume(e -> Mono.empty()).then();
+            Consumer<OperationEvent> broadcast = event -> listeners.forEach(listener -> listener.accept(event));
+            // Cached, so the operation is performed once and is not cancelled when one of the callers goes away
+            this.result = predecessor.then(Mono.defer(() -> action.apply(broadcast)))
+                    .map(Object.class::cast)
+                    .doFinally(signal -> operations.remove(resource, this))
+                    .cache();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.dto.LogEventDto;
+import com.epam.aidial.dto.ProgressEventDto;
+
+/**
+ * Intermediate state of a long-running operation reported to the caller before the result.
+ */
+public record OperationEvent(String type, Object data) {
+    public static final String PROGRESS = "progress";
+    public static final String LOG = "log";
+
+    public static OperationEvent progress(ProgressEventDto.Stage stage) {
+        return new OperationEvent(PROGRESS, new ProgressEventDto(stage));
+    }
+
+    public static OperationEvent log(LogEventDto log) {
+        return new OperationEvent(LOG, log);
+    }
+}
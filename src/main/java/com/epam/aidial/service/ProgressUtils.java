@@ -0,0 +1,41 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.dto.LogEventDto;
+import com.epam.aidial.dto.ProgressEventDto;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Consumer;
+
+@Slf4j
+@UtilityClass
+class ProgressUtils {
+    /**
+     * Reports every new stage observed while the operation is running. Failing to observe the stages
+     * does not affect the operation.
+     */
+    <T> Mono<T> withProgress(Mono<T> operation, Flux<ProgressEventDto.Stage> stages, Consumer<OperationEvent> listener) {
+        return withEvents(operation, stages.distinct().map(OperationEvent::progress), listener);
+    }
+
+    /**
+     * Relays the logs written while the operation is running. Failing to follow the logs
+     * does not affect the operation.
+     */
+    <T> Mono<T> withLogs(Mono<T> operation, Flux<LogEventDto> logs, Consumer<OperationEvent> listener) {
+        return withEvents(operation, logs.map(OperationEvent::log), listener);
+    }
+
+    private <T> Mono<T> withEvents(Mono<T> operation, Flux<OperationEvent> events, Consumer<OperationEvent> listener) {
+        Mono<T> observer = events.doOnNext(listener)
+                .onErrorResume(e -> {
+                    log.warn("Failed to observe operation", e);
+                    return Mono.empty();
+                })
+                .then(Mono.never());
+        // The events are subscribed to first, so that none is missed while the operation starts
+        return Mono.firstWithSignal(observer, operation);
+    }
+}
@@ -1,7 +1,14 @@
 package com.epam.aidial.service;
 
 import com.epam.aidial.config.DockerAuthScheme;
+import com.epam.aidial.util.ExpiringCache;
+import com.epam.aidial.util.LayerUtils;
+import com.epam.aidial.util.MetricsUtils;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -9,8 +16,11 @@ import lombok.extern.slf4j.Slf4j;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
@@ -18,12 +28,19 @@ import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.PostConstruct;
 
@@ -33,8 +50,19 @@ import javax.annotation.PostConstruct;
 public class RegistryService {
     private static final String API_URL_TEMPLATE = "%s://%s/v2";
     private static final String MANIFEST_URL_TEMPLATE = API_URL_TEMPLATE + "/%s/manifests/%s";
+    private static final String BLOB_URL_TEMPLATE = API_URL_TEMPLATE + "/%s/blobs/%s";
+    private static final String BLOB_UPLOAD_URL_TEMPLATE = API_URL_TEMPLATE + "/%s/blobs/uploads/";
+    private static final String BLOB_MOUNT_URL_TEMPLATE = BLOB_UPLOAD_URL_TEMPLATE + "?mount=%s&from=%s";
+    private static final String OCI_MANIFEST = "application/vnd.oci.image.manifest.v1+json";
+    private static final String DOCKER_MANIFEST = "application/vnd.docker.distribution.manifest.v2+json";
+    private static final String OCI_LAYER = "application/vnd.oci.image.layer.v1.tar+gzip";
+    private static final String DOCKER_LAYER = "application/vnd.docker.image.rootfs.diff.tar.gzip";
+    private static final String MANIFEST_TYPES = OCI_MANIFEST + ", " + DOCKER_MANIFEST;
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String REQUEST_METRIC = "app.registry.requests";
+
     private final OkHttpClient okHttpClient;
+    private final MeterRegistry meterRegistry;
 
     @Value("${app.docker-registry}")
     private final String registry;
@@ -48,6 +76,12 @@ public class RegistryService {
     @Value("${app.image-label}")
     private final String imageLabel;
 
+    @Value("${app.build-cache-image-name}")
+    private final String cacheImageName;
+
+    @Value("${app.base-image-name}")
+    private final String baseImageName;
+
     @Getter
     @Value("${app.docker-registry-auth}")
     private final DockerAuthScheme authScheme;
@@ -60,31 +94,63 @@ public class RegistryService {
     @Value("${app.docker-registry-pass:#{null}}")
     private final String password;
 
+    @Value("${app.digest-cache-size}")
+    private final int digestCacheSize;
+
+    @Value("${app.digest-cache-ttl-sec}")
+    private final int digestCacheTtlSec;
+
+    // Image name and label to the digest of its manifest
+    private ExpiringCache<String, String> digestCache;
+    private OkHttpClient httpClient;
+
     @PostConstruct
-    public void validate() {
+    public void initialize() {
         if (authScheme == DockerAuthScheme.BASIC
                 && (StringUtils.isBlank(user) || password == null)) {
             throw new IllegalStateException("User and password are required for BASIC docker registry authentication.");
         }
+
+        if (authScheme == DockerAuthScheme.BEARER
+                && StringUtils.isNotBlank(user) && password == null) {
+            throw new IllegalStateException("Password is required for BEARER docker registry authentication with a user.");
+        }
+
+        digestCache = new ExpiringCache<>(digestCacheSize, Duration.ofSeconds(digestCacheTtlSec));
+        // The interceptor shares the connection pool and the dispatcher of the client
+        httpClient = authScheme == DockerAuthScheme.BEARER
+                ? okHttpClient.newBuilder()
+                        .addInterceptor(new RegistryTokenInterceptor(okHttpClient, user, password, Clock.systemUTC()))
+                        .build()
+                : okHttpClient;
     }
 
-    public Mono<String> getDigest(String image) {
-        return getDigest("application/vnd.oci.image.manifest.v1+json", image)
-                .switchIfEmpty(getDigest("application/vnd.docker.distribution.manifest.v2+json", image));
+    /**
+     * Returns the digest of the image, from the cache if it has been retrieved recently.
+     */
+    public Mono<String> getDigest(String name) {
+        return Mono.defer(() -> {
+            String digest = digestCache.get(digestCacheKey(name));
+            return digest == null ? refreshDigest(name) : Mono.just(digest);
+        });
     }
 
-    private Mono<String> getDigest(String manifestVersion, String name) {
-        return Mono.create(sink -> {
+    /**
+     * Retrieves the digest of the image from the registry and caches it, e.g. once the image is pushed.
+     */
+    public Mono<String> refreshDigest(String name) {
+        return timed("getDigest", Mono.create(sink -> {
             String imageName = imageName(name);
-            log.info("Retrieving digest for {} from manifest {}", imageName, manifestVersion);
+            log.info("Retrieving digest for {}", imageName);
             String url = MANIFEST_URL_TEMPLATE.formatted(
                     registryProtocol, registry, imageName, imageLabel);
+            // Both manifest types are accepted at once, so that the registry answers in a single round trip
             Request request = requestBuilder()
                     .head()
                     .url(url)
-                    .header("Accept", manifestVersion)
+                    .header("Accept", MANIFEST_TYPES)
                     .build();
-            okHttpClient.newCall(request).enqueue(new Callback() {
+            httpClient.newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(@NotNull Call call, @NotNull IOException e) {
                     sink.error(e);
@@ -92,28 +158,66 @@ public class RegistryService {
 
                 @Override
                 public void onResponse(@NotNull Call call, @NotNull Response response) {
-                    if (response.code() == 404) {
-                        sink.success();
-                    } else if (response.isSuccessful()) {
-                        String digest = response.header("Docker-Content-Digest");
-                        if (StringUtils.isBlank(digest)) {
-                            sink.error(new IllegalStateException(
-                                    "Missing digest in manifest %s response".formatted(manifestVersion)));
+                    try (response) {
+                        if (response.code() == 404) {
+                            digestCache.invalidate(digestCacheKey(name));
+                            sink.success();
+                        } else if (response.isSuccessful()) {
+                            String digest = response.header("Docker-Content-Digest");
+                            if (StringUtils.isBlank(digest)) {
+                                sink.error(new IllegalStateException(
+                                        "Missing digest in manifest %s response".formatted(response.header("Content-Type"))));
+                            } else {
+                                log.info("Retrieved digest for image {} and label {}: {}", imageName, imageLabel, digest);
+                                digestCache.put(digestCacheKey(name), digest);
+                                sink.success(digest);
+                            }
                         } else {
-                            log.info("Retrieved {} digest for image {} and label {}: {}",
-                                    manifestVersion, imageName, imageLabel, digest);
-                            sink.success(digest);
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
                         }
-                    } else {
-                        sink.error(new ResponseStatusException(response.code(), response.message(), null));
                     }
                 }
             });
-        });
+        }));
+    }
+
+    /**
+     * Retrieves the digest of the base image with the tag, or nothing if there is no such image.
+     */
+    public Mono<String> getBaseImageDigest(String tag) {
+        return timed("getDigest", Mono.create(sink -> {
+            log.info("Retrieving digest for {}:{}", baseImageName, tag);
+            String url = MANIFEST_URL_TEMPLATE.formatted(
+                    registryProtocol, registry, baseImageName, tag);
+            Request request = requestBuilder()
+                    .head()
+                    .url(url)
+                    .header("Accept", MANIFEST_TYPES)
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    sink.error(e);
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    try (response) {
+                        if (response.code() == 404) {
+                            sink.success();
+                        } else if (response.isSuccessful() && StringUtils.isNotBlank(response.header("Docker-Content-Digest"))) {
+                            sink.success(response.header("Docker-Content-Digest"));
+                        } else {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        }
+                    }
+                }
+            });
+        }));
     }
 
     public Mono<Boolean> deleteManifest(String name, String digest) {
-        return Mono.create(sink -> {
+        return timed("deleteManifest", Mono.create(sink -> {
             String imageName = imageName(name);
             log.info("Deleting {} manifest", imageName);
             String url = MANIFEST_URL_TEMPLATE.formatted(
@@ -122,7 +226,164 @@ public class RegistryService {
                     .delete()
                     .url(url)
                     .build();
-            okHttpClient.newCall(request).enqueue(new Callback() {
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    sink.error(e);
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    try (response) {
+                        digestCache.invalidate(digestCacheKey(name));
+                        if (response.code() == 404) {
+                            sink.success(false);
+                        } else if (response.isSuccessful()) {
+                            log.info("Deleted image {} with digest {}", imageName, digest);
+                            sink.success(true);
+                        } else {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        }
+                    }
+                }
+            });
+        }));
+    }
+
+    /**
+     * Makes the image cached under the key available as the image of the application
+     * by mounting its blobs into the application repository and pushing the same manifest.
+     *
+     * @return false if there is no image cached under the key
+     */
+    public Mono<Boolean> restoreFromCache(String cacheKey, String name) {
+        String imageName = imageName(name);
+        return getManifest(cacheImageName, cacheKey)
+                .flatMap(manifest -> Flux.fromIterable(blobDigests(manifest.content()))
+                        .concatMap(digest -> mountBlob(cacheImageName, imageName, digest))
+                        .all(Boolean::booleanValue)
+                        .flatMap(mounted -> mounted
+                                ? putManifest(imageName, imageLabel, manifest)
+                                        .doOnSuccess(ignore -> digestCache.put(digestCacheKey(name), contentDigest(manifest.content())))
+                                        .thenReturn(true)
+                                : Mono.just(false)))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Pushes the image of the application as the base image with the layer on top, without running a builder:
+     * the base layers are mounted into the application repository, the layer and the amended config are uploaded,
+     * and a manifest referencing them is written.
+     *
+     * @param command the command of the image, the one of the base image if null
+     * @return false if the base layers cannot be mounted into the application repository
+     */
+    public Mono<Boolean> appendLayer(
+            String name, String baseDigest, LayerUtils.Layer layer, String workingDir, @Nullable List<String> command) {
+        String imageName = imageName(name);
+        return getManifest(baseImageName, baseDigest)
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Base image %s is not found".formatted(baseDigest))))
+                .flatMap(base -> Flux.fromIterable(layerDigests(base.content()))
+                        .concatMap(digest -> mountBlob(baseImageName, imageName, digest))
+                        .all(Boolean::booleanValue)
+                        .flatMap(mounted -> mounted
+                                ? getBlob(baseImageName, configDigest(base.content()))
+                                        .map(config -> appendConfig(config, layer.diffId(), workingDir, command))
+                                        .flatMap(config -> uploadBlob(imageName, layer.content(), layer.digest())
+                                                .then(uploadBlob(imageName, config, contentDigest(config)))
+                                                .thenReturn(appendManifest(base, config, layer)))
+                                        .flatMap(manifest -> putManifest(imageName, imageLabel, manifest)
+                                                .doOnSuccess(ignore -> digestCache.put(digestCacheKey(name), contentDigest(manifest.content()))))
+                                        .thenReturn(true)
+                                : Mono.just(false)));
+    }
+
+    private Mono<Manifest> getManifest(String imageName, String reference) {
+        return timed("getManifest", Mono.create(sink -> {
+            log.info("Retrieving manifest {} for {}", reference, imageName);
+            String url = MANIFEST_URL_TEMPLATE.formatted(
+                    registryProtocol, registry, imageName, reference);
+            Request request = requestBuilder()
+                    .get()
+                    .url(url)
+                    .header("Accept", MANIFEST_TYPES)
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    sink.error(e);
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
+                    try (response) {
+                        if (response.code() == 404) {
+                            sink.success();
+                        } else if (response.isSuccessful()) {
+                            sink.success(new Manifest(response.header("Content-Type"), response.body().bytes()));
+                        } else {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        }
+                    }
+                }
+            });
+        }));
+    }
+
+    private Mono<Boolean> mountBlob(String sourceImageName, String targetImageName, String digest) {
+        return requestMount(sourceImageName, targetImageName, digest)
+                .flatMap(mount -> mount.upload() == null
+                        ? Mono.just(mount.mounted())
+                        : cancelUpload(mount.upload()).thenReturn(mount.mounted()));
+    }
+
+    private Mono<Mount> requestMount(String sourceImageName, String targetImageName, String digest) {
+        return timed("mountBlob", Mono.create(sink -> {
+            log.info("Mounting blob {} from {} to {}", digest, sourceImageName, targetImageName);
+            String url = BLOB_MOUNT_URL_TEMPLATE.formatted(
+                    registryProtocol, registry, targetImageName, digest, sourceImageName);
+            Request request = requestBuilder()
+                    .post(RequestBody.create(new byte[0]))
+                    .url(url)
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    sink.error(e);
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    try (response) {
+                        if (response.code() == 201) {
+                            sink.success(new Mount(true, null));
+                        } else if (response.code() == 202) {
+                            // The registry has started a regular upload instead of mounting the blob
+                            log.info("Blob {} cannot be mounted from {} to {}", digest, sourceImageName, targetImageName);
+                            HttpUrl upload = response.header("Location") == null
+                                    ? null
+                                    : response.request().url().resolve(response.header("Location"));
+                            sink.success(new Mount(false, upload));
+                        } else {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        }
+                    }
+                }
+            });
+        }));
+    }
+
+    /**
+     * Cancels an upload started by the registry, so that it does not hold on to the session until it expires.
+     * A failure is only logged, as the upload expires anyway.
+     */
+    private Mono<Void> cancelUpload(HttpUrl location) {
+        return timed("cancelUpload", Mono.<Void>create(sink -> {
+            Request request = requestBuilder()
+                    .delete()
+                    .url(location)
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(@NotNull Call call, @NotNull IOException e) {
                     sink.error(e);
@@ -130,26 +391,225 @@ public class RegistryService {
 
                 @Override
                 public void onResponse(@NotNull Call call, @NotNull Response response) {
-                    if (response.code() == 404) {
-                        sink.success(false);
-                    } else if (response.isSuccessful()) {
-                        log.info("Deleted image {} with digest {}", imageName, digest);
-                        sink.success(true);
-                    } else {
-                        sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                    try (response) {
+                        if (response.isSuccessful() || response.code() == 404) {
+                            sink.success();
+                        } else {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        }
                     }
                 }
             });
+        })).onErrorResume(e -> {
+            log.warn("Failed to cancel upload {}", location, e);
+            return Mono.empty();
         });
     }
 
+    private Mono<byte[]> getBlob(String imageName, String digest) {
+        return timed("getBlob", Mono.create(sink -> {
+            log.info("Retrieving blob {} from {}", digest, imageName);
+            String url = BLOB_URL_TEMPLATE.formatted(
+                    registryProtocol, registry, imageName, digest);
+            Request request = requestBuilder()
+                    .get()
+                    .url(url)
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    sink.error(e);
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
+                    try (response) {
+                        if (response.isSuccessful()) {
+                            sink.success(response.body().bytes());
+                        } else {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        }
+                    }
+                }
+            });
+        }));
+    }
+
+    /**
+     * Uploads the blob in a single request once the registry has started the upload.
+     */
+    private Mono<Void> uploadBlob(String imageName, byte[] content, String digest) {
+        return startUpload(imageName)
+                .flatMap(location -> completeUpload(imageName, location, content, digest));
+    }
+
+    private Mono<HttpUrl> startUpload(String imageName) {
+        return timed("startUpload", Mono.create(sink -> {
+            String url = BLOB_UPLOAD_URL_TEMPLATE.formatted(
+                    registryProtocol, registry, imageName);
+            Request request = requestBuilder()
+                    .post(RequestBody.create(new byte[0]))
+                    .url(url)
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    sink.error(e);
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    try (response) {
+                        // The location of the upload may be relative to the request
+                        HttpUrl location = response.header("Location") == null
+                                ? null
+                                : response.request().url().resolve(response.header("Location"));
+                        if (response.code() == 202 && location != null) {
+                            sink.success(location);
+                        } else {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        }
+                    }
+                }
+            });
+        }));
+    }
+
+    private Mono<Void> completeUpload(String imageName, HttpUrl location, byte[] content, String digest) {
+        return timed("completeUpload", Mono.create(sink -> {
+            log.info("Uploading blob {} of {} bytes to {}", digest, content.length, imageName);
+            Request request = requestBuilder()
+                    .put(RequestBody.create(content, MediaType.get("application/octet-stream")))
+                    .url(location.newBuilder().addQueryParameter("digest", digest).build())
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    sink.error(e);
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    try (response) {
+                        if (response.isSuccessful()) {
+                            sink.success();
+                        } else {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        }
+                    }
+                }
+            });
+        }));
+    }
+
+    private Mono<Void> putManifest(String imageName, String reference, Manifest manifest) {
+        return timed("putManifest", Mono.create(sink -> {
+            log.info("Pushing manifest {} for {}", reference, imageName);
+            String url = MANIFEST_URL_TEMPLATE.formatted(
+                    registryProtocol, registry, imageName, reference);
+            Request request = requestBuilder()
+                    .put(RequestBody.create(manifest.content(), MediaType.get(manifest.mediaType())))
+                    .url(url)
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    sink.error(e);
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    try (response) {
+                        if (response.isSuccessful()) {
+                            log.info("Pushed manifest {} for {}", reference, imageName);
+                            sink.success();
+                        } else {
+                            sink.error(new ResponseStatusException(response.code(), response.message(), null));
+                        }
+                    }
+                }
+            });
+        }));
+    }
+
+    private <T> Mono<T> timed(String method, Mono<T> request) {
+        return MetricsUtils.timed(meterRegistry, REQUEST_METRIC, Tags.of("method", method), request);
+    }
+
+    @SneakyThrows
+    private static List<String> blobDigests(byte[] manifest) {
+        JsonNode root = MAPPER.readTree(manifest);
+        List<String> digests = new ArrayList<>();
+        digests.add(root.path("config").path("digest").asText());
+        root.path("layers").forEach(layer -> digests.add(layer.path("digest").asText()));
+        return digests;
+    }
+
+    @SneakyThrows
+    private static List<String> layerDigests(byte[] manifest) {
+        List<String> digests = new ArrayList<>();
+        MAPPER.readTree(manifest).path("layers").forEach(layer -> digests.add(layer.path("digest").asText()));
+        return digests;
+    }
+
+    @SneakyThrows
+    private static String configDigest(byte[] manifest) {
+        return MAPPER.readTree(manifest).path("config").path("digest").asText();
+    }
+
+    /**
+     * Adds the layer on top of the image config, and sets where and how the application runs.
+     */
+    @SneakyThrows
+    private static byte[] appendConfig(byte[] baseConfig, String diffId, String workingDir, @Nullable List<String> command) {
+        ObjectNode config = (ObjectNode) MAPPER.readTree(baseConfig);
+        config.withObject("/rootfs").withArray("diff_ids").add(diffId);
+        // The history is optional, but lists every layer when present
+        if (config.has("history")) {
+            config.withArray("history").addObject().put("created_by", "COPY . %s".formatted(workingDir));
+        }
+        ObjectNode containerConfig = config.withObject("/config");
+        containerConfig.put("WorkingDir", workingDir);
+        if (command != null) {
+            containerConfig.set("Cmd", MAPPER.valueToTree(command));
+        }
+        return MAPPER.writeValueAsBytes(config);
+    }
+
+    @SneakyThrows
+    private static Manifest appendManifest(Manifest base, byte[] config, LayerUtils.Layer layer) {
+        ObjectNode manifest = (ObjectNode) MAPPER.readTree(base.content());
+        manifest.withObject("/config")
+                .put("digest", contentDigest(config))
+                .put("size", config.length);
+        manifest.withArray("layers").addObject()
+                .put("mediaType", DOCKER_MANIFEST.equals(base.mediaType()) ? DOCKER_LAYER : OCI_LAYER)
+                .put("size", layer.content().length)
+                .put("digest", layer.digest());
+        return new Manifest(base.mediaType(), MAPPER.writeValueAsBytes(manifest));
+    }
+
     public String fullImageName(String name) {
         return "%s/%s:%s".formatted(registry, imageName(name), imageLabel);
     }
 
+    /**
+     * The name of the application image pinned to its digest, which never changes, so that nodes pull it only once.
+     */
+    public String pinnedImageName(String name, String digest) {
+        return "%s/%s@%s".formatted(registry, imageName(name), digest);
+    }
+
+    /**
+     * Whether the builder has to log in to the registry, which is done with the user and password for either scheme.
+     */
+    public boolean hasCredentials() {
+        return authScheme != DockerAuthScheme.NONE && StringUtils.isNotBlank(user);
+    }
+
     @SneakyThrows
     public String dockerConfig() {
-        if (authScheme == DockerAuthScheme.BASIC) {
+        if (hasCredentials()) {
             byte[] bytes = "%s:%s".formatted(user, password).getBytes(StandardCharsets.UTF_8);
             String auth = Base64.getEncoder().encodeToString(bytes);
             return MAPPER.writeValueAsString(Map.of(
@@ -162,10 +622,42 @@ public class RegistryService {
         return "{}";
     }
 
+    public String fullRepositoryName(String repository) {
+        return "%s/%s".formatted(registry, repository);
+    }
+
+    public String fullCacheImageName(String cacheKey) {
+        return "%s/%s:%s".formatted(registry, cacheImageName, cacheKey);
+    }
+
+    public String fullBaseImageName(String tag) {
+        return "%s/%s:%s".formatted(registry, baseImageName, tag);
+    }
+
+    /**
+     * The name of the base image pinned to its digest, so that builds keep using the same image even if the tag moves.
+     */
+    public String pinnedBaseImageName(String digest) {
+        return "%s/%s@%s".formatted(registry, baseImageName, digest);
+    }
+
     private String imageName(String name) {
         return imageFormat.formatted(name);
     }
 
+    private String digestCacheKey(String name) {
+        return "%s:%s".formatted(imageName(name), imageLabel);
+    }
+
+    /**
+     * The digest of a manifest or a blob is the hash of its content.
+     */
+    @SneakyThrows
+    private static String contentDigest(byte[] content) {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+        return "sha256:" + HexFormat.of().formatHex(hash);
+    }
+
     private Request.Builder requestBuilder() {
         Request.Builder builder = new Request.Builder();
         if (authScheme == DockerAuthScheme.BASIC) {
@@ -174,4 +666,13 @@ public class RegistryService {
 
         return builder;
     }
+
+    private record Manifest(String mediaType, byte[] content) {
+    }
+
+    /**
+     * @param upload the upload the registry has started instead of mounting the blob
+     */
+    private record Mount(boolean mounted, @Nullable HttpUrl upload) {
+    }
 }
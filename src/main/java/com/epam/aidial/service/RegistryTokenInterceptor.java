@@ -0,0 +1,208 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.util.ExpiringCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Authenticates registry requests with bearer tokens: answers the WWW-Authenticate challenge of the registry
+ * by getting a token from its token service, and caches the token for the requests of the same scope.
+ * Once the token service is known, a token is got before the request, so that requests are rarely challenged again.
+ * A token expires from the cache once most of its lifetime has passed, and concurrent requests of its scope
+ * wait for a single request of a new one.
+ */
+@Slf4j
+class RegistryTokenInterceptor implements Interceptor {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern CHALLENGE_PARAMETER = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final Duration DEFAULT_TOKEN_LIFETIME = Duration.ofSeconds(60);
+    private static final int MAX_TOKENS = 1000;
+    private static final String API_PREFIX = "/v2/";
+
+    private final OkHttpClient tokenClient;
+    @Nullable
+    private final String user;
+    @Nullable
+    private final String password;
+    // The scope of a request, i.e. its repositories and actions, to the token issued for it
+    private final ExpiringCache<String, String> tokens;
+    // The scope to the request of its token in flight
+    private final Map<String, CompletableFuture<String>> tokenRequests = new ConcurrentHashMap<>();
+    // The last challenge of the registry, which names its token service
+    @Nullable
+    private volatile Map<String, String> challenge;
+
+    /**
+     * @param tokenClient the client used to get tokens, without this interceptor
+     */
+    RegistryTokenInterceptor(OkHttpClient tokenClient, @Nullable String user, @Nullable String password, Clock clock) {
+        this.tokenClient = tokenClient;
+        this.user = user;
+        this.password = password;
+        this.tokens = new ExpiringCache<>(MAX_TOKENS, DEFAULT_TOKEN_LIFETIME, clock);
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        Request request = chain.request();
+        String scope = scope(request);
+        String token = tokens.get(scope);
+        Map<String, String> knownChallenge = challenge;
+        if (token == null && !scope.isEmpty() && knownChallenge != null) {
+            token = getToken(scope, knownChallenge);
+        }
+
+        Response response = chain.proceed(token == null ? request : authorize(request, token));
+        if (response.code() != 401) {
+            return response;
+        }
+
+        Map<String, String> newChallenge = parseChallenge(response.header("WWW-Authenticate"));
+        if (newChallenge == null) {
+            return response;
+        }
+
+        response.close();
+        challenge = newChallenge;
+        // The challenge names the scope of a request without a repository, e.g. of the catalog
+        String challengedScope = scope.isEmpty() ? newChallenge.getOrDefault("scope", "") : scope;
+        return chain.proceed(authorize(request, getToken(challengedScope, newChallenge)));
+    }
+
+    /**
+     * Gets a token unless a request of the same scope is already getting one, in which case its token is shared.
+     */
+    private String getToken(String scope, Map<String, String> challenge) throws IOException {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> inFlight = tokenRequests.putIfAbsent(scope, pending);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+
+        log.debug("Getting registry token for {}", scope);
+        try (Response response = tokenClient.newCall(tokenRequest(scope, challenge)).execute()) {
+            String token = parseToken(response, scope);
+            pending.complete(token);
+            return token;
+        } catch (IOException | RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            tokenRequests.remove(scope, pending);
+        }
+    }
+
+    private static String await(CompletableFuture<String> tokenRequest) throws IOException {
+        try {
+            return tokenRequest.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to get registry token", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while getting registry token");
+        }
+    }
+
+    private Request tokenRequest(String scope, Map<String, String> challenge) {
+        HttpUrl realm = HttpUrl.get(challenge.get("realm"));
+        HttpUrl.Builder url = realm.newBuilder();
+        if (challenge.containsKey("service")) {
+            url.addQueryParameter("service", challenge.get("service"));
+        }
+
+        // A request may need access to several repositories, e.g. to mount a blob from another one
+        for (String resourceScope : StringUtils.split(scope, ' ')) {
+            url.addQueryParameter("scope", resourceScope);
+        }
+
+        Request.Builder request = new Request.Builder().get().url(url.build());
+        if (StringUtils.isNotBlank(user)) {
+            request.header("Authorization", Credentials.basic(user, Objects.requireNonNullElse(password, "")));
+        }
+
+        return request.build();
+    }
+
+    private String parseToken(Response response, String scope) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Failed to get registry token: %d %s".formatted(response.code(), response.message()));
+        }
+
+        JsonNode body = MAPPER.readTree(response.body().byteStream());
+        String value = body.hasNonNull("token") ? body.get("token").asText() : body.path("access_token").asText();
+        if (StringUtils.isBlank(value)) {
+            throw new IOException("Missing token in registry token response");
+        }
+
+        Duration lifetime = body.hasNonNull("expires_in")
+                ? Duration.ofSeconds(body.get("expires_in").asLong())
+                : DEFAULT_TOKEN_LIFETIME;
+        // Expires once three quarters of its lifetime have passed, so that it is not rejected while in use
+        tokens.put(scope, value, lifetime.multipliedBy(3).dividedBy(4));
+        return value;
+    }
+
+    private static Request authorize(Request request, String token) {
+        return request.newBuilder()
+                .header("Authorization", BEARER_PREFIX + token)
+                .build();
+    }
+
+    /**
+     * The scope of the token for the request in the registry token format. All the requests to a repository share
+     * a token for both pulling and pushing, whose actions the registry narrows to those the user is allowed.
+     * Mounting a blob needs pulling from the source repository too. Requests without a repository have no scope.
+     */
+    static String scope(Request request) {
+        String path = request.url().encodedPath();
+        int start = path.indexOf(API_PREFIX);
+        int end = Math.max(path.lastIndexOf("/manifests/"), path.lastIndexOf("/blobs/"));
+        if (start == -1 || end < start + API_PREFIX.length()) {
+            return "";
+        }
+
+        String scope = "repository:%s:pull,push".formatted(path.substring(start + API_PREFIX.length(), end));
+        String from = request.url().queryParameter("from");
+        return from == null ? scope : "%s repository:%s:pull".formatted(scope, from);
+    }
+
+    @Nullable
+    static Map<String, String> parseChallenge(@Nullable String header) {
+        if (header == null || !StringUtils.startsWithIgnoreCase(header, BEARER_PREFIX)) {
+            return null;
+        }
+
+        Map<String, String> parameters = new LinkedHashMap<>();
+        Matcher matcher = CHALLENGE_PARAMETER.matcher(header);
+        while (matcher.find()) {
+            parameters.put(matcher.group(1), matcher.group(2));
+        }
+
+        return parameters.containsKey("realm") ? parameters : null;
+    }
+}
@@ -0,0 +1,64 @@
+package com.epam.aidial.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache whose entries expire a fixed time after they are put, unless put with a time of their own.
+ * When the cache is full, the least recently used entry is evicted.
+ */
+public class ExpiringCache<K, V> {
+    private final Duration ttl;
+    private final Clock clock;
+    private final Map<K, Entry<V>> entries;
+
+    public ExpiringCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, Clock.systemUTC());
+    }
+
+    public ExpiringCache(int maxSize, Duration ttl, Clock clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Nullable
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (!entry.expiresAt().isAfter(clock.instant())) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry.value();
+    }
+
+    public void put(K key, V value) {
+        put(key, value, ttl);
+    }
+
+    public synchronized void put(K key, V value, Duration ttl) {
+        entries.put(key, new Entry<>(value, clock.instant().plus(ttl)));
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    private record Entry<V>(V value, Instant expiresAt) {
+    }
+}
@@ -1,5 +1,6 @@
 package com.epam.aidial.util;
 
+import com.epam.aidial.dto.ProgressEventDto;
 import com.epam.aidial.kubernetes.knative.V1Condition;
 import com.epam.aidial.kubernetes.knative.V1Service;
 import com.epam.aidial.kubernetes.knative.V1ServiceStatus;
@@ -23,7 +24,9 @@ import java.io.IOException;
 import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -97,6 +100,92 @@ public class KubernetesUtils {
         return null;
     }
 
+    /**
+     * Whether the job has completed or failed, so that it runs no more.
+     */
+    public boolean isJobFinished(V1Job job) {
+        return Optional.ofNullable(job.getStatus())
+                .map(V1JobStatus::getConditions)
+                .orElseGet(List::of)
+                .stream()
+                .anyMatch(condition -> "True".equals(condition.getStatus())
+                        && ("Complete".equals(condition.getType()) || "Failed".equals(condition.getType())));
+    }
+
+    /**
+     * Infers the stage of a build from its pod: the template init container fetches and validates the sources,
+     * the builder container builds and pushes the image.
+     */
+    public ProgressEventDto.Stage extractBuildStage(V1Pod pod) {
+        V1PodStatus status = pod.getStatus();
+        if (status == null) {
+            return ProgressEventDto.Stage.JOB_CREATED;
+        }
+
+        if (isAnyContainerRunning(status.getContainerStatuses())) {
+            return ProgressEventDto.Stage.BUILDING;
+        }
+
+        if (isAnyContainerRunning(status.getInitContainerStatuses())) {
+            return ProgressEventDto.Stage.VALIDATING;
+        }
+
+        if (status.getConditions() != null && status.getConditions().stream()
+                .anyMatch(condition -> "PodScheduled".equals(condition.getType()) && "True".equals(condition.getStatus()))) {
+            return ProgressEventDto.Stage.JOB_SCHEDULED;
+        }
+
+        return ProgressEventDto.Stage.JOB_CREATED;
+    }
+
+    /**
+     * The stage of a validation job, whose only container is the template container.
+     */
+    public ProgressEventDto.Stage extractValidationStage(V1Pod pod) {
+        ProgressEventDto.Stage stage = extractBuildStage(pod);
+        return stage == ProgressEventDto.Stage.BUILDING ? ProgressEventDto.Stage.VALIDATING : stage;
+    }
+
+    public ProgressEventDto.Stage extractServiceStage(V1Service service) {
+        V1ServiceStatus status = service.getStatus();
+        if (status == null) {
+            return ProgressEventDto.Stage.SERVICE_CREATED;
+        }
+
+        if (isConditionTrue(status, "Ready")) {
+            return ProgressEventDto.Stage.READY;
+        }
+
+        if (isConditionTrue(status, "ConfigurationsReady")) {
+            return ProgressEventDto.Stage.REVISION_READY;
+        }
+
+        if (StringUtils.isNotBlank(status.getLatestCreatedRevisionName())) {
+            return ProgressEventDto.Stage.REVISION_CREATED;
+        }
+
+        return ProgressEventDto.Stage.SERVICE_CREATED;
+    }
+
+    public boolean isContainerStarted(V1Pod pod, String container) {
+        V1PodStatus status = pod.getStatus();
+        return status != null && Stream.of(status.getInitContainerStatuses(), status.getContainerStatuses())
+                .filter(Objects::nonNull)
+                .flatMap(Collection::stream)
+                .filter(containerStatus -> container.equals(containerStatus.getName()))
+                .anyMatch(containerStatus -> containerStatus.getState() != null && containerStatus.getState().getWaiting() == null);
+    }
+
+    private boolean isAnyContainerRunning(@Nullable List<V1ContainerStatus> statuses) {
+        return statuses != null && statuses.stream()
+                .anyMatch(containerStatus -> containerStatus.getState() != null && containerStatus.getState().getRunning() != null);
+    }
+
+    private boolean isConditionTrue(V1ServiceStatus status, String type) {
+        return status.getConditions() != null && Arrays.stream(status.getConditions())
+                .anyMatch(condition -> type.equals(condition.getType()) && "True".equals(condition.getStatus()));
+    }
+
     public Pair<String, String> extractFailedContainer(V1PodList podList) {
         for (V1Pod pod : podList.getItems()) {
             if ("Failed".equals(pod.getStatus().getPhase())) {
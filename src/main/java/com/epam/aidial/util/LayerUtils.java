@@ -0,0 +1,122 @@
+package com.epam.aidial.util;
+
+import lombok.experimental.UtilityClass;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+@UtilityClass
+public class LayerUtils {
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+    private static final int FILE_MODE = 0644;
+    private static final int DIRECTORY_MODE = 0755;
+
+    /**
+     * Packs the files into a gzipped tar layer under the directory. Entries are sorted and carry neither
+     * timestamps nor owners, so that the same files always make the same layer and the same image.
+     *
+     * @param files file contents by their paths relative to the directory
+     */
+    public Layer layer(String directory, Map<String, byte[]> files) throws IOException {
+        // Directories map to null, the sorted paths list every directory before its content
+        SortedMap<String, byte[]> entries = new TreeMap<>();
+        String root = StringUtils.strip(directory, "/");
+        files.forEach((path, content) -> {
+            if (path.startsWith("/") || List.of(path.split("/")).contains("..")) {
+                throw new IllegalArgumentException("Path is outside of the layer directory: " + path);
+            }
+            String entry = StringUtils.isEmpty(root) ? path : root + "/" + path;
+            for (int i = entry.indexOf('/'); i >= 0; i = entry.indexOf('/', i + 1)) {
+                entries.put(entry.substring(0, i + 1), null);
+            }
+            entries.put(entry, content);
+        });
+
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            byte[] content = entry.getValue();
+            tar.write(header(entry.getKey(), content));
+            if (content != null) {
+                tar.write(content);
+                tar.write(new byte[padding(content.length)]);
+            }
+        }
+        tar.write(new byte[2 * BLOCK_SIZE]);
+        byte[] uncompressed = tar.toByteArray();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(uncompressed);
+        }
+        byte[] content = compressed.toByteArray();
+        return new Layer(content, "sha256:" + DigestUtils.sha256Hex(content), "sha256:" + DigestUtils.sha256Hex(uncompressed));
+    }
+
+    private static byte[] header(String path, @Nullable byte[] content) {
+        byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        byte[] prefix = new byte[0];
+        if (name.length > NAME_LENGTH) {
+            // Long paths are split at a slash between the prefix and the name fields of the ustar format
+            int split = path.lastIndexOf('/', path.length() - 2);
+            while (split > 0 && path.substring(split + 1).getBytes(StandardCharsets.UTF_8).length <= NAME_LENGTH) {
+                prefix = path.substring(0, split).getBytes(StandardCharsets.UTF_8);
+                name = path.substring(split + 1).getBytes(StandardCharsets.UTF_8);
+                split = path.lastIndexOf('/', split - 1);
+            }
+            if (name.length > NAME_LENGTH || prefix.length > PREFIX_LENGTH) {
+                throw new IllegalArgumentException("Path is too long for a layer: " + path);
+            }
+        }
+
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(name, 0, header, 0, name.length);
+        octal(header, 100, 8, content == null ? DIRECTORY_MODE : FILE_MODE);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, content == null ? 0 : content.length);
+        octal(header, 136, 12, 0);
+        header[156] = (byte) (content == null ? '5' : '0');
+        System.arraycopy(("ustar" + '\0' + "00").getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        System.arraycopy(prefix, 0, header, 345, prefix.length);
+
+        // The checksum is computed with its own field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        byte[] checksumField = "%06o\0 ".formatted(checksum).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(checksumField, 0, header, 148, checksumField.length);
+        return header;
+    }
+
+    private static void octal(byte[] header, int offset, int length, long value) {
+        byte[] field = ("%0" + (length - 1) + "o\0").formatted(value).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(field, 0, header, offset, field.length);
+    }
+
+    private static int padding(int length) {
+        return (BLOCK_SIZE - length % BLOCK_SIZE) % BLOCK_SIZE;
+    }
+
+    /**
+     * @param content gzipped tar of the layer
+     * @param digest  digest of the gzipped tar, which identifies the blob in the registry
+     * @param diffId  digest of the uncompressed tar, which identifies the layer in the image config
+     */
+    public record Layer(byte[] content, String digest, String diffId) {
+    }
+}
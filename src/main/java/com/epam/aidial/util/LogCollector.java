@@ -0,0 +1,153 @@
+package com.epam.aidial.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Collects a log read with timestamps, skipping the lines written before a point in time or up to a cursor,
+ * and remembers the timestamp of the last collected line for the next read to continue after it.
+ * Only whole lines are collected, so that the next read never starts in the middle of a line.
+ */
+public class LogCollector {
+    @Nullable
+    private final Instant after;
+    @Nullable
+    private final Instant since;
+    @Nullable
+    private final Integer limitBytes;
+    private final StringBuilder content = new StringBuilder();
+    private final StringBuilder line = new StringBuilder();
+    @Nullable
+    private Instant last;
+    @Nullable
+    private Instant lineTimestamp;
+    private long bytes;
+    private long lineBytes;
+    private boolean lineStart = true;
+    private boolean skipping;
+    private boolean full;
+
+    public LogCollector(@Nullable Instant after, @Nullable Instant since) {
+        this(after, since, null);
+    }
+
+    /**
+     * @param after skip the lines up to this timestamp inclusive, e.g. returned by a previous read
+     * @param since skip the lines before this timestamp
+     * @param limitBytes the maximum size of the collected lines, which only counts the lines not skipped
+     */
+    public LogCollector(@Nullable Instant after, @Nullable Instant since, @Nullable Integer limitBytes) {
+        this.after = after;
+        this.since = since;
+        this.limitBytes = limitBytes;
+        this.last = after;
+    }
+
+    public void accept(String chunk) {
+        if (full) {
+            return;
+        }
+
+        // Long lines are split into several chunks, only the first one has a timestamp
+        if (lineStart) {
+            int separator = chunk.indexOf(' ');
+            Instant timestamp = separator == -1 ? null : parseTimestamp(chunk.substring(0, separator));
+            lineTimestamp = timestamp;
+            if (timestamp == null) {
+                skipping = false;
+                append(chunk);
+            } else {
+                skipping = (after != null && !timestamp.isAfter(after)) || (since != null && timestamp.isBefore(since));
+                if (!skipping) {
+                    append(chunk.substring(separator + 1));
+                }
+            }
+        } else if (!skipping) {
+            append(chunk);
+        }
+
+        lineStart = chunk.endsWith("\n");
+        if (lineStart && !skipping) {
+            completeLine();
+        }
+    }
+
+    public String content() {
+        return content.toString();
+    }
+
+    /**
+     * The timestamp of the last collected line, or the initial cursor if no line is collected.
+     */
+    @Nullable
+    public Instant last() {
+        return last;
+    }
+
+    /**
+     * Whether the limit is reached, so that the rest of the log need not be read.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    private void append(String text) {
+        // The part of a line beyond the limit is never collected
+        if (limitBytes == null || lineBytes <= limitBytes) {
+            line.append(text);
+            lineBytes += text.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    private void completeLine() {
+        if (limitBytes != null && bytes + lineBytes > limitBytes) {
+            if (bytes == 0) {
+                // A line longer than the limit is truncated rather than never collected, so that reading makes progress
+                content.append(truncate(line, limitBytes));
+                advance();
+            }
+            full = true;
+        } else {
+            content.append(line);
+            bytes += lineBytes;
+            advance();
+        }
+
+        line.setLength(0);
+        lineBytes = 0;
+    }
+
+    private void advance() {
+        if (lineTimestamp != null) {
+            last = lineTimestamp;
+        }
+    }
+
+    private static CharSequence truncate(CharSequence text, int maxBytes) {
+        int bytes = 0;
+        int end = 0;
+        while (end < text.length()) {
+            int codePoint = Character.codePointAt(text, end);
+            int size = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (bytes + size > maxBytes) {
+                break;
+            }
+            bytes += size;
+            end += Character.charCount(codePoint);
+        }
+
+        return text.subSequence(0, end);
+    }
+
+    @Nullable
+    private static Instant parseTimestamp(String text) {
+        try {
+            return Instant.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
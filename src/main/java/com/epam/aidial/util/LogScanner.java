@@ -0,0 +1,88 @@
+package com.epam.aidial.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Scans a log in a single pass for the message following a marker, keeping the tail of the log
+ * in case the marker is not found. Memory is bounded by maxChars regardless of the log size.
+ */
+public class LogScanner {
+    private final String marker;
+    private final int maxLines;
+    private final int maxChars;
+    // One extra character tells whether the tail starts at a line boundary
+    private final char[] tail;
+    private int tailStart;
+    private int tailSize;
+    private String carry = "";
+    private StringBuilder message;
+
+    public LogScanner(String marker, int maxLines, int maxChars) {
+        this.marker = marker;
+        this.maxLines = maxLines;
+        this.maxChars = maxChars;
+        this.tail = new char[maxChars + 1];
+    }
+
+    public void accept(String chunk) {
+        if (message != null) {
+            appendMessage(chunk);
+            return;
+        }
+
+        // The marker may be split between chunks
+        String text = carry + chunk;
+        int index = text.indexOf(marker);
+        if (index != StringUtils.INDEX_NOT_FOUND) {
+            message = new StringBuilder();
+            appendMessage(text.substring(index + marker.length()));
+            return;
+        }
+
+        carry = text.substring(Math.max(0, text.length() - marker.length() + 1));
+        appendTail(chunk);
+    }
+
+    /**
+     * Whether the rest of the log can be skipped.
+     */
+    public boolean isComplete() {
+        return message != null && message.length() >= maxChars;
+    }
+
+    /**
+     * The text following the marker, or null if there is no marker.
+     */
+    @Nullable
+    public String message() {
+        return message == null ? null : message.toString();
+    }
+
+    /**
+     * The last lines of the log, as {@link TextUtils#truncateText} would return for the whole log.
+     */
+    public String tail() {
+        StringBuilder text = new StringBuilder(tailSize);
+        for (int i = 0; i < tailSize; ++i) {
+            text.append(tail[(tailStart + i) % tail.length]);
+        }
+
+        return TextUtils.truncateText(text.toString(), maxLines, maxChars);
+    }
+
+    private void appendMessage(String text) {
+        message.append(text, 0, Math.min(text.length(), maxChars - message.length()));
+    }
+
+    private void appendTail(String text) {
+        for (int i = Math.max(0, text.length() - tail.length); i < text.length(); ++i) {
+            tail[(tailStart + tailSize) % tail.length] = text.charAt(i);
+            if (tailSize < tail.length) {
+                ++tailSize;
+            } else {
+                tailStart = (tailStart + 1) % tail.length;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.epam.aidial.util;
+
+import lombok.experimental.UtilityClass;
+import okio.Buffer;
+import okio.BufferedSource;
+import org.apache.commons.lang3.tuple.Pair;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+@UtilityClass
+public class LogUtils {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Reads the next line of a log including the line break, or its next part of at most maxBytes
+     * if the line is longer. Parts never split a multibyte character. Returns null at the end of the log.
+     */
+    @Nullable
+    public String readChunk(BufferedSource source, long maxBytes) throws IOException {
+        long size = chunkSize(source, maxBytes);
+        return size == -1 ? null : source.readUtf8(size);
+    }
+
+    /**
+     * Reads the same chunk as {@link #readChunk}, without decoding it.
+     */
+    @Nullable
+    public byte[] readChunkBytes(BufferedSource source, long maxBytes) throws IOException {
+        long size = chunkSize(source, maxBytes);
+        return size == -1 ? null : source.readByteArray(size);
+    }
+
+    /**
+     * Encodes a log line of an instance as a JSON object {"instance":"...","content":"..."} terminated by a line break,
+     * so that the entries written one after another make up NDJSON. The line is escaped byte by byte,
+     * so it is never decoded into a string.
+     */
+    public byte[] encodeLogEntry(String instance, byte[] line) {
+        int end = line.length;
+        if (end > 0 && line[end - 1] == '\n') {
+            --end;
+        }
+
+        if (end > 0 && line[end - 1] == '\r') {
+            --end;
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(end + instance.length() + 32);
+        output.writeBytes("{\"instance\":\"".getBytes(StandardCharsets.US_ASCII));
+        byte[] instanceBytes = instance.getBytes(StandardCharsets.UTF_8);
+        writeJsonString(output, instanceBytes, instanceBytes.length);
+        output.writeBytes("\",\"content\":\"".getBytes(StandardCharsets.US_ASCII));
+        writeJsonString(output, line, end);
+        output.writeBytes("\"}\n".getBytes(StandardCharsets.US_ASCII));
+        return output.toByteArray();
+    }
+
+    /**
+     * Encodes the position in the log of an instance into an opaque cursor.
+     */
+    public String encodeCursor(String instance, Instant timestamp) {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString("%s %s".formatted(instance, timestamp).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Pair<String, Instant> decodeCursor(String cursor) {
+        try {
+            String text = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = text.lastIndexOf(' ');
+            if (separator == -1) {
+                throw new IllegalArgumentException("Invalid log cursor: " + cursor);
+            }
+
+            return Pair.of(text.substring(0, separator), Instant.parse(text.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid log cursor: " + cursor, e);
+        }
+    }
+
+    private long chunkSize(BufferedSource source, long maxBytes) throws IOException {
+        long newline = source.indexOf((byte) '\n', 0, maxBytes);
+        if (newline != -1) {
+            return newline + 1;
+        }
+
+        if (source.exhausted()) {
+            return -1;
+        }
+
+        Buffer buffer = source.getBuffer();
+        return characterBoundary(buffer, Math.min(buffer.size(), maxBytes));
+    }
+
+    private long characterBoundary(Buffer buffer, long size) {
+        long start = size - 1;
+        while (start > 0 && (buffer.getByte(start) & 0xC0) == 0x80) {
+            --start;
+        }
+
+        int lead = buffer.getByte(start) & 0xFF;
+        int length = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+        return start > 0 && start + length > size ? start : size;
+    }
+
+    private void writeJsonString(ByteArrayOutputStream output, byte[] bytes, int length) {
+        for (int i = 0; i < length; ++i) {
+            int b = bytes[i] & 0xFF;
+            if (b == '"' || b == '\\') {
+                output.write('\\');
+                output.write(b);
+            } else if (b < 0x20) {
+                output.write('\\');
+                output.write('u');
+                output.write('0');
+                output.write('0');
+                output.write(HEX_DIGITS[b >> 4]);
+                output.write(HEX_DIGITS[b & 0xF]);
+            } else {
+                // Multibyte characters are valid in JSON as they are
+                output.write(b);
+            }
+        }
+    }
+}
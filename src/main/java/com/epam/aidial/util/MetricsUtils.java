@@ -0,0 +1,60 @@
+package com.epam.aidial.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.experimental.UtilityClass;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+@UtilityClass
+public class MetricsUtils {
+    public static final String OPERATION_METRIC = "app.operation";
+    public static final String OPERATION_STAGE_METRIC = "app.operation.stage";
+
+    /**
+     * Records the time from subscription to termination of the operation,
+     * tagged with its outcome: success, error or cancelled.
+     */
+    public <T> Mono<T> timed(MeterRegistry registry, String name, Tags tags, Mono<T> operation) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            return operation.doFinally(signal -> sample.stop(Timer.builder(name)
+                    .tags(tags)
+                    .tag("outcome", outcome(signal))
+                    .publishPercentileHistogram()
+                    .register(registry)));
+        });
+    }
+
+    /**
+     * Records the time from subscription to termination of the stream, e.g. for as long as a log is followed.
+     */
+    public <T> Flux<T> timed(MeterRegistry registry, String name, Tags tags, Flux<T> operation) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            return operation.doFinally(signal -> sample.stop(Timer.builder(name)
+                    .tags(tags)
+                    .tag("outcome", outcome(signal))
+                    .publishPercentileHistogram()
+                    .register(registry)));
+        });
+    }
+
+    public <T> Mono<T> operation(MeterRegistry registry, String operation, Mono<T> mono) {
+        return timed(registry, OPERATION_METRIC, Tags.of("operation", operation), mono);
+    }
+
+    public <T> Mono<T> stage(MeterRegistry registry, String operation, String stage, Mono<T> mono) {
+        return timed(registry, OPERATION_STAGE_METRIC, Tags.of("operation", operation, "stage", stage), mono);
+    }
+
+    private String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+    }
+}
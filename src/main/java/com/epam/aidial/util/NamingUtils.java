@@ -1,6 +1,7 @@
 package com.epam.aidial.util;
 
 import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.Nullable;
 
 @UtilityClass
 public class NamingUtils {
@@ -18,7 +19,31 @@ public class NamingUtils {
         return kubeName("app", name);
     }
 
+    public static String baseImageJobName(String runtime) {
+        return kubeName("base-image", runtime);
+    }
+
+    public static String builderPoolPodPrefix(String runtime) {
+        return kubeName("builder-pool", runtime) + "-";
+    }
+
+    @Nullable
+    public static String nameFromBuildJobName(String jobName) {
+        return nameFromKubeName("build", jobName);
+    }
+
+    @Nullable
+    public static String nameFromAppName(String appName) {
+        return nameFromKubeName("app", appName);
+    }
+
     private String kubeName(String type, String name) {
         return "%s-%s-%s".formatted(NAME_PREFIX, type, name);
     }
+
+    @Nullable
+    private String nameFromKubeName(String type, String kubeName) {
+        String prefix = kubeName(type, "");
+        return kubeName.startsWith(prefix) ? kubeName.substring(prefix.length()) : null;
+    }
 }
@@ -21,6 +21,13 @@ public class SseUtils {
                 .build();
     }
 
+    public ServerSentEvent<Object> event(String type, Object data) {
+        return ServerSentEvent.builder()
+                .event(type)
+                .data(data)
+                .build();
+    }
+
     public ServerSentEvent<Object> result(Object data) {
         return ServerSentEvent.builder()
                 .event(SseUtils.RESULT)
@@ -0,0 +1,50 @@
+package com.epam.aidial.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Base64;
+
+@Slf4j
+@UtilityClass
+public class TenantUtils {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String ANONYMOUS = "anonymous";
+
+    /**
+     * Identifies the caller for fair scheduling: the subject of the JWT or a hash of the API key.
+     * The JWT is not verified, the identity must not be used for authorization.
+     */
+    public String tenant(@Nullable String apiKey, @Nullable String jwt) {
+        String subject = jwtSubject(jwt);
+        if (subject != null) {
+            return "user:" + subject;
+        }
+        if (StringUtils.isNotBlank(apiKey)) {
+            return "key:" + DigestUtils.sha256Hex(apiKey);
+        }
+        return ANONYMOUS;
+    }
+
+    @Nullable
+    private String jwtSubject(@Nullable String jwt) {
+        String[] parts = StringUtils.split(jwt, '.');
+        if (parts == null || parts.length < 2) {
+            return null;
+        }
+
+        try {
+            JsonNode payload = MAPPER.readTree(Base64.getUrlDecoder().decode(parts[1]));
+            return StringUtils.defaultIfBlank(payload.path("sub").asText(), null);
+        } catch (IllegalArgumentException | IOException e) {
+            log.debug("Failed to read JWT payload", e);
+            return null;
+        }
+    }
+}
@@ -10,6 +10,7 @@ import io.kubernetes.client.openapi.models.V1EnvVar;
 import io.kubernetes.client.openapi.models.V1Job;
 import io.kubernetes.client.openapi.models.V1JobSpec;
 import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1PodSpec;
 import io.kubernetes.client.openapi.models.V1PodTemplateSpec;
 import io.kubernetes.client.openapi.models.V1Secret;
@@ -67,6 +68,16 @@ public class Mappers {
             V1PodTemplateSpec::getSpec,
             V1PodTemplateSpec::setSpec);
 
+    public static final FieldMapper<V1Pod, V1ObjectMeta> POD_METADATA_FIELD = new FieldMapper<>(
+            V1ObjectMeta::new,
+            V1Pod::getMetadata,
+            V1Pod::setMetadata);
+
+    public static final FieldMapper<V1Pod, V1PodSpec> POD_SPEC_FIELD = new FieldMapper<>(
+            V1PodSpec::new,
+            V1Pod::getSpec,
+            V1Pod::setSpec);
+
     public static final FieldMapper<V1PodSpec, List<V1Container>> POD_INIT_CONTAINERS_FIELD = new FieldMapper<>(
             ArrayList::new,
             V1PodSpec::getInitContainers,
@@ -0,0 +1,67 @@
+package com.epam.aidial.controller;
+
+import com.epam.aidial.dto.CreateBaseImageResponseDto;
+import com.epam.aidial.service.BaseImageService;
+import com.epam.aidial.service.HeartbeatService;
+import com.epam.aidial.util.SseUtils;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(BaseImageController.class)
+class BaseImageControllerTest {
+    private static final String TEST_RUNTIME = "test-runtime";
+    private static final String TEST_IMAGE = "test-registry/app-base-image@sha256:test-digest";
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private BaseImageService baseImageService;
+
+    @MockitoBean
+    private HeartbeatService heartbeatService;
+
+    @Captor
+    private ArgumentCaptor<Mono<ServerSentEvent<Object>>> setupHeartbeatsCaptor;
+
+    @Test
+    void testBaseImageCreate() {
+        // Arrange
+        when(baseImageService.prebuild(TEST_RUNTIME))
+                .thenReturn(Mono.just(TEST_IMAGE));
+        CreateBaseImageResponseDto response = new CreateBaseImageResponseDto(TEST_IMAGE);
+        ServerSentEvent<Object> result = SseUtils.result(response);
+        when(heartbeatService.setupHeartbeats(
+                setupHeartbeatsCaptor.capture()))
+                .thenReturn(Mono.just(result).flux());
+
+        // Act
+        Flux<CreateBaseImageResponseDto> actual = webTestClient.post()
+                .uri("/v1/base-image/" + TEST_RUNTIME)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(CreateBaseImageResponseDto.class)
+                .getResponseBody();
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(response)
+                .verifyComplete();
+
+        StepVerifier.create(setupHeartbeatsCaptor.getValue())
+                .expectNext(result)
+                .verifyComplete();
+    }
+}
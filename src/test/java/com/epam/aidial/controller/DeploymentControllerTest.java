@@ -1,16 +1,25 @@
 package com.epam.aidial.controller;
 
+import com.epam.aidial.dto.BatchDeploymentRequestDto;
+import com.epam.aidial.dto.BatchItemEventDto;
+import com.epam.aidial.dto.BatchResponseDto;
 import com.epam.aidial.dto.CreateDeploymentRequestDto;
 import com.epam.aidial.dto.CreateDeploymentResponseDto;
 import com.epam.aidial.dto.DeleteDeploymentResponseDto;
+import com.epam.aidial.dto.ErrorResponseDto;
+import com.epam.aidial.dto.GetApplicationLogsResponseDto;
+import com.epam.aidial.dto.GetDeploymentResponseDto;
+import com.epam.aidial.dto.ListDeploymentsResponseDto;
 import com.epam.aidial.service.DeployService;
 import com.epam.aidial.service.HeartbeatService;
+import com.epam.aidial.util.LogUtils;
 import com.epam.aidial.util.SseUtils;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -19,10 +28,15 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -49,6 +63,9 @@ class DeploymentControllerTest {
     @Captor
     private ArgumentCaptor<Mono<ServerSentEvent<Object>>> setupHeartbeatsCaptor;
 
+    @Captor
+    private ArgumentCaptor<Flux<ServerSentEvent<Object>>> batchCaptor;
+
     @Test
     @SuppressWarnings("unchecked")
     void testDeploymentCreate() {
@@ -59,11 +76,13 @@ class DeploymentControllerTest {
                 (String) deployCaptor.capture(),
                 (Integer) deployCaptor.capture(),
                 (Integer) deployCaptor.capture(),
-                (Integer) deployCaptor.capture()))
+                (Integer) deployCaptor.capture(),
+                any()))
                 .thenReturn(Mono.just(TEST_URL));
         CreateDeploymentResponseDto response = new CreateDeploymentResponseDto(TEST_URL);
         ServerSentEvent<Object> result = SseUtils.result(response);
         when(heartbeatService.setupHeartbeats(
+                any(),
                 setupHeartbeatsCaptor.capture()))
                 .thenReturn(Mono.just(result).flux());
         Map<String, String> env = Map.of("test-env-name", "test-env-value");
@@ -121,4 +140,107 @@ class DeploymentControllerTest {
 
         verify(deployService).undeploy(TEST_NAME);
     }
+
+    @Test
+    void testDeploymentGet() {
+        // Arrange
+        GetDeploymentResponseDto response = new GetDeploymentResponseDto(
+                TEST_NAME, GetDeploymentResponseDto.Status.READY, TEST_URL, null, 1);
+        when(deployService.status(TEST_NAME))
+                .thenReturn(Mono.just(response));
+
+        // Act & Assert
+        webTestClient.get()
+                .uri("/v1/deployment/" + TEST_NAME)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(GetDeploymentResponseDto.class)
+                .isEqualTo(response);
+    }
+
+    @Test
+    void testDeploymentList() {
+        // Arrange
+        GetDeploymentResponseDto deployment = new GetDeploymentResponseDto(
+                TEST_NAME, GetDeploymentResponseDto.Status.DEPLOYING, null, null, 0);
+        when(deployService.list())
+                .thenReturn(Mono.just(List.of(deployment)));
+
+        // Act & Assert
+        webTestClient.get()
+                .uri("/v1/deployment")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(ListDeploymentsResponseDto.class)
+                .isEqualTo(new ListDeploymentsResponseDto(List.of(deployment)));
+    }
+
+    @Test
+    void testDeploymentBatch() {
+        // Arrange
+        when(deployService.deploy(eq("first"), eq(Map.of()), eq("image-name"), isNull(), isNull(), isNull(), any()))
+                .thenReturn(Mono.just(TEST_URL));
+        when(deployService.undeploy("second"))
+                .thenReturn(Mono.error(new IllegalStateException("failed")));
+        when(heartbeatService.setupHeartbeats(any(), batchCaptor.capture()))
+                .thenReturn(Flux.empty());
+
+        // Act
+        webTestClient.post()
+                .uri("/v1/deployment")
+                .body(BodyInserters.fromValue(new BatchDeploymentRequestDto(List.of(
+                        new BatchDeploymentRequestDto.Operation(
+                                BatchDeploymentRequestDto.Type.DEPLOY, "first", null, "image-name", null, null, null),
+                        new BatchDeploymentRequestDto.Operation(
+                                BatchDeploymentRequestDto.Type.UNDEPLOY, "second", null, null, null, null, null)))))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        // Assert
+        StepVerifier.create(batchCaptor.getValue())
+                .expectNext(SseUtils.event(BatchOperations.ITEM_RESULT, new BatchItemEventDto("first", new CreateDeploymentResponseDto(TEST_URL))))
+                .expectNext(SseUtils.event(BatchOperations.ITEM_ERROR, new BatchItemEventDto("second", new ErrorResponseDto("failed"))))
+                .expectNext(SseUtils.result(new BatchResponseDto(1, 1)))
+                .verifyComplete();
+    }
+
+    @Test
+    void testDeploymentLogs() {
+        // Arrange
+        GetApplicationLogsResponseDto.LogEntry entry = new GetApplicationLogsResponseDto.LogEntry("pod", "text\n", "cursor-2");
+        Instant since = Instant.parse("2024-01-01T00:00:00Z");
+        when(deployService.logs(TEST_NAME, 10, 1000, since, List.of("cursor-1")))
+                .thenReturn(Flux.just(entry));
+
+        // Act & Assert
+        webTestClient.get()
+                .uri("/v1/deployment/{name}/logs?tailLines=10&limitBytes=1000&since={since}&cursor=cursor-1", TEST_NAME, since)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(GetApplicationLogsResponseDto.class)
+                .isEqualTo(new GetApplicationLogsResponseDto(List.of(entry)));
+    }
+
+    @Test
+    void testDeploymentFollowLogs() {
+        // Arrange
+        when(deployService.followLogs(TEST_NAME, 10))
+                .thenReturn(Flux.just(
+                        LogUtils.encodeLogEntry("pod-1", "first\n".getBytes(StandardCharsets.UTF_8)),
+                        LogUtils.encodeLogEntry("pod-2", "second\n".getBytes(StandardCharsets.UTF_8))));
+
+        // Act & Assert
+        webTestClient.get()
+                .uri("/v1/deployment/{name}/logs/follow?tailLines=10", TEST_NAME)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(String.class)
+                .isEqualTo("{\"instance\":\"pod-1\",\"content\":\"first\"}\n{\"instance\":\"pod-2\",\"content\":\"second\"}\n");
+    }
 }
\ No newline at end of file
@@ -1,8 +1,13 @@
 package com.epam.aidial.controller;
 
+import com.epam.aidial.dto.BatchImageRequestDto;
+import com.epam.aidial.dto.BatchItemEventDto;
+import com.epam.aidial.dto.BatchResponseDto;
+import com.epam.aidial.dto.BuildPriority;
 import com.epam.aidial.dto.CreateImageRequestDto;
 import com.epam.aidial.dto.CreateImageResponseDto;
 import com.epam.aidial.dto.DeleteImageResponseDto;
+import com.epam.aidial.dto.GetImageResponseDto;
 import com.epam.aidial.service.BuildService;
 import com.epam.aidial.service.HeartbeatService;
 import com.epam.aidial.util.SseUtils;
@@ -19,7 +24,11 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -29,6 +38,7 @@ class ImageControllerTest {
     private static final String TEST_SOURCES = "test-sources";
     private static final String TEST_RUNTIME = "test-runtime";
     private static final String TEST_IMAGE = "test-image";
+    private static final String TEST_DIGEST = "sha256:test-digest";
     private static final String TEST_JWT = "test-api-jwt";
     private static final String TEST_API_KEY = "test-api-key";
 
@@ -50,14 +60,18 @@ class ImageControllerTest {
     @Captor
     private ArgumentCaptor<Mono<ServerSentEvent<Object>>> setupHeartbeatsCaptor;
 
+    @Captor
+    private ArgumentCaptor<Flux<ServerSentEvent<Object>>> batchCaptor;
+
     @Test
     void testImageCreate() {
         // Arrange
-        when(buildService.build(buildCaptor.capture()))
-                .thenReturn(Mono.just(TEST_IMAGE));
-        CreateImageResponseDto response = new CreateImageResponseDto(TEST_IMAGE);
+        when(buildService.build(buildCaptor.capture(), eq(false), any()))
+                .thenReturn(Mono.just(new CreateImageResponseDto(TEST_IMAGE, TEST_DIGEST)));
+        CreateImageResponseDto response = new CreateImageResponseDto(TEST_IMAGE, TEST_DIGEST);
         ServerSentEvent<Object> result = SseUtils.result(response);
         when(heartbeatService.setupHeartbeats(
+                any(),
                 setupHeartbeatsCaptor.capture()))
                 .thenReturn(Mono.just(result).flux());
 
@@ -66,7 +80,7 @@ class ImageControllerTest {
                 .uri("/v1/image/" + TEST_NAME)
                 .header("api-key", TEST_API_KEY)
                 .header("Authorization", "Bearer " + TEST_JWT)
-                .body(BodyInserters.fromValue(new CreateImageRequestDto(TEST_SOURCES, TEST_RUNTIME)))
+                .body(BodyInserters.fromValue(new CreateImageRequestDto(TEST_SOURCES, TEST_RUNTIME, null, null)))
                 .exchange()
                 .expectStatus()
                 .isOk()
@@ -82,7 +96,35 @@ class ImageControllerTest {
                 .expectNext(result);
 
         assertThat(buildCaptor.getValue())
-                .isEqualTo(new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME));
+                .isEqualTo(new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME, BuildPriority.NORMAL));
+    }
+
+    @Test
+    void testImageBatch() {
+        // Arrange
+        when(buildService.build(buildCaptor.capture(), eq(false), any()))
+                .thenReturn(Mono.just(new CreateImageResponseDto(TEST_IMAGE, TEST_DIGEST)));
+        when(heartbeatService.setupHeartbeats(any(), batchCaptor.capture()))
+                .thenReturn(Flux.empty());
+
+        // Act
+        webTestClient.post()
+                .uri("/v1/image")
+                .header("api-key", TEST_API_KEY)
+                .body(BodyInserters.fromValue(new BatchImageRequestDto(List.of(
+                        new BatchImageRequestDto.Item(TEST_NAME, TEST_SOURCES, null, BuildPriority.LOW)))))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        // Assert
+        StepVerifier.create(batchCaptor.getValue())
+                .expectNext(SseUtils.event(BatchOperations.ITEM_RESULT, new BatchItemEventDto(TEST_NAME, new CreateImageResponseDto(TEST_IMAGE, TEST_DIGEST))))
+                .expectNext(SseUtils.result(new BatchResponseDto(1, 0)))
+                .verifyComplete();
+
+        assertThat(buildCaptor.getValue())
+                .isEqualTo(new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, null, "python3.11", BuildPriority.LOW));
     }
 
     @Test
@@ -116,4 +158,21 @@ class ImageControllerTest {
 
         verify(buildService).clean(TEST_NAME);
     }
+
+    @Test
+    void testImageGet() {
+        // Arrange
+        GetImageResponseDto response = new GetImageResponseDto(TEST_NAME, GetImageResponseDto.Status.READY, TEST_IMAGE, null);
+        when(buildService.status(TEST_NAME))
+                .thenReturn(Mono.just(response));
+
+        // Act & Assert
+        webTestClient.get()
+                .uri("/v1/image/" + TEST_NAME)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(GetImageResponseDto.class)
+                .isEqualTo(response);
+    }
 }
\ No newline at end of file
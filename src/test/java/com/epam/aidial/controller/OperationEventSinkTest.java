@@ -0,0 +1,47 @@
+package com.epam.aidial.controller;
+
+import com.epam.aidial.dto.LogEventDto;
+import com.epam.aidial.service.OperationEvent;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OperationEventSinkTest {
+    @Test
+    void testDroppedLogsAreReportedOnceCaughtUp() {
+        // Arrange
+        OperationEventSink events = new OperationEventSink(true);
+        for (int i = 0; i < 1005; i++) {
+            events.accept(OperationEvent.log(new LogEventDto("builder", "line " + i)));
+        }
+
+        // Act & Assert
+        StepVerifier.create(events.asSseEvents())
+                .expectNextCount(1000)
+                .assertNext(event -> assertThat(event.data())
+                        .isEqualTo(new LogEventDto("builder", "5 log lines were dropped as they were not received in time")))
+                .then(() -> events.accept(OperationEvent.log(new LogEventDto("builder", "last line"))))
+                .assertNext(event -> assertThat(event.data()).isEqualTo(new LogEventDto("builder", "last line")))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void testLogsAreNotRelayedUnlessAsked() {
+        // Arrange
+        OperationEventSink events = new OperationEventSink();
+
+        // Act
+        events.accept(OperationEvent.log(new LogEventDto("builder", "line")));
+
+        // Assert
+        StepVerifier.create(events.asSseEvents())
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify();
+    }
+}
@@ -0,0 +1,177 @@
+package com.epam.aidial.kubernetes;
+
+import com.epam.aidial.kubernetes.knative.V1Condition;
+import com.epam.aidial.kubernetes.knative.V1Service;
+import com.epam.aidial.kubernetes.knative.V1ServiceStatus;
+import io.kubernetes.client.openapi.ApiCallback;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1JobCondition;
+import io.kubernetes.client.openapi.models.V1JobStatus;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Call;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KubernetesClientTest {
+    private static final String TEST_NAMESPACE = "test-namespace";
+    private static final String TEST_NAME = "test-name";
+    private static final String KNATIVE_API_VERSION = "serving.knative.dev/v1";
+
+    private final ApiClient apiClient = mock(ApiClient.class);
+    private final Call call = mock(Call.class);
+    private final AtomicReference<ApiCallback<Object>> callback = new AtomicReference<>();
+    private KubernetesClient kubernetesClient;
+
+    @BeforeEach
+    void setUp() throws ApiException {
+        when(apiClient.escapeString(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(apiClient.buildCall(any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(call);
+        doAnswer(invocation -> {
+            callback.set(invocation.getArgument(2));
+            return null;
+        }).when(apiClient).executeAsync(any(Call.class), any(Type.class), ArgumentMatchers.<ApiCallback<Object>>any());
+        // The watches never reach an API server, the events are passed to the watchers directly
+        kubernetesClient = new KubernetesClient(apiClient, new ApiClient().setReadTimeout(0), Schedulers.immediate(), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        kubernetesClient.close();
+    }
+
+    @Test
+    void testDisposingRequestCancelsCall() {
+        // Arrange
+        Disposable request = kubernetesClient.getResourceQuotas(TEST_NAMESPACE).subscribe();
+
+        // Act
+        request.dispose();
+
+        // Assert
+        verify(call).cancel();
+    }
+
+    @Test
+    void testCreateJobIgnoresStaleJobWithSameName() {
+        // Arrange
+        V1Job job = job(null);
+
+        // Act & Assert
+        StepVerifier.create(kubernetesClient.createJob(TEST_NAMESPACE, job, 60))
+                .expectSubscription()
+                .then(() -> callback.get().onSuccess(job("new-uid"), 201, Map.of()))
+                .then(() -> jobWatcher().onUpdate(job("stale-uid"), completed(job("stale-uid"))))
+                .then(() -> jobWatcher().onDelete(job("stale-uid"), false))
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> jobWatcher().onUpdate(job("new-uid"), completed(job("new-uid"))))
+                .verifyComplete();
+    }
+
+    @Test
+    void testCreateJobFailsIfJobIsDeleted() {
+        // Arrange
+        V1Job job = job(null);
+
+        // Act & Assert
+        StepVerifier.create(kubernetesClient.createJob(TEST_NAMESPACE, job, 60))
+                .expectSubscription()
+                .then(() -> callback.get().onSuccess(job("new-uid"), 201, Map.of()))
+                .then(() -> jobWatcher().onDelete(job("new-uid"), false))
+                .expectErrorMatches(e -> e instanceof IllegalStateException
+                        && "Job test-name has been deleted".equals(e.getMessage()))
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testCreateKnativeServiceIgnoresStaleServiceWithSameName() {
+        // Arrange
+        V1Service service = service(null);
+
+        // Act & Assert
+        StepVerifier.create(kubernetesClient.createKnativeService(TEST_NAMESPACE, service, 60))
+                .expectSubscription()
+                .then(() -> callback.get().onSuccess(service("new-uid"), 201, Map.of()))
+                .then(() -> serviceWatcher().onUpdate(service("stale-uid"), ready(service("stale-uid"), "http://stale")))
+                .then(() -> serviceWatcher().onDelete(service("stale-uid"), false))
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> serviceWatcher().onUpdate(service("new-uid"), ready(service("new-uid"), "http://new")))
+                .expectNext("http://new")
+                .verifyComplete();
+    }
+
+    @Test
+    void testCreateKnativeServiceFailsIfServiceIsDeleted() {
+        // Arrange
+        V1Service service = service(null);
+
+        // Act & Assert
+        StepVerifier.create(kubernetesClient.createKnativeService(TEST_NAMESPACE, service, 60))
+                .expectSubscription()
+                .then(() -> callback.get().onSuccess(service("new-uid"), 201, Map.of()))
+                .then(() -> serviceWatcher().onDelete(service("new-uid"), false))
+                .expectErrorMatches(e -> e instanceof IllegalStateException
+                        && "Service test-name has been deleted".equals(e.getMessage()))
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ResourceWatcher<V1Job> jobWatcher() {
+        return ((Map<String, ResourceWatcher<V1Job>>) ReflectionTestUtils.getField(kubernetesClient, "jobWatchers"))
+                .get(TEST_NAMESPACE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ResourceWatcher<V1Service> serviceWatcher() {
+        return ((Map<String, ResourceWatcher<V1Service>>) ReflectionTestUtils.getField(kubernetesClient, "serviceWatchers"))
+                .get(TEST_NAMESPACE);
+    }
+
+    private static V1Job job(String uid) {
+        return new V1Job().metadata(new V1ObjectMeta().namespace(TEST_NAMESPACE).name(TEST_NAME).uid(uid));
+    }
+
+    private static V1Job completed(V1Job job) {
+        return job.status(new V1JobStatus().conditions(List.of(new V1JobCondition().type("Complete").status("True"))));
+    }
+
+    private static V1Service service(String uid) {
+        V1Service service = new V1Service();
+        service.setApiVersion(KNATIVE_API_VERSION);
+        service.setMetadata(new V1ObjectMeta().namespace(TEST_NAMESPACE).name(TEST_NAME).uid(uid));
+        return service;
+    }
+
+    private static V1Service ready(V1Service service, String url) {
+        V1Condition condition = new V1Condition();
+        condition.setType("Ready");
+        condition.setStatus("True");
+        V1ServiceStatus status = new V1ServiceStatus();
+        status.setConditions(new V1Condition[] {condition});
+        status.setUrl(url);
+        service.setStatus(status);
+        return service;
+    }
+}
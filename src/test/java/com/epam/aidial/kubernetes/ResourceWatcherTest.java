@@ -0,0 +1,141 @@
+package com.epam.aidial.kubernetes;
+
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResourceWatcherTest {
+    private static final String TEST_NAMESPACE = "test-namespace";
+    private static final String JOB_NAME_INDEX = "job-name";
+
+    private ResourceWatcher<V1Pod> watcher;
+
+    @BeforeEach
+    void setUp() {
+        // The informer never reaches an API server, the events are passed to the watcher directly
+        watcher = new ResourceWatcher<>(
+                new ApiClient().setReadTimeout(0),
+                params -> {
+                    throw new ApiException("No API server in tests");
+                },
+                V1Pod.class,
+                V1PodList.class,
+                TEST_NAMESPACE,
+                "pods",
+                Map.of(JOB_NAME_INDEX, pod -> List.of(pod.getMetadata().getLabels().get(JOB_NAME_INDEX))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.stop();
+    }
+
+    @Test
+    void testEventsAreFannedOutByNameAndIndex() {
+        // Arrange
+        List<V1Pod> byName = new CopyOnWriteArrayList<>();
+        List<V1Pod> byIndex = new CopyOnWriteArrayList<>();
+        List<V1Pod> byOtherName = new CopyOnWriteArrayList<>();
+        Disposable nameSubscription = watcher.watch("pod-a").subscribe(byName::add);
+        Disposable indexSubscription = watcher.watch(JOB_NAME_INDEX, "job-a").subscribe(byIndex::add);
+        Disposable otherNameSubscription = watcher.watch("pod-a").subscribe(byOtherName::add);
+        V1Pod podA = pod("pod-a", "job-a");
+        V1Pod podB = pod("pod-b", "job-a");
+        V1Pod podC = pod("pod-c", "job-b");
+
+        // Act
+        watcher.onAdd(podA);
+        watcher.onAdd(podB);
+        watcher.onUpdate(podC, podC);
+
+        // Assert
+        assertThat(byName).containsExactly(podA);
+        assertThat(byOtherName).containsExactly(podA);
+        assertThat(byIndex).containsExactly(podA, podB);
+        nameSubscription.dispose();
+        indexSubscription.dispose();
+        otherNameSubscription.dispose();
+    }
+
+    @Test
+    void testDeletionIsPassedToSubscribersOfName() {
+        // Arrange
+        List<V1Pod> byName = new CopyOnWriteArrayList<>();
+        List<V1Pod> byIndex = new CopyOnWriteArrayList<>();
+        Disposable nameSubscription = watcher.watch("pod-a").subscribe(byName::add);
+        Disposable indexSubscription = watcher.watch(JOB_NAME_INDEX, "job-a").subscribe(byIndex::add);
+        V1Pod podA = pod("pod-a", "job-a");
+
+        // Act
+        watcher.onDelete(podA, false);
+
+        // Assert
+        assertThat(byName).containsExactly(podA);
+        assertThat(ResourceWatcher.isDeleted(byName.get(0))).isTrue();
+        assertThat(byIndex).isEmpty();
+        nameSubscription.dispose();
+        indexSubscription.dispose();
+    }
+
+    @Test
+    void testUnsubscribeRemovesSubscriber() {
+        // Arrange
+        List<V1Pod> byName = new CopyOnWriteArrayList<>();
+        List<V1Pod> byIndex = new CopyOnWriteArrayList<>();
+        Disposable nameSubscription = watcher.watch("pod-a").subscribe(byName::add);
+        Disposable indexSubscription = watcher.watch(JOB_NAME_INDEX, "job-a").subscribe(byIndex::add);
+
+        // Act
+        nameSubscription.dispose();
+        indexSubscription.dispose();
+        watcher.onAdd(pod("pod-a", "job-a"));
+
+        // Assert
+        assertThat(byName).isEmpty();
+        assertThat(byIndex).isEmpty();
+        assertThat((Map<?, ?>) ReflectionTestUtils.getField(watcher, "subscribers")).isEmpty();
+        assertThat(((Map<?, ?>) ReflectionTestUtils.getField(watcher, "indexSubscribers")).get(JOB_NAME_INDEX)).isEqualTo(Map.of());
+    }
+
+    @Test
+    void testWatchFailsForUnknownIndex() {
+        // Act & Assert
+        assertThatThrownBy(() -> watcher.watch("unknown", "value"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown index unknown of test-namespace/pods");
+    }
+
+    @Test
+    void testGetFailsIfCacheIsNotSynced() {
+        // Act & Assert
+        StepVerifier.withVirtualTime(() -> watcher.get("pod-a"))
+                .expectSubscription()
+                .thenAwait(Duration.ofSeconds(30))
+                .expectErrorMatches(e -> e instanceof IllegalStateException
+                        && "Cache of test-namespace/pods is not synced".equals(e.getMessage()))
+                .verify(Duration.ofSeconds(5));
+    }
+
+    private static V1Pod pod(String name, String jobName) {
+        return new V1Pod().metadata(new V1ObjectMeta()
+                .namespace(TEST_NAMESPACE)
+                .name(name)
+                .labels(Map.of(JOB_NAME_INDEX, jobName)));
+    }
+}
@@ -0,0 +1,196 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.kubernetes.KubernetesClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1JobCondition;
+import io.kubernetes.client.openapi.models.V1JobStatus;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Secret;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(properties = {
+        "app.build-namespace=" + BaseImageServiceTest.TEST_NAMESPACE,
+        "app.image-build-timeout-sec=60",
+        "app.base-image-retry-min-backoff-sec=1",
+        "app.base-image-retry-max-backoff-sec=10"
+})
+@Import(BaseImageService.class)
+class BaseImageServiceTest {
+    private static final String TEST_RUNTIME = "test-runtime";
+    private static final String TEST_TAG = "test-tag";
+    private static final String TEST_IMAGE = "test-registry/app-base-image:test-tag";
+    private static final String TEST_PINNED_IMAGE = "test-registry/app-base-image@test-digest";
+    private static final String TEST_DIGEST = "test-digest";
+    private static final String TEST_JOB_NAME = "app-ctrl-base-image-test-runtime";
+    private static final String TEST_UID = "test-uid";
+    private static final String TEST_OTHER_UID = "test-other-uid";
+    private static final V1Secret TEST_SECRET = new V1Secret().metadata(new V1ObjectMeta().name(TEST_JOB_NAME));
+    private static final V1Job TEST_JOB = new V1Job().metadata(new V1ObjectMeta().name(TEST_JOB_NAME));
+    private static final V1Job TEST_CREATED_JOB = new V1Job().metadata(new V1ObjectMeta().name(TEST_JOB_NAME).uid(TEST_UID));
+
+    static final String TEST_NAMESPACE = "test-namespace";
+
+    @Autowired
+    private BaseImageService baseImageService;
+
+    @MockitoBean
+    private KubernetesService kubernetesService;
+
+    @MockitoBean
+    private KubernetesClient kubernetesClient;
+
+    @MockitoBean
+    private ConfigService templateService;
+
+    @MockitoBean
+    private RegistryService registryService;
+
+    @MockitoBean
+    private AppConfiguration appConfiguration;
+
+    @BeforeEach
+    void setUp() {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = new AppConfiguration.RuntimeConfiguration();
+        runtimeConfig.setPrebuildBaseImage(true);
+        when(appConfiguration.getRuntimes()).thenReturn(Map.of(TEST_RUNTIME, runtimeConfig));
+        when(kubernetesService.buildClient()).thenReturn(kubernetesClient);
+        when(templateService.baseImageTag(TEST_RUNTIME)).thenReturn(TEST_TAG);
+        when(registryService.pinnedBaseImageName(TEST_DIGEST)).thenReturn(TEST_PINNED_IMAGE);
+    }
+
+    @Test
+    void testPrebuildUsesExistingImage() {
+        // Arrange
+        when(registryService.getBaseImageDigest(TEST_TAG)).thenReturn(Mono.just(TEST_DIGEST));
+
+        // Act
+        Mono<String> actual = baseImageService.prebuild(TEST_RUNTIME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(TEST_PINNED_IMAGE)
+                .verifyComplete();
+        assertThat(baseImageService.baseImage(TEST_RUNTIME)).isEqualTo(TEST_PINNED_IMAGE);
+        assertThat(baseImageService.baseImageDigest(TEST_RUNTIME)).isEqualTo(TEST_DIGEST);
+        verify(kubernetesClient, never()).createJob(anyString(), any(), anyInt());
+    }
+
+    @Test
+    void testPrebuildBuildsMissingImage() {
+        // Arrange
+        when(registryService.getBaseImageDigest(TEST_TAG))
+                .thenReturn(Mono.empty())
+                .thenReturn(Mono.just(TEST_DIGEST));
+        when(registryService.fullBaseImageName(TEST_TAG)).thenReturn(TEST_IMAGE);
+        when(templateService.baseImageJobConfig(eq(TEST_RUNTIME), eq(TEST_IMAGE), startsWith(TEST_JOB_NAME + "-"))).thenReturn(TEST_JOB);
+        when(kubernetesClient.startJob(TEST_NAMESPACE, TEST_JOB)).thenReturn(Mono.just(TEST_CREATED_JOB));
+        when(templateService.baseImageSecretConfig(eq(TEST_RUNTIME), startsWith(TEST_JOB_NAME + "-"), eq(TEST_CREATED_JOB)))
+                .thenReturn(TEST_SECRET);
+        when(kubernetesClient.createSecret(TEST_NAMESPACE, TEST_SECRET)).thenReturn(Mono.empty());
+        when(kubernetesClient.awaitJob(TEST_NAMESPACE, TEST_CREATED_JOB, 60)).thenReturn(Mono.empty());
+        when(kubernetesClient.deleteJob(TEST_NAMESPACE, TEST_JOB_NAME, TEST_UID)).thenReturn(Mono.just(true));
+
+        // Act
+        Mono<String> actual = baseImageService.prebuild(TEST_RUNTIME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(TEST_PINNED_IMAGE)
+                .verifyComplete();
+        verify(kubernetesClient).awaitJob(TEST_NAMESPACE, TEST_CREATED_JOB, 60);
+        verify(kubernetesClient).deleteJob(TEST_NAMESPACE, TEST_JOB_NAME, TEST_UID);
+        verify(kubernetesClient, never()).deleteJob(anyString(), anyString());
+    }
+
+    @Test
+    void testPrebuildWaitsForJobOfAnotherInstance() {
+        // Arrange
+        when(registryService.getBaseImageDigest(TEST_TAG))
+                .thenReturn(Mono.empty())
+                .thenReturn(Mono.empty())
+                .thenReturn(Mono.just(TEST_DIGEST));
+        when(registryService.fullBaseImageName(TEST_TAG)).thenReturn(TEST_IMAGE);
+        when(templateService.baseImageJobConfig(eq(TEST_RUNTIME), eq(TEST_IMAGE), anyString())).thenReturn(TEST_JOB);
+        when(kubernetesClient.startJob(TEST_NAMESPACE, TEST_JOB)).thenReturn(Mono.error(new ApiException(409, "Conflict")));
+        when(kubernetesClient.getCachedJob(TEST_NAMESPACE, TEST_JOB_NAME))
+                .thenReturn(Mono.just(new V1Job().metadata(new V1ObjectMeta().name(TEST_JOB_NAME).uid(TEST_OTHER_UID))));
+
+        // Act & Assert
+        StepVerifier.withVirtualTime(() -> baseImageService.prebuild(TEST_RUNTIME))
+                .expectSubscription()
+                .thenAwait(Duration.ofSeconds(10))
+                .expectNoEvent(Duration.ofSeconds(10))
+                .expectNext(TEST_PINNED_IMAGE)
+                .verifyComplete();
+        verify(kubernetesClient, never()).deleteJob(anyString(), anyString(), anyString());
+        verify(kubernetesClient, never()).createSecret(anyString(), any());
+    }
+
+    @Test
+    void testPrebuildDeletesLeftoverJobByUid() {
+        // Arrange
+        when(registryService.getBaseImageDigest(TEST_TAG))
+                .thenReturn(Mono.empty())
+                .thenReturn(Mono.just(TEST_DIGEST));
+        when(registryService.fullBaseImageName(TEST_TAG)).thenReturn(TEST_IMAGE);
+        when(templateService.baseImageJobConfig(eq(TEST_RUNTIME), eq(TEST_IMAGE), anyString())).thenReturn(TEST_JOB);
+        when(kubernetesClient.startJob(TEST_NAMESPACE, TEST_JOB))
+                .thenReturn(Mono.error(new ApiException(409, "Conflict")))
+                .thenReturn(Mono.just(TEST_CREATED_JOB));
+        when(kubernetesClient.getCachedJob(TEST_NAMESPACE, TEST_JOB_NAME))
+                .thenReturn(Mono.just(new V1Job()
+                        .metadata(new V1ObjectMeta().name(TEST_JOB_NAME).uid(TEST_OTHER_UID))
+                        .status(new V1JobStatus().addConditionsItem(new V1JobCondition().type("Failed").status("True")))));
+        when(kubernetesClient.deleteJob(eq(TEST_NAMESPACE), eq(TEST_JOB_NAME), anyString())).thenReturn(Mono.just(true));
+        when(templateService.baseImageSecretConfig(eq(TEST_RUNTIME), anyString(), eq(TEST_CREATED_JOB))).thenReturn(TEST_SECRET);
+        when(kubernetesClient.createSecret(TEST_NAMESPACE, TEST_SECRET)).thenReturn(Mono.empty());
+        when(kubernetesClient.awaitJob(TEST_NAMESPACE, TEST_CREATED_JOB, 60)).thenReturn(Mono.empty());
+
+        // Act
+        Mono<String> actual = baseImageService.prebuild(TEST_RUNTIME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(TEST_PINNED_IMAGE)
+                .verifyComplete();
+        verify(kubernetesClient).deleteJob(TEST_NAMESPACE, TEST_JOB_NAME, TEST_OTHER_UID);
+        verify(kubernetesClient).deleteJob(TEST_NAMESPACE, TEST_JOB_NAME, TEST_UID);
+    }
+
+    @Test
+    void testPrebuildFailsForRuntimeWithoutBaseImage() {
+        // Act
+        Mono<String> actual = baseImageService.prebuild("other-runtime");
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+}
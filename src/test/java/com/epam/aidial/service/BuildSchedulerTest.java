@@ -0,0 +1,142 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.dto.BuildPriority;
+import com.epam.aidial.dto.QueuePositionEventDto;
+import io.kubernetes.client.custom.Quantity;
+import io.kubernetes.client.openapi.models.V1ResourceQuota;
+import io.kubernetes.client.openapi.models.V1ResourceQuotaList;
+import io.kubernetes.client.openapi.models.V1ResourceQuotaStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(properties = {
+        "app.build-namespace=test-namespace",
+        "app.max-concurrent-builds=1",
+        "app.max-concurrent-builds-from-quota=false"
+})
+@Import({BuildScheduler.class, SimpleMeterRegistry.class})
+class BuildSchedulerTest {
+    @Autowired
+    private BuildScheduler buildScheduler;
+
+    @MockitoBean
+    private KubernetesService kubernetesService;
+
+    @MockitoBean
+    private AppConfiguration appConfiguration;
+
+    @Test
+    void testBuildsAreQueuedAboveLimit() {
+        // Arrange
+        Sinks.One<String> first = Sinks.one();
+        List<OperationEvent> events = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+
+        // Act
+        buildScheduler.admit("tenant-a", BuildPriority.NORMAL, events::add, first::asMono)
+                .subscribe(results::add);
+        buildScheduler.admit("tenant-b", BuildPriority.NORMAL, events::add, () -> Mono.just("second"))
+                .subscribe(results::add);
+
+        // Assert
+        assertThat(events).isEqualTo(List.of(queued(1)));
+        assertThat(results).isEmpty();
+
+        first.tryEmitValue("first");
+        assertThat(results).isEqualTo(List.of("first", "second"));
+    }
+
+    @Test
+    void testTenantsTakeTurnsWithinPriority() {
+        // Arrange
+        Sinks.One<String> blocker = Sinks.one();
+        List<String> results = new ArrayList<>();
+        buildScheduler.admit("tenant-x", BuildPriority.NORMAL, event -> { }, blocker::asMono)
+                .subscribe(results::add);
+
+        // Act
+        buildScheduler.admit("tenant-a", BuildPriority.NORMAL, event -> { }, () -> Mono.just("a1"))
+                .subscribe(results::add);
+        buildScheduler.admit("tenant-a", BuildPriority.NORMAL, event -> { }, () -> Mono.just("a2"))
+                .subscribe(results::add);
+        buildScheduler.admit("tenant-b", BuildPriority.NORMAL, event -> { }, () -> Mono.just("b1"))
+                .subscribe(results::add);
+        buildScheduler.admit("tenant-c", BuildPriority.HIGH, event -> { }, () -> Mono.just("c1"))
+                .subscribe(results::add);
+        blocker.tryEmitValue("x");
+
+        // Assert
+        assertThat(results).isEqualTo(List.of("x", "c1", "a1", "b1", "a2"));
+    }
+
+    @Test
+    void testPositionsAreUpdatedWhenWaitingBuildIsCancelled() {
+        // Arrange
+        Sinks.One<String> blocker = Sinks.one();
+        buildScheduler.admit("tenant-x", BuildPriority.NORMAL, event -> { }, blocker::asMono)
+                .subscribe();
+        Disposable cancelled = buildScheduler.admit("tenant-a", BuildPriority.NORMAL, event -> { }, () -> Mono.just("a"))
+                .subscribe();
+        List<OperationEvent> events = new ArrayList<>();
+        buildScheduler.admit("tenant-b", BuildPriority.NORMAL, events::add, () -> Mono.just("b"))
+                .subscribe();
+
+        // Act
+        cancelled.dispose();
+
+        // Assert
+        assertThat(events).isEqualTo(List.of(queued(2), queued(1)));
+        blocker.tryEmitValue("x");
+    }
+
+    @Test
+    void testListenersAreNotifiedOutsideLock() {
+        // Arrange
+        Sinks.One<String> blocker = Sinks.one();
+        buildScheduler.admit("tenant-x", BuildPriority.NORMAL, event -> { }, blocker::asMono)
+                .subscribe();
+        List<Boolean> locked = new ArrayList<>();
+
+        // Act
+        buildScheduler.admit("tenant-a", BuildPriority.NORMAL, event -> locked.add(Thread.holdsLock(buildScheduler)), () -> Mono.just("a"))
+                .subscribe();
+
+        // Assert
+        assertThat(locked).isEqualTo(List.of(false));
+        blocker.tryEmitValue("x");
+    }
+
+    @Test
+    void testIdleBuilderPodsAreTakenOffPodQuota() {
+        // Arrange
+        V1ResourceQuotaList quotas = new V1ResourceQuotaList().items(List.of(
+                new V1ResourceQuota().status(new V1ResourceQuotaStatus().hard(Map.of("count/jobs.batch", new Quantity("20")))),
+                new V1ResourceQuota().status(new V1ResourceQuotaStatus().hard(Map.of("pods", new Quantity("15"))))));
+
+        // Act & Assert
+        assertThat(BuildScheduler.quotaLimit(quotas, 0)).isEqualTo(15);
+        assertThat(BuildScheduler.quotaLimit(quotas, 3)).isEqualTo(12);
+        assertThat(BuildScheduler.quotaLimit(new V1ResourceQuotaList().items(List.of()), 3)).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    private static OperationEvent queued(int position) {
+        return new OperationEvent(BuildScheduler.QUEUE_EVENT, new QueuePositionEventDto(position));
+    }
+}
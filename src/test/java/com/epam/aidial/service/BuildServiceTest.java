@@ -1,25 +1,53 @@
 package com.epam.aidial.service;
 
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.dto.BuildPriority;
+import com.epam.aidial.dto.CreateImageResponseDto;
+import com.epam.aidial.dto.GetImageResponseDto;
+import com.epam.aidial.dto.LogEventDto;
+import com.epam.aidial.dto.ProgressEventDto;
 import com.epam.aidial.kubernetes.KubernetesClient;
+import io.kubernetes.client.openapi.models.V1ContainerState;
+import io.kubernetes.client.openapi.models.V1ContainerStateRunning;
+import io.kubernetes.client.openapi.models.V1ContainerStateTerminated;
+import io.kubernetes.client.openapi.models.V1ContainerStatus;
 import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1JobCondition;
+import io.kubernetes.client.openapi.models.V1JobStatus;
 import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodList;
+import io.kubernetes.client.openapi.models.V1PodStatus;
 import io.kubernetes.client.openapi.models.V1Secret;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(SpringExtension.class)
@@ -28,22 +56,30 @@ import static org.mockito.Mockito.when;
         "app.docker-registry=" + BuildServiceTest.TEST_REGISTRY,
         "app.max-error-log-lines=5",
         "app.max-error-log-chars=15",
-        "app.image-build-timeout-sec=5"
+        "app.image-build-timeout-sec=5",
+        "app.max-concurrent-builds=1",
+        "app.max-concurrent-builds-from-quota=false",
+        "app.template-container.name=" + BuildServiceTest.TEST_TEMPLATE_CONTAINER,
+        "app.builder-container.name=" + BuildServiceTest.TEST_BUILDER_CONTAINER
 })
-@Import(BuildService.class)
+@Import({BuildService.class, OperationCoordinator.class, BuildScheduler.class, SimpleMeterRegistry.class})
 class BuildServiceTest {
     private static final String TEST_DIGEST = "test-digest";
     private static final String TEST_NAME = "test-name";
+    private static final String TEST_POD = "test-pod";
     private static final String TEST_IMAGE = "test-image";
     private static final String TEST_SOURCES = "test-sources";
     private static final String TEST_RUNTIME = "test-runtime";
     private static final String TEST_API_KEY = "test-api-key";
     private static final String TEST_JWT = "test-jwt";
+    private static final String TEST_CACHE_KEY = "test-cache-key";
     private static final V1Secret TEST_SECRET = new V1Secret().metadata(new V1ObjectMeta().name(TEST_NAME));
     private static final V1Job TEST_JOB = new V1Job().metadata(new V1ObjectMeta().name(TEST_NAME));
 
     static final String TEST_NAMESPACE = "test-namespace";
     static final String TEST_REGISTRY = "test-registry";
+    static final String TEST_TEMPLATE_CONTAINER = "test-template-container";
+    static final String TEST_BUILDER_CONTAINER = "test-builder-container";
 
     @Autowired
     private BuildService buildService;
@@ -57,9 +93,24 @@ class BuildServiceTest {
     @MockitoBean
     private ConfigService templateService;
 
+    @MockitoBean
+    private AppConfiguration appConfiguration;
+
     @MockitoBean
     private RegistryService registryService;
 
+    @MockitoBean
+    private BuilderPool builderPool;
+
+    @MockitoBean
+    private BaseImageService baseImageService;
+
+    @MockitoBean
+    private LayerAppendBuilder layerAppendBuilder;
+
+    @MockitoBean
+    private DialFileService dialFileService;
+
     @Captor
     private ArgumentCaptor<String> secretConfigCaptor;
 
@@ -82,15 +133,27 @@ class BuildServiceTest {
     private ArgumentCaptor<String> fullImageNameCaptor;
 
     @Captor
-    private ArgumentCaptor<String> getDigestCaptor;
+    private ArgumentCaptor<String> refreshDigestCaptor;
 
     @Captor
     private ArgumentCaptor<String> deleteManifestCaptor;
 
+    @BeforeEach
+    void setUp() {
+        when(builderPool.place(any(), any()))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(layerAppendBuilder.build(any(), any(), any()))
+                .thenReturn(Mono.empty());
+        when(dialFileService.sourcesDigest(any(), any(), any()))
+                .thenReturn(Mono.empty());
+    }
+
     @Test
     void testBuild() {
         // Arrange
         when(kubernetesService.buildClient()).thenReturn(kubernetesClient);
+        when(dialFileService.sourcesDigest(TEST_SOURCES, TEST_API_KEY, TEST_JWT))
+                .thenReturn(Mono.just(TEST_DIGEST));
         when(templateService.dialAuthSecretConfig(
                 secretConfigCaptor.capture(),
                 secretConfigCaptor.capture(),
@@ -103,7 +166,9 @@ class BuildServiceTest {
         when(templateService.buildJobConfig(
                 jobConfigCaptor.capture(),
                 jobConfigCaptor.capture(),
-                jobConfigCaptor.capture()))
+                jobConfigCaptor.capture(),
+                isNull(),
+                isNull()))
                 .thenReturn(TEST_JOB);
         when(kubernetesClient.createJob(
                 (String) createJobCaptor.capture(),
@@ -113,6 +178,10 @@ class BuildServiceTest {
         when(registryService.fullImageName(
                 fullImageNameCaptor.capture()))
                 .thenReturn(TEST_IMAGE);
+        when(registryService.refreshDigest(TEST_NAME))
+                .thenReturn(Mono.just(TEST_DIGEST));
+        when(registryService.getDigest(TEST_NAME))
+                .thenReturn(Mono.just(TEST_DIGEST));
         when(kubernetesClient.deleteSecret(
                 deleteSecretCaptor.capture(),
                 deleteSecretCaptor.capture()))
@@ -122,17 +191,29 @@ class BuildServiceTest {
                 deleteJobCaptor.capture()))
                 .thenReturn(Mono.just(Boolean.TRUE));
 
+        V1Pod pod = new V1Pod()
+                .metadata(new V1ObjectMeta().name(TEST_NAME))
+                .status(new V1PodStatus().containerStatuses(List.of(new V1ContainerStatus()
+                        .state(new V1ContainerState().running(new V1ContainerStateRunning())))));
+        when(kubernetesClient.watchJobPods(TEST_NAMESPACE, TEST_NAME))
+                .thenReturn(Flux.just(new V1Pod().metadata(new V1ObjectMeta().name(TEST_NAME)), pod));
+        List<OperationEvent> events = new ArrayList<>();
+
         BuildService.BuildParameters buildParameters =
-                new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME);
+                new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME, BuildPriority.NORMAL);
 
         // Act
-        Mono<String> actual = buildService.build(buildParameters);
+        Mono<CreateImageResponseDto> actual = buildService.build(buildParameters, false, events::add);
 
         // Assert
         StepVerifier.create(actual)
-                .expectNext(TEST_IMAGE)
+                .expectNext(new CreateImageResponseDto(TEST_IMAGE, TEST_DIGEST))
                 .verifyComplete();
 
+        assertThat(events).isEqualTo(List.of(
+                OperationEvent.progress(ProgressEventDto.Stage.SECRET_CREATED),
+                OperationEvent.progress(ProgressEventDto.Stage.JOB_CREATED),
+                OperationEvent.progress(ProgressEventDto.Stage.BUILDING)));
         assertThat(secretConfigCaptor.getAllValues())
                 .isEqualTo(List.of(TEST_NAME, TEST_API_KEY, TEST_JWT));
         assertThat(createSecretCaptor.getAllValues())
@@ -147,6 +228,235 @@ class BuildServiceTest {
                 .isEqualTo(List.of(TEST_NAMESPACE, "app-ctrl-dial-auth-test-name"));
         assertThat(deleteJobCaptor.getAllValues())
                 .isEqualTo(List.of(TEST_NAMESPACE, "app-ctrl-build-test-name"));
+        verify(registryService).refreshDigest(TEST_NAME);
+        verify(builderPool).place(TEST_JOB, TEST_RUNTIME);
+        verify(layerAppendBuilder).build(eq(buildParameters), eq(TEST_DIGEST), any());
+        verify(layerAppendBuilder).validated(TEST_DIGEST, TEST_RUNTIME);
+    }
+
+    @Test
+    void testBuildByAppendingSourcesValidatesThemInValidationJob() {
+        // Arrange
+        BuildService.BuildParameters buildParameters =
+                new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME, BuildPriority.NORMAL);
+        when(kubernetesService.buildClient()).thenReturn(kubernetesClient);
+        when(dialFileService.sourcesDigest(TEST_SOURCES, TEST_API_KEY, TEST_JWT))
+                .thenReturn(Mono.just(TEST_DIGEST));
+        when(layerAppendBuilder.build(eq(buildParameters), eq(TEST_DIGEST), any()))
+                .thenAnswer(invocation -> invocation.<Mono<Void>>getArgument(2).thenReturn(TEST_IMAGE));
+        when(templateService.dialAuthSecretConfig(TEST_NAME, TEST_API_KEY, TEST_JWT))
+                .thenReturn(TEST_SECRET);
+        when(kubernetesClient.createSecret(TEST_NAMESPACE, TEST_SECRET))
+                .thenReturn(Mono.empty());
+        when(templateService.validationJobConfig(TEST_NAME, TEST_SOURCES, TEST_RUNTIME))
+                .thenReturn(TEST_JOB);
+        when(kubernetesClient.createJob(eq(TEST_NAMESPACE), eq(TEST_JOB), anyInt()))
+                .thenReturn(Mono.empty());
+        when(kubernetesClient.watchJobPods(TEST_NAMESPACE, TEST_NAME))
+                .thenReturn(Flux.just(new V1Pod()
+                        .metadata(new V1ObjectMeta().name(TEST_NAME))
+                        .status(new V1PodStatus().containerStatuses(List.of(new V1ContainerStatus()
+                                .state(new V1ContainerState().running(new V1ContainerStateRunning())))))));
+        when(kubernetesClient.deleteSecret(TEST_NAMESPACE, "app-ctrl-dial-auth-test-name"))
+                .thenReturn(Mono.just(Boolean.TRUE));
+        when(kubernetesClient.deleteJob(TEST_NAMESPACE, "app-ctrl-build-test-name"))
+                .thenReturn(Mono.just(Boolean.TRUE));
+        when(registryService.getDigest(TEST_NAME))
+                .thenReturn(Mono.just(TEST_DIGEST));
+        List<OperationEvent> events = new ArrayList<>();
+
+        // Act
+        Mono<CreateImageResponseDto> actual = buildService.build(buildParameters, false, events::add);
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(new CreateImageResponseDto(TEST_IMAGE, TEST_DIGEST))
+                .verifyComplete();
+        assertThat(events).isEqualTo(List.of(
+                OperationEvent.progress(ProgressEventDto.Stage.SECRET_CREATED),
+                OperationEvent.progress(ProgressEventDto.Stage.VALIDATING)));
+        verify(layerAppendBuilder).validated(TEST_DIGEST, TEST_RUNTIME);
+        verify(templateService, never()).buildJobConfig(any(), any(), any(), any(), any());
+        verify(builderPool, never()).place(any(), any());
+    }
+
+    @Test
+    void testBuildByAppendingSources() {
+        // Arrange
+        BuildService.BuildParameters buildParameters =
+                new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME, BuildPriority.NORMAL);
+        when(layerAppendBuilder.build(eq(buildParameters), isNull(), any()))
+                .thenReturn(Mono.just(TEST_IMAGE));
+        when(registryService.getDigest(TEST_NAME))
+                .thenReturn(Mono.just(TEST_DIGEST));
+
+        // Act
+        Mono<CreateImageResponseDto> actual = buildService.build(buildParameters, false, event -> {
+        });
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(new CreateImageResponseDto(TEST_IMAGE, TEST_DIGEST))
+                .verifyComplete();
+        verify(kubernetesService, never()).buildClient();
+    }
+
+    @Test
+    void testBuildFollowingLogsDoesNotJoinBuildNotFollowingThem() {
+        // Arrange
+        BuildService.BuildParameters buildParameters =
+                new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME, BuildPriority.NORMAL);
+        Sinks.One<String> running = Sinks.one();
+        when(layerAppendBuilder.build(eq(buildParameters), isNull(), any()))
+                .thenReturn(running.asMono())
+                .thenReturn(Mono.just(TEST_IMAGE));
+        when(registryService.getDigest(TEST_NAME))
+                .thenReturn(Mono.just(TEST_DIGEST));
+        List<CreateImageResponseDto> results = new ArrayList<>();
+        buildService.build(buildParameters, false, event -> {
+        }).subscribe(results::add);
+
+        // Act
+        buildService.build(buildParameters, true, event -> {
+        }).subscribe(results::add);
+        running.tryEmitValue(TEST_IMAGE);
+
+        // Assert
+        assertThat(results).hasSize(2);
+        verify(layerAppendBuilder, times(2)).build(eq(buildParameters), isNull(), any());
+    }
+
+    @Test
+    void testBuildWithLogs() {
+        // Arrange
+        when(kubernetesService.buildClient()).thenReturn(kubernetesClient);
+        when(templateService.dialAuthSecretConfig(TEST_NAME, TEST_API_KEY, TEST_JWT))
+                .thenReturn(TEST_SECRET);
+        when(kubernetesClient.createSecret(TEST_NAMESPACE, TEST_SECRET))
+                .thenReturn(Mono.empty());
+        when(templateService.buildJobConfig(TEST_NAME, TEST_SOURCES, TEST_RUNTIME, null, null))
+                .thenReturn(TEST_JOB);
+        Sinks.Empty<Void> job = Sinks.empty();
+        when(kubernetesClient.createJob(eq(TEST_NAMESPACE), eq(TEST_JOB), anyInt()))
+                .thenReturn(job.asMono());
+        when(registryService.fullImageName(TEST_NAME))
+                .thenReturn(TEST_IMAGE);
+        when(registryService.refreshDigest(TEST_NAME))
+                .thenReturn(Mono.just(TEST_DIGEST));
+        when(registryService.getDigest(TEST_NAME))
+                .thenReturn(Mono.just(TEST_DIGEST));
+        when(kubernetesClient.deleteSecret(any(), any()))
+                .thenReturn(Mono.just(Boolean.TRUE));
+        when(kubernetesClient.deleteJob(any(), any()))
+                .thenReturn(Mono.just(Boolean.TRUE));
+        V1Pod pod = new V1Pod()
+                .metadata(new V1ObjectMeta().name(TEST_POD))
+                .status(new V1PodStatus()
+                        .initContainerStatuses(List.of(new V1ContainerStatus()
+                                .name(TEST_TEMPLATE_CONTAINER)
+                                .state(new V1ContainerState().terminated(new V1ContainerStateTerminated().exitCode(0)))))
+                        .containerStatuses(List.of(new V1ContainerStatus()
+                                .name(TEST_BUILDER_CONTAINER)
+                                .state(new V1ContainerState().running(new V1ContainerStateRunning())))));
+        when(kubernetesClient.watchJobPods(TEST_NAMESPACE, TEST_NAME))
+                .thenReturn(Flux.never());
+        when(kubernetesClient.getCachedJobPods(TEST_NAMESPACE, TEST_NAME))
+                .thenReturn(Mono.just(List.of(pod)));
+        when(kubernetesClient.streamContainerLog(TEST_NAMESPACE, TEST_POD, TEST_TEMPLATE_CONTAINER, true))
+                .thenReturn(Flux.just("validated\n"));
+        when(kubernetesClient.streamContainerLog(TEST_NAMESPACE, TEST_POD, TEST_BUILDER_CONTAINER, true))
+                .thenReturn(Flux.just("built\r\n", "pushed"));
+        List<OperationEvent> events = new ArrayList<>();
+
+        BuildService.BuildParameters buildParameters =
+                new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME, BuildPriority.NORMAL);
+
+        // Act
+        Mono<CreateImageResponseDto> actual = buildService.build(buildParameters, true, events::add);
+
+        // Assert
+        StepVerifier.create(actual)
+                .then(job::tryEmitEmpty)
+                .expectNext(new CreateImageResponseDto(TEST_IMAGE, TEST_DIGEST))
+                .verifyComplete();
+
+        assertThat(events).isEqualTo(List.of(
+                OperationEvent.progress(ProgressEventDto.Stage.SECRET_CREATED),
+                OperationEvent.log(new LogEventDto(TEST_TEMPLATE_CONTAINER, "validated")),
+                OperationEvent.log(new LogEventDto(TEST_BUILDER_CONTAINER, "built")),
+                OperationEvent.log(new LogEventDto(TEST_BUILDER_CONTAINER, "pushed"))));
+    }
+
+    @Test
+    void testBuildValidationError() {
+        // Arrange
+        when(kubernetesService.buildClient()).thenReturn(kubernetesClient);
+        when(templateService.dialAuthSecretConfig(TEST_NAME, TEST_API_KEY, TEST_JWT))
+                .thenReturn(TEST_SECRET);
+        when(kubernetesClient.createSecret(TEST_NAMESPACE, TEST_SECRET))
+                .thenReturn(Mono.empty());
+        when(templateService.buildJobConfig(TEST_NAME, TEST_SOURCES, TEST_RUNTIME, null, null))
+                .thenReturn(TEST_JOB);
+        when(kubernetesClient.createJob(eq(TEST_NAMESPACE), eq(TEST_JOB), anyInt()))
+                .thenReturn(Mono.error(new IllegalStateException("Job has failed")));
+        when(registryService.fullImageName(TEST_NAME))
+                .thenReturn(TEST_IMAGE);
+        when(kubernetesClient.deleteSecret(any(), any()))
+                .thenReturn(Mono.just(Boolean.TRUE));
+        when(kubernetesClient.deleteJob(any(), any()))
+                .thenReturn(Mono.just(Boolean.TRUE));
+        when(kubernetesClient.watchJobPods(TEST_NAMESPACE, TEST_NAME))
+                .thenReturn(Flux.never());
+        V1Pod pod = new V1Pod()
+                .metadata(new V1ObjectMeta().name(TEST_POD))
+                .status(new V1PodStatus()
+                        .phase("Failed")
+                        .initContainerStatuses(List.of(new V1ContainerStatus()
+                                .name(TEST_TEMPLATE_CONTAINER)
+                                .state(new V1ContainerState().terminated(new V1ContainerStateTerminated().exitCode(1))))));
+        when(kubernetesClient.getJobPods(TEST_NAMESPACE, "app-ctrl-build-test-name"))
+                .thenReturn(Mono.just(new V1PodList().items(List.of(pod))));
+        when(kubernetesClient.streamContainerLog(TEST_NAMESPACE, TEST_POD, TEST_TEMPLATE_CONTAINER, false))
+                .thenReturn(Flux.just("Collecting packages\nAppValidation", "Exception: Bad package\n"));
+
+        BuildService.BuildParameters buildParameters =
+                new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME, BuildPriority.NORMAL);
+
+        // Act
+        Mono<CreateImageResponseDto> actual = buildService.build(buildParameters, false, event -> { });
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectErrorMessage("Validation error: Bad package")
+                .verify();
+    }
+
+    @Test
+    void testBuildFromCache() {
+        // Arrange
+        when(dialFileService.sourcesDigest(TEST_SOURCES, TEST_API_KEY, TEST_JWT))
+                .thenReturn(Mono.just(TEST_DIGEST));
+        when(templateService.buildCacheKey(TEST_DIGEST, TEST_RUNTIME, null))
+                .thenReturn(TEST_CACHE_KEY);
+        when(registryService.restoreFromCache(TEST_CACHE_KEY, TEST_NAME))
+                .thenReturn(Mono.just(true));
+        when(registryService.fullImageName(TEST_NAME))
+                .thenReturn(TEST_IMAGE);
+        when(registryService.getDigest(TEST_NAME))
+                .thenReturn(Mono.just(TEST_DIGEST));
+
+        BuildService.BuildParameters buildParameters =
+                new BuildService.BuildParameters(TEST_NAME, TEST_SOURCES, TEST_API_KEY, TEST_JWT, TEST_RUNTIME, BuildPriority.NORMAL);
+
+        // Act
+        Mono<CreateImageResponseDto> actual = buildService.build(buildParameters, false, event -> { });
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(new CreateImageResponseDto(TEST_IMAGE, TEST_DIGEST))
+                .verifyComplete();
+
+        verify(kubernetesClient, never()).createJob(any(), any(), anyInt());
     }
 
     @Test
@@ -161,8 +471,8 @@ class BuildServiceTest {
                 deleteSecretCaptor.capture(),
                 deleteSecretCaptor.capture()))
                 .thenReturn(Mono.just(Boolean.TRUE));
-        when(registryService.getDigest(
-                getDigestCaptor.capture()))
+        when(registryService.refreshDigest(
+                refreshDigestCaptor.capture()))
                 .thenReturn(Mono.just(TEST_DIGEST));
         when(registryService.deleteManifest(
                 deleteManifestCaptor.capture(),
@@ -181,7 +491,7 @@ class BuildServiceTest {
                 .isEqualTo(List.of(TEST_NAMESPACE, "app-ctrl-build-test-name"));
         assertThat(deleteSecretCaptor.getAllValues())
                 .isEqualTo(List.of(TEST_NAMESPACE, "app-ctrl-dial-auth-test-name"));
-        assertThat(getDigestCaptor.getValue())
+        assertThat(refreshDigestCaptor.getValue())
                 .isEqualTo(TEST_NAME);
         assertThat(deleteManifestCaptor.getAllValues())
                 .isEqualTo(List.of(TEST_NAME, TEST_DIGEST));
@@ -199,8 +509,8 @@ class BuildServiceTest {
                 deleteSecretCaptor.capture(),
                 deleteSecretCaptor.capture()))
                 .thenReturn(Mono.just(Boolean.FALSE));
-        when(registryService.getDigest(
-                getDigestCaptor.capture()))
+        when(registryService.refreshDigest(
+                refreshDigestCaptor.capture()))
                 .thenReturn(Mono.empty());
 
         // Act
@@ -215,7 +525,69 @@ class BuildServiceTest {
                 .isEqualTo(List.of(TEST_NAMESPACE, "app-ctrl-build-test-name"));
         assertThat(deleteSecretCaptor.getAllValues())
                 .isEqualTo(List.of(TEST_NAMESPACE, "app-ctrl-dial-auth-test-name"));
-        assertThat(getDigestCaptor.getValue())
+        assertThat(refreshDigestCaptor.getValue())
                 .isEqualTo(TEST_NAME);
     }
+
+    @Test
+    void testStatusFailed() {
+        // Arrange
+        when(kubernetesService.buildClient()).thenReturn(kubernetesClient);
+        V1Job job = new V1Job()
+                .metadata(new V1ObjectMeta().name("app-ctrl-build-test-name"))
+                .status(new V1JobStatus()
+                        .addConditionsItem(new V1JobCondition()
+                                .type("Failed")
+                                .status("True")
+                                .message("test-message")));
+        when(kubernetesClient.getCachedJob(TEST_NAMESPACE, "app-ctrl-build-test-name"))
+                .thenReturn(Mono.just(job));
+
+        // Act
+        Mono<GetImageResponseDto> actual = buildService.status(TEST_NAME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(new GetImageResponseDto(TEST_NAME, GetImageResponseDto.Status.FAILED, null, "test-message"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testStatusReadyWithoutJob() {
+        // Arrange
+        when(kubernetesService.buildClient()).thenReturn(kubernetesClient);
+        when(kubernetesClient.getCachedJob(TEST_NAMESPACE, "app-ctrl-build-test-name"))
+                .thenReturn(Mono.empty());
+        when(registryService.getDigest(TEST_NAME))
+                .thenReturn(Mono.just(TEST_DIGEST));
+        when(registryService.fullImageName(TEST_NAME))
+                .thenReturn(TEST_IMAGE);
+
+        // Act
+        Mono<GetImageResponseDto> actual = buildService.status(TEST_NAME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(new GetImageResponseDto(TEST_NAME, GetImageResponseDto.Status.READY, TEST_IMAGE, null))
+                .verifyComplete();
+    }
+
+    @Test
+    void testStatusNotFound() {
+        // Arrange
+        when(kubernetesService.buildClient()).thenReturn(kubernetesClient);
+        when(kubernetesClient.getCachedJob(TEST_NAMESPACE, "app-ctrl-build-test-name"))
+                .thenReturn(Mono.empty());
+        when(registryService.getDigest(TEST_NAME))
+                .thenReturn(Mono.empty());
+
+        // Act
+        Mono<GetImageResponseDto> actual = buildService.status(TEST_NAME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectErrorMatches(e -> e instanceof ResponseStatusException exception
+                        && exception.getStatusCode() == HttpStatus.NOT_FOUND)
+                .verify();
+    }
 }
\ No newline at end of file
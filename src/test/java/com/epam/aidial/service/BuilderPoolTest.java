@@ -0,0 +1,161 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.AppConfiguration;
+import com.epam.aidial.kubernetes.KubernetesClient;
+import io.kubernetes.client.openapi.models.V1Container;
+import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1JobSpec;
+import io.kubernetes.client.openapi.models.V1NodeSelectorRequirement;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodList;
+import io.kubernetes.client.openapi.models.V1PodSpec;
+import io.kubernetes.client.openapi.models.V1PodStatus;
+import io.kubernetes.client.openapi.models.V1PodTemplateSpec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(properties = {
+        "app.build-namespace=" + BuilderPoolTest.TEST_NAMESPACE,
+        "app.builder-pool-idle-ttl-sec=3600"
+})
+@Import({BuilderPool.class, SimpleMeterRegistry.class})
+class BuilderPoolTest {
+    private static final String TEST_RUNTIME = "test-runtime";
+    private static final String TEST_NODE = "test-node";
+
+    static final String TEST_NAMESPACE = "test-namespace";
+
+    @Autowired
+    private BuilderPool builderPool;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockitoBean
+    private KubernetesService kubernetesService;
+
+    @MockitoBean
+    private KubernetesClient kubernetesClient;
+
+    @MockitoBean
+    private AppConfiguration appConfiguration;
+
+    @MockitoBean
+    private ConfigService configService;
+
+    @Captor
+    private ArgumentCaptor<V1Pod> createPodCaptor;
+
+    @BeforeEach
+    void setUp() {
+        AppConfiguration.RuntimeConfiguration runtimeConfig = new AppConfiguration.RuntimeConfiguration();
+        runtimeConfig.setBuilderPoolSize(2);
+        when(appConfiguration.getRuntimes()).thenReturn(Map.of(TEST_RUNTIME, runtimeConfig));
+        when(kubernetesService.buildClient()).thenReturn(kubernetesClient);
+    }
+
+    @Test
+    void testPlaceClaimsIdlePod() {
+        // Arrange
+        when(kubernetesClient.getCachedBuilderPoolPods(TEST_NAMESPACE, TEST_RUNTIME))
+                .thenReturn(Mono.just(List.of(pod("pending", "Pending"), pod("running", "Running"))));
+        when(kubernetesClient.deletePod(TEST_NAMESPACE, "running"))
+                .thenReturn(Mono.just(true));
+
+        // Act
+        Mono<V1Job> actual = builderPool.place(job(), TEST_RUNTIME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .assertNext(job -> assertThat(job.getSpec().getTemplate().getSpec().getAffinity().getNodeAffinity()
+                        .getPreferredDuringSchedulingIgnoredDuringExecution().get(0).getPreference().getMatchFields())
+                        .isEqualTo(List.of(new V1NodeSelectorRequirement()
+                                .key("metadata.name")
+                                .operator("In")
+                                .values(List.of(TEST_NODE)))))
+                .verifyComplete();
+        assertThat(meterRegistry.counter("app.build.pool.claims", "runtime", TEST_RUNTIME, "result", "hit").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void testPlaceWithoutIdlePod() {
+        // Arrange
+        when(kubernetesClient.getCachedBuilderPoolPods(TEST_NAMESPACE, TEST_RUNTIME))
+                .thenReturn(Mono.just(List.of(pod("pending", "Pending"))));
+
+        // Act
+        Mono<V1Job> actual = builderPool.place(job(), TEST_RUNTIME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .assertNext(job -> assertThat(job.getSpec().getTemplate().getSpec().getAffinity()).isNull())
+                .verifyComplete();
+        assertThat(meterRegistry.counter("app.build.pool.claims", "runtime", TEST_RUNTIME, "result", "miss").count())
+                .isEqualTo(1);
+        verify(kubernetesClient, never()).deletePod(anyString(), anyString());
+    }
+
+    @Test
+    void testReplenishReplacesStalePods() {
+        // Arrange
+        V1Pod expired = pod("expired", "Running");
+        expired.getMetadata().setCreationTimestamp(OffsetDateTime.now().minusHours(2));
+        when(kubernetesClient.getBuilderPoolPods(TEST_NAMESPACE, TEST_RUNTIME))
+                .thenReturn(Mono.just(new V1PodList().items(List.of(pod("idle", "Running"), expired, pod("failed", "Failed")))));
+        when(kubernetesClient.deletePod(any(), any()))
+                .thenReturn(Mono.just(true));
+        when(kubernetesClient.createPod(eq(TEST_NAMESPACE), createPodCaptor.capture()))
+                .thenReturn(Mono.just("created"));
+        V1Pod builderPod = new V1Pod().metadata(new V1ObjectMeta().generateName("app-ctrl-builder-pool-test-runtime-"));
+        when(configService.builderPoolPodConfig(TEST_RUNTIME))
+                .thenReturn(builderPod);
+
+        // Act
+        Mono<Void> actual = builderPool.replenish(TEST_RUNTIME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .verifyComplete();
+        verify(kubernetesClient).deletePod(TEST_NAMESPACE, "expired");
+        verify(kubernetesClient).deletePod(TEST_NAMESPACE, "failed");
+        assertThat(createPodCaptor.getAllValues()).isEqualTo(List.of(builderPod));
+    }
+
+    private static V1Pod pod(String name, String phase) {
+        return new V1Pod()
+                .metadata(new V1ObjectMeta().name(name).creationTimestamp(OffsetDateTime.now()))
+                .spec(new V1PodSpec().nodeName(TEST_NODE))
+                .status(new V1PodStatus().phase(phase));
+    }
+
+    private static V1Job job() {
+        return new V1Job().spec(new V1JobSpec().template(new V1PodTemplateSpec().spec(new V1PodSpec())));
+    }
+}
@@ -3,6 +3,9 @@ package com.epam.aidial.service;
 import com.epam.aidial.kubernetes.knative.V1Service;
 import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.models.V1Job;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1OwnerReference;
+import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1Secret;
 import io.kubernetes.client.util.Yaml;
 import org.apache.commons.io.IOUtils;
@@ -29,9 +32,15 @@ class ConfigServiceTest {
     @MockitoBean
     private ApiClient buildKubeClient;
 
+    @MockitoBean
+    private ApiClient buildKubeWatchClient;
+
     @MockitoBean
     private ApiClient deployKubeClient;
 
+    @MockitoBean
+    private ApiClient deployKubeWatchClient;
+
     @Test
     void testDialAuthSecretConfig() throws IOException {
         // Arrange
@@ -50,7 +59,110 @@ class ConfigServiceTest {
         V1Job expected = readExpected("build-job", V1Job.class);
 
         // Act
-        V1Job actual = configService.buildJobConfig(TEST_NAME, "test-sources", "python3.11");
+        V1Job actual = configService.buildJobConfig(TEST_NAME, "test-sources", "python3.11", null, null);
+
+        // Assert
+        assertThat(Yaml.dump(actual)).isEqualTo(Yaml.dump(expected));
+    }
+
+    @Test
+    void testBuildJobConfigWithCache() throws IOException {
+        // Arrange
+        V1Job expected = readExpected("build-job-cache", V1Job.class);
+
+        // Act
+        V1Job actual = configService.buildJobConfig(TEST_NAME, "test-sources", "python3.12", null, null);
+
+        // Assert
+        assertThat(Yaml.dump(actual)).isEqualTo(Yaml.dump(expected));
+    }
+
+    @Test
+    void testBuildJobConfigWithBuildKit() throws IOException {
+        // Arrange
+        V1Job expected = readExpected("build-job-buildkit", V1Job.class);
+
+        // Act
+        V1Job actual = configService.buildJobConfig(TEST_NAME, "test-sources", "python3.10", null, null);
+
+        // Assert
+        assertThat(Yaml.dump(actual)).isEqualTo(Yaml.dump(expected));
+    }
+
+    @Test
+    void testValidationJobConfig() throws IOException {
+        // Arrange
+        V1Job expected = readExpected("validation-job", V1Job.class);
+
+        // Act
+        V1Job actual = configService.validationJobConfig(TEST_NAME, "test-sources", "python3.11");
+
+        // Assert
+        assertThat(Yaml.dump(actual)).isEqualTo(Yaml.dump(expected));
+    }
+
+    @Test
+    void testBuilderPoolPodConfig() throws IOException {
+        // Arrange
+        V1Pod expected = readExpected("builder-pool-pod", V1Pod.class);
+
+        // Act
+        V1Pod actual = configService.builderPoolPodConfig("python3.11");
+
+        // Assert
+        assertThat(Yaml.dump(actual)).isEqualTo(Yaml.dump(expected));
+    }
+
+    @Test
+    void testBuildCacheKeyDependsOnBaseImage() {
+        assertThat(configService.buildCacheKey("test-digest", "python3.11", null))
+                .isNotNull()
+                .isEqualTo(configService.buildCacheKey("test-digest", "python3.11", null))
+                .isNotEqualTo(configService.buildCacheKey("test-digest", "python3.11", "test-docker-registry/app-base-image@sha256:test"));
+    }
+
+    @Test
+    void testBaseImageJobConfig() throws IOException {
+        // Arrange
+        V1Job expected = readExpected("base-image-job", V1Job.class);
+
+        // Act
+        V1Job actual = configService.baseImageJobConfig(
+                "python3.11", "test-docker-registry/app-base-image:test-tag", "app-ctrl-base-image-python3.11-test");
+
+        // Assert
+        assertThat(Yaml.dump(actual)).isEqualTo(Yaml.dump(expected));
+    }
+
+    @Test
+    void testBaseImageSecretConfig() {
+        // Arrange
+        V1Job job = new V1Job()
+                .apiVersion("batch/v1")
+                .kind("Job")
+                .metadata(new V1ObjectMeta().name("app-ctrl-base-image-python3.11").uid("test-uid"));
+
+        // Act
+        V1Secret actual = configService.baseImageSecretConfig("python3.11", "app-ctrl-base-image-python3.11-test", job);
+
+        // Assert
+        assertThat(actual.getMetadata().getName()).isEqualTo("app-ctrl-base-image-python3.11-test");
+        assertThat(actual.getMetadata().getOwnerReferences())
+                .containsExactly(new V1OwnerReference().apiVersion("batch/v1").kind("Job").name("app-ctrl-base-image-python3.11").uid("test-uid"));
+        assertThat(actual.getStringData().get("Dockerfile"))
+                .startsWith("FROM python:3.11-slim\nARG PIP_NO_CACHE_DIR=1\nRUN pip install \\\n    aidial-sdk \\\n    anthropic \\\n")
+                .endsWith("    uvicorn\n");
+        assertThat(configService.baseImageTag("python3.11")).matches("python3\\.11-[0-9a-f]{16}");
+    }
+
+    @Test
+    void testBuildJobConfigDoesNotChangeTemplates() throws IOException {
+        // Arrange
+        V1Job expected = readExpected("build-job", V1Job.class);
+        configService.buildJobConfig("other-name", "other-sources", "python3.8", null, null);
+
+        // Act
+        V1Job actual = configService.buildJobConfig(TEST_NAME, "test-sources", "python3.11", null, null);
 
         // Assert
         assertThat(Yaml.dump(actual)).isEqualTo(Yaml.dump(expected));
@@ -68,6 +180,7 @@ class ConfigServiceTest {
                 null,
                 null,
                 null,
+                null,
                 null);
 
         // Assert
@@ -84,6 +197,7 @@ class ConfigServiceTest {
                 TEST_NAME,
                 Map.of("test-env-name", "test-env-value"),
                 "image-name",
+                null,
                 1,
                 2,
                 3);
@@ -92,6 +206,25 @@ class ConfigServiceTest {
         assertThat(Yaml.dump(actual)).isEqualTo(Yaml.dump(expected));
     }
 
+    @Test
+    void testAppServiceConfigPinnedByDigest() throws IOException {
+        // Arrange
+        V1Service expected = readExpected("app-service-pinned", V1Service.class);
+
+        // Act
+        V1Service actual = configService.appServiceConfig(
+                TEST_NAME,
+                Map.of(),
+                null,
+                "sha256:test-digest",
+                null,
+                null,
+                null);
+
+        // Assert
+        assertThat(Yaml.dump(actual)).isEqualTo(Yaml.dump(expected));
+    }
+
     private static <T> T readExpected(String name, Class<T> clazz) throws IOException {
         return Yaml.loadAs(
                 IOUtils.resourceToString("/expected-configs/" + name + ".yaml", StandardCharsets.UTF_8),
@@ -1,44 +1,70 @@
 package com.epam.aidial.service;
 
+import com.epam.aidial.dto.GetApplicationLogsResponseDto;
+import com.epam.aidial.dto.GetDeploymentResponseDto;
+import com.epam.aidial.dto.ProgressEventDto;
 import com.epam.aidial.kubernetes.KubernetesClient;
+import com.epam.aidial.kubernetes.knative.V1Condition;
 import com.epam.aidial.kubernetes.knative.V1Service;
+import com.epam.aidial.kubernetes.knative.V1ServiceStatus;
+import com.epam.aidial.util.LogUtils;
+import io.kubernetes.client.openapi.models.V1ContainerState;
+import io.kubernetes.client.openapi.models.V1ContainerStateRunning;
+import io.kubernetes.client.openapi.models.V1ContainerStatus;
 import io.kubernetes.client.openapi.models.V1ObjectMeta;
 import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1PodList;
+import io.kubernetes.client.openapi.models.V1PodStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(SpringExtension.class)
 @TestPropertySource(properties = {
         "app.deploy-namespace=" + DeployServiceTest.TEST_NAMESPACE,
-        "app.service-setup-timeout-sec=5"
+        "app.service-setup-timeout-sec=5",
+        "app.service-container.name=" + DeployServiceTest.TEST_CONTAINER,
+        "app.max-concurrent-log-requests=2"
 })
-@Import(DeployService.class)
+@Import({DeployService.class, OperationCoordinator.class, SimpleMeterRegistry.class})
 class DeployServiceTest {
     private static final Map<String, String> TEST_ENV = Map.of("test-env-name", "test-env-value");
     private static final String TEST_NAME = "test-name";
     private static final String TEST_URL = "url";
+    private static final String TEST_DIGEST = "sha256:test-digest";
     private static final String TEST_SERVICE_VERSION = "test-service-version";
     private static final String TEST_APP = "app-ctrl-app-test-name";
     private static final String TEST_POD = "test-pod";
 
     static final String TEST_NAMESPACE = "test-namespace";
+    static final String TEST_CONTAINER = "test-container";
 
     @Autowired
     private DeployService deployService;
@@ -52,6 +78,9 @@ class DeployServiceTest {
     @MockitoBean
     private ConfigService templateService;
 
+    @MockitoBean
+    private RegistryService registryService;
+
     @Captor
     private ArgumentCaptor<Object> appServiceConfigCaptor;
 
@@ -67,6 +96,9 @@ class DeployServiceTest {
     @Captor
     private ArgumentCaptor<String> deletePodCaptor;
 
+    @Captor
+    private ArgumentCaptor<KubernetesClient.LogQuery> logQueryCaptor;
+
     @Test
     @SuppressWarnings("unchecked")
     void testDeploy() {
@@ -78,6 +110,7 @@ class DeployServiceTest {
                 (String) appServiceConfigCaptor.capture(),
                 (Map<String, String>) appServiceConfigCaptor.capture(),
                 (String) appServiceConfigCaptor.capture(),
+                (String) appServiceConfigCaptor.capture(),
                 (Integer) appServiceConfigCaptor.capture(),
                 (Integer) appServiceConfigCaptor.capture(),
                 (Integer) appServiceConfigCaptor.capture()))
@@ -87,19 +120,70 @@ class DeployServiceTest {
                 (V1Service) createServiceCaptor.capture(),
                 anyInt()))
                 .thenReturn(Mono.just(TEST_URL));
+        when(kubernetesService.getKnativeServiceVersion()).thenReturn(TEST_SERVICE_VERSION);
+        V1Condition condition = new V1Condition();
+        condition.setType("ConfigurationsReady");
+        condition.setStatus("True");
+        V1ServiceStatus status = new V1ServiceStatus();
+        status.setConditions(new V1Condition[] {condition});
+        V1Service updatedService = new V1Service();
+        updatedService.setMetadata(new V1ObjectMeta().name(TEST_NAME));
+        updatedService.setStatus(status);
+        when(kubernetesClient.watchKnativeService(TEST_NAMESPACE, TEST_NAME, TEST_SERVICE_VERSION))
+                .thenReturn(Flux.just(testService, updatedService, updatedService));
+        List<OperationEvent> events = new ArrayList<>();
 
         // Act
-        Mono<String> actual = deployService.deploy(TEST_NAME, TEST_ENV, "image-name", 1, 2, 3);
+        Mono<String> actual = deployService.deploy(TEST_NAME, TEST_ENV, "image-name", 1, 2, 3, events::add);
 
         // Assert
         StepVerifier.create(actual)
                 .expectNext(TEST_URL)
                 .verifyComplete();
 
+        assertThat(events).isEqualTo(List.of(
+                OperationEvent.progress(ProgressEventDto.Stage.SERVICE_CREATED),
+                OperationEvent.progress(ProgressEventDto.Stage.REVISION_READY)));
+
         assertThat(appServiceConfigCaptor.getAllValues())
-                .isEqualTo(List.of(TEST_NAME, TEST_ENV, "image-name", 1, 2, 3));
+                .isEqualTo(Arrays.asList(TEST_NAME, TEST_ENV, "image-name", null, 1, 2, 3));
         assertThat(createServiceCaptor.getAllValues())
                 .isEqualTo(List.of(TEST_NAMESPACE, testService));
+        verify(registryService, never()).refreshDigest(any());
+    }
+
+    @Test
+    void testDeployPinnedByDigest() {
+        // Arrange
+        V1Service testService = new V1Service();
+        testService.setMetadata(new V1ObjectMeta().name(TEST_NAME));
+        when(kubernetesService.deployClient()).thenReturn(kubernetesClient);
+        when(registryService.refreshDigest(TEST_NAME)).thenReturn(Mono.just(TEST_DIGEST));
+        when(templateService.appServiceConfig(TEST_NAME, TEST_ENV, null, TEST_DIGEST, null, null, null))
+                .thenReturn(testService);
+        when(kubernetesClient.createKnativeService(eq(TEST_NAMESPACE), eq(testService), anyInt()))
+                .thenReturn(Mono.just(TEST_URL));
+        when(kubernetesService.getKnativeServiceVersion()).thenReturn(TEST_SERVICE_VERSION);
+        V1Condition condition = new V1Condition();
+        condition.setType("ConfigurationsReady");
+        condition.setStatus("True");
+        V1ServiceStatus status = new V1ServiceStatus();
+        status.setConditions(new V1Condition[] {condition});
+        V1Service updatedService = new V1Service();
+        updatedService.setMetadata(new V1ObjectMeta().name(TEST_NAME));
+        updatedService.setStatus(status);
+        when(kubernetesClient.watchKnativeService(TEST_NAMESPACE, TEST_NAME, TEST_SERVICE_VERSION))
+                .thenReturn(Flux.just(testService, updatedService));
+
+        // Act
+        Mono<String> actual = deployService.deploy(TEST_NAME, TEST_ENV, null, null, null, null, event -> {
+        });
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(TEST_URL)
+                .verifyComplete();
+        verify(templateService).appServiceConfig(TEST_NAME, TEST_ENV, null, TEST_DIGEST, null, null, null);
     }
 
     @Test
@@ -169,4 +253,130 @@ class DeployServiceTest {
         assertThat(getServicePodsCaptor.getAllValues())
                 .isEqualTo(List.of(TEST_NAMESPACE, TEST_APP));
     }
+
+    @Test
+    void testFollowLogs() {
+        // Arrange
+        when(kubernetesService.deployClient()).thenReturn(kubernetesClient);
+        V1Pod pendingPod = new V1Pod()
+                .metadata(new V1ObjectMeta().name("pending-pod"))
+                .status(new V1PodStatus());
+        V1Pod runningPod = new V1Pod()
+                .metadata(new V1ObjectMeta().name(TEST_POD))
+                .status(new V1PodStatus().containerStatuses(List.of(new V1ContainerStatus()
+                        .name(TEST_CONTAINER)
+                        .state(new V1ContainerState().running(new V1ContainerStateRunning())))));
+        when(kubernetesClient.getCachedKnativeServicePods(TEST_NAMESPACE, TEST_APP))
+                .thenReturn(Mono.just(List.of(pendingPod, runningPod)));
+        when(kubernetesClient.watchKnativeServicePods(TEST_NAMESPACE, TEST_APP))
+                .thenReturn(Flux.just(runningPod));
+        when(kubernetesClient.followContainerLogBytes(TEST_NAMESPACE, TEST_POD, TEST_CONTAINER, 10))
+                .thenReturn(Flux.just("started\n".getBytes(StandardCharsets.UTF_8)));
+
+        // Act
+        Flux<String> actual = deployService.followLogs(TEST_NAME, 10)
+                .map(line -> new String(line, StandardCharsets.UTF_8));
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext("{\"instance\":\"test-pod\",\"content\":\"started\"}\n")
+                .verifyComplete();
+    }
+
+    @Test
+    void testLogs() {
+        // Arrange
+        when(kubernetesService.deployClient()).thenReturn(kubernetesClient);
+        V1Pod pod = new V1Pod()
+                .metadata(new V1ObjectMeta().name(TEST_POD))
+                .status(new V1PodStatus().containerStatuses(List.of(new V1ContainerStatus()
+                        .name(TEST_CONTAINER)
+                        .state(new V1ContainerState().running(new V1ContainerStateRunning())))));
+        when(kubernetesClient.getKnativeServicePods(TEST_NAMESPACE, TEST_APP))
+                .thenReturn(Mono.just(new V1PodList().addItemsItem(pod)));
+        Instant cursor = Instant.now().minusSeconds(60);
+        Instant next = cursor.plusSeconds(1);
+        when(kubernetesClient.streamContainerLog(eq(TEST_NAMESPACE), eq(TEST_POD), eq(TEST_CONTAINER), logQueryCaptor.capture()))
+                .thenReturn(Flux.just(cursor + " old line longer than the limit\n", next + " new\n", next.plusSeconds(1) + " newer\n"));
+
+        // Act
+        Flux<GetApplicationLogsResponseDto.LogEntry> actual = deployService.logs(
+                TEST_NAME, 100, 8, null, List.of(LogUtils.encodeCursor(TEST_POD, cursor)));
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(new GetApplicationLogsResponseDto.LogEntry(TEST_POD, "new\n", LogUtils.encodeCursor(TEST_POD, next)))
+                .verifyComplete();
+
+        KubernetesClient.LogQuery query = logQueryCaptor.getValue();
+        assertThat(query.tailLines()).isEqualTo(100);
+        // The limit applies to the lines after the cursor only
+        assertThat(query.limitBytes()).isNull();
+        assertThat(query.sinceSeconds()).isBetween(60, 70);
+        assertThat(query.timestamps()).isTrue();
+    }
+
+    @Test
+    void testLogsInvalidCursor() {
+        // Arrange
+        when(kubernetesService.deployClient()).thenReturn(kubernetesClient);
+
+        // Act
+        Flux<GetApplicationLogsResponseDto.LogEntry> actual = deployService.logs(TEST_NAME, null, null, null, List.of("invalid"));
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectErrorMatches(e -> e instanceof ResponseStatusException exception
+                        && exception.getStatusCode() == HttpStatus.BAD_REQUEST)
+                .verify();
+    }
+
+    @Test
+    void testStatus() {
+        // Arrange
+        when(kubernetesService.deployClient()).thenReturn(kubernetesClient);
+        when(kubernetesService.getKnativeServiceVersion()).thenReturn(TEST_SERVICE_VERSION);
+        V1Condition condition = new V1Condition();
+        condition.setType("Ready");
+        condition.setStatus("True");
+        V1ServiceStatus status = new V1ServiceStatus();
+        status.setUrl(TEST_URL);
+        status.setConditions(new V1Condition[] {condition});
+        V1Service service = new V1Service();
+        service.setMetadata(new V1ObjectMeta().name(TEST_APP));
+        service.setStatus(status);
+        when(kubernetesClient.getCachedKnativeService(TEST_NAMESPACE, TEST_APP, TEST_SERVICE_VERSION))
+                .thenReturn(Mono.just(service));
+        V1Pod pod = new V1Pod()
+                .metadata(new V1ObjectMeta().name(TEST_POD))
+                .status(new V1PodStatus().phase("Running"));
+        when(kubernetesClient.getCachedKnativeServicePods(TEST_NAMESPACE, TEST_APP))
+                .thenReturn(Mono.just(List.of(pod)));
+
+        // Act
+        Mono<GetDeploymentResponseDto> actual = deployService.status(TEST_NAME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext(new GetDeploymentResponseDto(TEST_NAME, GetDeploymentResponseDto.Status.READY, TEST_URL, null, 1))
+                .verifyComplete();
+    }
+
+    @Test
+    void testStatusNotFound() {
+        // Arrange
+        when(kubernetesService.deployClient()).thenReturn(kubernetesClient);
+        when(kubernetesService.getKnativeServiceVersion()).thenReturn(TEST_SERVICE_VERSION);
+        when(kubernetesClient.getCachedKnativeService(TEST_NAMESPACE, TEST_APP, TEST_SERVICE_VERSION))
+                .thenReturn(Mono.empty());
+
+        // Act
+        Mono<GetDeploymentResponseDto> actual = deployService.status(TEST_NAME);
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectErrorMatches(e -> e instanceof ResponseStatusException exception
+                        && exception.getStatusCode() == HttpStatus.NOT_FOUND)
+                .verify();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package com.epam.aidial.service;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DialFileServiceTest {
+    private static final String TEST_FOLDER = "files/bucket/app";
+    private static final String TEST_API_KEY = "test-api-key";
+
+    private final List<Request> requests = new ArrayList<>();
+
+    @Test
+    void testSourcesDigestIsListedWithCallerCredentials() {
+        // Arrange
+        DialFileService dialFileService = dialFileService(listing(item("app.py", "etag-1"), item("lib/util.py", "etag-2")));
+
+        // Act & Assert
+        StepVerifier.create(dialFileService.sourcesDigest(TEST_FOLDER, TEST_API_KEY, null))
+                .expectNext(DialFileService.digest(List.of(
+                        file("lib/util.py", "etag-2"),
+                        file("app.py", "etag-1"))))
+                .verifyComplete();
+        assertThat(requests).hasSize(1);
+        assertThat(requests.getFirst().header("Api-Key")).isEqualTo(TEST_API_KEY);
+        assertThat(requests.getFirst().url().encodedPath()).isEqualTo("/v1/metadata/files/bucket/app/");
+    }
+
+    @Test
+    void testSourcesDigestChangesWithContent() {
+        assertThat(DialFileService.digest(List.of(file("app.py", "etag-1"))))
+                .isNotEqualTo(DialFileService.digest(List.of(file("app.py", "etag-2"))))
+                .isNotEqualTo(DialFileService.digest(List.of(file("main.py", "etag-1"))));
+    }
+
+    @Test
+    void testNoSourcesDigestWithoutEtags() {
+        // Arrange
+        DialFileService dialFileService = dialFileService(listing(item("app.py", "etag-1"), item("requirements.txt", null)));
+
+        // Act & Assert
+        StepVerifier.create(dialFileService.sourcesDigest(TEST_FOLDER, TEST_API_KEY, null))
+                .verifyComplete();
+    }
+
+    @Test
+    void testDownload() {
+        // Arrange
+        DialFileService dialFileService = dialFileService(listing(item("app.py", "etag-1", 5)), Map.of("app.py", "print"));
+
+        // Act & Assert
+        StepVerifier.create(dialFileService.download(TEST_FOLDER, TEST_API_KEY, null, digest(file("app.py", "etag-1")), 5))
+                .assertNext(files -> assertThat(new String(files.get("app.py"), StandardCharsets.UTF_8)).isEqualTo("print"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testListedSourcesAboveLimitAreNotDownloaded() {
+        // Arrange
+        DialFileService dialFileService = dialFileService(
+                listing(item("app.py", "etag-1", 5), item("data.bin", "etag-2", 100)), Map.of("app.py", "print"));
+
+        // Act & Assert
+        StepVerifier.create(dialFileService.download(
+                        TEST_FOLDER, TEST_API_KEY, null, digest(file("app.py", "etag-1"), file("data.bin", "etag-2")), 10))
+                .verifyComplete();
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    void testChangedSourcesAreNotDownloaded() {
+        // Arrange
+        DialFileService dialFileService = dialFileService(listing(item("app.py", "etag-2", 5)), Map.of("app.py", "print"));
+
+        // Act & Assert
+        StepVerifier.create(dialFileService.download(TEST_FOLDER, TEST_API_KEY, null, digest(file("app.py", "etag-1")), 10))
+                .verifyComplete();
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    void testFileGrownAboveLimitIsNotRead() {
+        // Arrange
+        DialFileService dialFileService = dialFileService(listing(item("app.py", "etag-1", 5)), Map.of("app.py", "print('hello')"));
+
+        // Act & Assert
+        StepVerifier.create(dialFileService.download(TEST_FOLDER, TEST_API_KEY, null, digest(file("app.py", "etag-1")), 10))
+                .verifyError(IllegalStateException.class);
+    }
+
+    private DialFileService dialFileService(String listing) {
+        return dialFileService(listing, Map.of());
+    }
+
+    /**
+     * Serves the listing of the folder and the files, which are sent without their length like a chunked response.
+     */
+    private DialFileService dialFileService(String listing, Map<String, String> files) {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    requests.add(chain.request());
+                    String path = chain.request().url().encodedPath();
+                    String file = files.get(StringUtils.removeStart(path, "/v1/" + TEST_FOLDER + "/"));
+                    ResponseBody body = path.startsWith("/v1/metadata/")
+                            ? ResponseBody.create(listing, MediaType.get("application/json"))
+                            : ResponseBody.create(new Buffer().writeUtf8(file), null, -1);
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(body)
+                            .build();
+                })
+                .build();
+        return new DialFileService(client, "http://dial");
+    }
+
+    private static String digest(DialFileService.SourceFile... files) {
+        return DialFileService.digest(List.of(files));
+    }
+
+    private static DialFileService.SourceFile file(String path, String etag) {
+        return new DialFileService.SourceFile(path, null, etag, 0);
+    }
+
+    private static String listing(String... items) {
+        return "{\"items\":[{\"nodeType\":\"FOLDER\",\"url\":\"files/bucket/app/lib/\"},%s]}".formatted(String.join(",", items));
+    }
+
+    private static String item(String path, String etag) {
+        return item(path, etag, 0);
+    }
+
+    private static String item(String path, String etag, long contentLength) {
+        return "{\"nodeType\":\"ITEM\",\"url\":\"files/bucket/app/%s\",\"contentLength\":%d%s}"
+                .formatted(path, contentLength, etag == null ? "" : ",\"etag\":\"%s\"".formatted(etag));
+    }
+}
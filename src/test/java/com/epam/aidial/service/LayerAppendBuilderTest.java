@@ -0,0 +1,32 @@
+package com.epam.aidial.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LayerAppendBuilderTest {
+    private static final Set<String> INSTALLED = Set.of("aidial-sdk", "python-dotenv", "requests");
+
+    @Test
+    void testBareInstalledPackagesAreInstalled() {
+        assertThat(LayerAppendBuilder.isInstalled(bytes("aidial_sdk\n# comment\n\nRequests  # http\r\npython.dotenv\n"), INSTALLED))
+                .isTrue();
+        assertThat(LayerAppendBuilder.isInstalled(null, INSTALLED))
+                .isTrue();
+    }
+
+    @Test
+    void testOtherRequirementsAreNotInstalled() {
+        assertThat(LayerAppendBuilder.isInstalled(bytes("numpy\n"), INSTALLED)).isFalse();
+        assertThat(LayerAppendBuilder.isInstalled(bytes("requests==2.31.0\n"), INSTALLED)).isFalse();
+        assertThat(LayerAppendBuilder.isInstalled(bytes("requests[socks]\n"), INSTALLED)).isFalse();
+        assertThat(LayerAppendBuilder.isInstalled(bytes("-r other.txt\n"), INSTALLED)).isFalse();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
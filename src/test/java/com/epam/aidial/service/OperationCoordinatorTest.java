@@ -0,0 +1,118 @@
+package com.epam.aidial.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OperationCoordinatorTest {
+    private static final String TEST_RESOURCE = "image/test-name";
+
+    private final OperationCoordinator coordinator = new OperationCoordinator();
+
+    @Test
+    void testIdenticalRequestsAreCoalesced() {
+        // Arrange
+        AtomicInteger invocations = new AtomicInteger();
+        Sinks.One<String> result = Sinks.one();
+
+        // Act
+        Mono<String> first = coordinator.execute(TEST_RESOURCE, "build", () -> {
+            invocations.incrementAndGet();
+            return result.asMono();
+        });
+        Mono<String> second = coordinator.execute(TEST_RESOURCE, "build", () -> {
+            invocations.incrementAndGet();
+            return Mono.just("other");
+        });
+
+        // Assert
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> result.tryEmitValue("image"))
+                .assertNext(results -> assertThat(List.of(results.getT1(), results.getT2()))
+                        .isEqualTo(List.of("image", "image")))
+                .verifyComplete();
+        assertThat(invocations).hasValue(1);
+    }
+
+    @Test
+    void testConflictingRequestsAreSerialised() {
+        // Arrange
+        List<String> events = new ArrayList<>();
+        Sinks.One<String> build = Sinks.one();
+
+        // Act
+        Mono<String> first = coordinator.execute(TEST_RESOURCE, "build", () -> {
+            events.add("build started");
+            return build.asMono().doOnNext(events::add);
+        });
+        Mono<String> second = coordinator.execute(TEST_RESOURCE, "clean", () -> {
+            events.add("clean started");
+            return Mono.just("cleaned");
+        });
+
+        // Assert
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> assertThat(events).isEqualTo(List.of("build started")))
+                .then(() -> build.tryEmitValue("built"))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(events).isEqualTo(List.of("build started", "built", "clean started"));
+    }
+
+    @Test
+    void testFailedOperationDoesNotBlockNextOne() {
+        // Arrange
+        Mono<String> first = coordinator.execute(TEST_RESOURCE, "build", () -> Mono.error(new IllegalStateException("failed")));
+        Mono<String> second = coordinator.execute(TEST_RESOURCE, "clean", () -> Mono.just("cleaned"));
+
+        // Act & Assert
+        StepVerifier.create(first)
+                .verifyError(IllegalStateException.class);
+        StepVerifier.create(second)
+                .expectNext("cleaned")
+                .verifyComplete();
+    }
+
+    @Test
+    void testOtherResourcesAreNotBlocked() {
+        // Arrange
+        coordinator.execute(TEST_RESOURCE, "build", Mono::never).subscribe();
+
+        // Act
+        Mono<String> actual = coordinator.execute("image/other-name", "build", () -> Mono.just("image"));
+
+        // Assert
+        StepVerifier.create(actual)
+                .expectNext("image")
+                .verifyComplete();
+    }
+
+    @Test
+    void testOperationContinuesWhenCallerCancels() {
+        // Arrange
+        Sinks.One<String> result = Sinks.one();
+        AtomicInteger cancellations = new AtomicInteger();
+        Disposable first = coordinator.execute(TEST_RESOURCE, "build", () -> result.asMono()
+                        .doOnCancel(cancellations::incrementAndGet))
+                .subscribe();
+
+        // Act
+        first.dispose();
+        Mono<String> second = coordinator.execute(TEST_RESOURCE, "build", () -> Mono.just("other"));
+
+        // Assert
+        StepVerifier.create(second)
+                .then(() -> result.tryEmitValue("image"))
+                .expectNext("image")
+                .verifyComplete();
+        assertThat(cancellations).hasValue(0);
+    }
+}
@@ -0,0 +1,222 @@
+package com.epam.aidial.service;
+
+import com.epam.aidial.config.DockerAuthScheme;
+import com.epam.aidial.util.LayerUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegistryServiceTest {
+    private static final String OCI_MANIFEST = "application/vnd.oci.image.manifest.v1+json";
+    private static final String BASE_REPOSITORY = "app-base-image";
+    private static final String BASE_LAYER = "sha256:base-layer";
+    private static final String BASE_DIFF_ID = "sha256:base-diff-id";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final FakeRegistry registry = new FakeRegistry();
+    private RegistryService registryService;
+
+    @BeforeEach
+    void setUp() {
+        registryService = new RegistryService(
+                new OkHttpClient.Builder().addInterceptor(registry).build(),
+                new SimpleMeterRegistry(),
+                "test-registry",
+                URI.create("https"),
+                "app-%s",
+                "latest",
+                "app-build-cache",
+                BASE_REPOSITORY,
+                DockerAuthScheme.NONE,
+                null,
+                null,
+                10,
+                300);
+        registryService.initialize();
+    }
+
+    @Test
+    void testAppendLayer() throws IOException {
+        // Arrange
+        String baseDigest = pushBaseImage();
+        LayerUtils.Layer layer = LayerUtils.layer("/app", Map.of("app.py", "print('hello')\n".getBytes(StandardCharsets.UTF_8)));
+
+        // Act & Assert
+        StepVerifier.create(registryService.appendLayer("test", baseDigest, layer, "/app", List.of("python", "app.py")))
+                .expectNext(true)
+                .verifyComplete();
+
+        FakeRegistry.Blob manifestBlob = registry.manifests.get("app-test:latest");
+        assertThat(manifestBlob.mediaType()).isEqualTo(OCI_MANIFEST);
+        JsonNode manifest = MAPPER.readTree(manifestBlob.content());
+        assertThat(manifest.path("layers")).hasSize(2);
+        assertThat(manifest.path("layers").get(1).path("digest").asText()).isEqualTo(layer.digest());
+        assertThat(manifest.path("layers").get(1).path("mediaType").asText()).isEqualTo("application/vnd.oci.image.layer.v1.tar+gzip");
+        assertThat(registry.blobs).containsKeys("app-test@" + BASE_LAYER, "app-test@" + layer.digest());
+        assertThat(registry.uploads).isEmpty();
+
+        JsonNode config = MAPPER.readTree(registry.blobs.get("app-test@" + manifest.path("config").path("digest").asText()));
+        assertThat(config.path("rootfs").path("diff_ids").get(1).asText()).isEqualTo(layer.diffId());
+        assertThat(config.path("history")).hasSize(2);
+        assertThat(config.path("config").path("WorkingDir").asText()).isEqualTo("/app");
+        assertThat(config.path("config").path("Cmd").toString()).isEqualTo("[\"python\",\"app.py\"]");
+        assertThat(config.path("config").path("Env").get(0).asText()).isEqualTo("PATH=/usr/bin");
+
+        // The digest of the pushed manifest is cached
+        int requests = registry.requests;
+        StepVerifier.create(registryService.getDigest("test"))
+                .expectNext("sha256:" + DigestUtils.sha256Hex(manifestBlob.content()))
+                .verifyComplete();
+        assertThat(registry.requests).isEqualTo(requests);
+    }
+
+    @Test
+    void testAppendLayerWithoutMountableBaseLayers() throws IOException {
+        // Arrange
+        String baseDigest = pushBaseImage();
+        registry.blobs.remove(BASE_REPOSITORY + "@" + BASE_LAYER);
+        LayerUtils.Layer layer = LayerUtils.layer("/app", Map.of("app.py", new byte[0]));
+
+        // Act & Assert
+        StepVerifier.create(registryService.appendLayer("test", baseDigest, layer, "/app", null))
+                .expectNext(false)
+                .verifyComplete();
+        assertThat(registry.manifests).doesNotContainKey("app-test:latest");
+        // The upload started by the registry in place of the mount is cancelled
+        assertThat(registry.uploads).isEmpty();
+    }
+
+    private String pushBaseImage() {
+        byte[] config = ("{\"config\":{\"Env\":[\"PATH=/usr/bin\"],\"Cmd\":[\"python3\"]},"
+                + "\"rootfs\":{\"type\":\"layers\",\"diff_ids\":[\"%s\"]},"
+                + "\"history\":[{\"created_by\":\"base\"}]}").formatted(BASE_DIFF_ID).getBytes(StandardCharsets.UTF_8);
+        String configDigest = "sha256:" + DigestUtils.sha256Hex(config);
+        byte[] manifest = ("{\"schemaVersion\":2,\"mediaType\":\"%s\","
+                + "\"config\":{\"mediaType\":\"application/vnd.oci.image.config.v1+json\",\"digest\":\"%s\",\"size\":%d},"
+                + "\"layers\":[{\"mediaType\":\"application/vnd.oci.image.layer.v1.tar+gzip\",\"digest\":\"%s\",\"size\":1}]}")
+                .formatted(OCI_MANIFEST, configDigest, config.length, BASE_LAYER).getBytes(StandardCharsets.UTF_8);
+        String digest = "sha256:" + DigestUtils.sha256Hex(manifest);
+        registry.blobs.put(BASE_REPOSITORY + "@" + configDigest, config);
+        registry.blobs.put(BASE_REPOSITORY + "@" + BASE_LAYER, new byte[] {1});
+        registry.manifests.put(BASE_REPOSITORY + ":" + digest, new FakeRegistry.Blob(OCI_MANIFEST, manifest));
+        return digest;
+    }
+
+    /**
+     * Serves the part of the registry API used to push images, keeping blobs and manifests in memory.
+     */
+    private static class FakeRegistry implements Interceptor {
+        private static final Pattern MANIFEST_PATH = Pattern.compile("/v2/([^/]+)/manifests/([^/]+)");
+        private static final Pattern BLOB_PATH = Pattern.compile("/v2/([^/]+)/blobs/([^/]+)");
+        private static final Pattern UPLOAD_PATH = Pattern.compile("/v2/([^/]+)/blobs/uploads/([^/]*)");
+
+        // Repository@digest to content
+        private final Map<String, byte[]> blobs = new HashMap<>();
+        // Repository:reference to manifest
+        private final Map<String, Blob> manifests = new HashMap<>();
+        // Uploads started and neither completed nor cancelled
+        private final Set<String> uploads = new HashSet<>();
+        private int requests;
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            requests++;
+            Request request = chain.request();
+            String path = request.url().encodedPath();
+            Matcher upload = UPLOAD_PATH.matcher(path);
+            Matcher blob = BLOB_PATH.matcher(path);
+            Matcher manifest = MANIFEST_PATH.matcher(path);
+            if (upload.matches() && request.method().equals("POST")) {
+                String mount = request.url().queryParameter("mount");
+                if (mount != null && blobs.containsKey(request.url().queryParameter("from") + "@" + mount)) {
+                    blobs.put(upload.group(1) + "@" + mount, blobs.get(request.url().queryParameter("from") + "@" + mount));
+                    return response(request, 201, null, new byte[0]);
+                }
+                String session = UUID.randomUUID().toString();
+                uploads.add(session);
+                return response(request, 202, null, new byte[0]).newBuilder()
+                        .header("Location", "/v2/%s/blobs/uploads/%s?state=test".formatted(upload.group(1), session))
+                        .build();
+            }
+            if (upload.matches() && request.method().equals("DELETE")) {
+                return response(request, uploads.remove(upload.group(2)) ? 204 : 404, null, new byte[0]);
+            }
+            if (upload.matches() && request.method().equals("PUT")) {
+                byte[] content = body(request);
+                String digest = request.url().queryParameter("digest");
+                if (!("sha256:" + DigestUtils.sha256Hex(content)).equals(digest) || request.url().queryParameter("state") == null) {
+                    return response(request, 400, null, new byte[0]);
+                }
+                blobs.put(upload.group(1) + "@" + digest, content);
+                uploads.remove(upload.group(2));
+                return response(request, 201, null, new byte[0]);
+            }
+            if (blob.matches() && request.method().equals("GET")) {
+                byte[] content = blobs.get(blob.group(1) + "@" + blob.group(2));
+                return content == null
+                        ? response(request, 404, null, new byte[0])
+                        : response(request, 200, "application/octet-stream", content);
+            }
+            if (manifest.matches() && request.method().equals("GET")) {
+                Blob content = manifests.get(manifest.group(1) + ":" + manifest.group(2));
+                return content == null
+                        ? response(request, 404, null, new byte[0])
+                        : response(request, 200, content.mediaType(), content.content());
+            }
+            if (manifest.matches() && request.method().equals("PUT")) {
+                manifests.put(manifest.group(1) + ":" + manifest.group(2),
+                        new Blob(request.body().contentType().toString(), body(request)));
+                return response(request, 201, null, new byte[0]);
+            }
+            return response(request, 404, null, new byte[0]);
+        }
+
+        private static byte[] body(Request request) throws IOException {
+            Buffer buffer = new Buffer();
+            request.body().writeTo(buffer);
+            return buffer.readByteArray();
+        }
+
+        private static Response response(Request request, int code, String contentType, byte[] content) {
+            Response.Builder response = new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message(String.valueOf(code))
+                    .body(ResponseBody.create(content, contentType == null ? null : MediaType.get(contentType)));
+            if (contentType != null) {
+                response.header("Content-Type", contentType);
+            }
+            return response.build();
+        }
+
+        private record Blob(String mediaType, byte[] content) {
+        }
+    }
+}
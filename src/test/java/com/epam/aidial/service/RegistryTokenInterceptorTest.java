@@ -0,0 +1,226 @@
+package com.epam.aidial.service;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegistryTokenInterceptorTest {
+    private static final String CHALLENGE =
+            "Bearer realm=\"https://auth.example.com/token\",service=\"registry.example.com\",scope=\"repository:app:pull\"";
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Test
+    void testTokenIsCachedForScope() throws Exception {
+        // Arrange
+        List<Request> tokenRequests = new ArrayList<>();
+        OkHttpClient tokenClient = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    tokenRequests.add(chain.request());
+                    return response(chain, 200, "{\"token\":\"secret\",\"expires_in\":300}");
+                })
+                .build();
+        List<Request> registryRequests = new ArrayList<>();
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new RegistryTokenInterceptor(
+                        tokenClient, "user", "password", Clock.fixed(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC)))
+                .addInterceptor(chain -> {
+                    registryRequests.add(chain.request());
+                    return "Bearer secret".equals(chain.request().header("Authorization"))
+                            ? response(chain, 200, "")
+                            : response(chain, 401, "").newBuilder().header("WWW-Authenticate", CHALLENGE).build();
+                })
+                .build();
+        Request request = new Request.Builder().head().url("https://registry.example.com/v2/app/manifests/latest").build();
+
+        // Act
+        int first;
+        try (Response response = client.newCall(request).execute()) {
+            first = response.code();
+        }
+        int second;
+        try (Response response = client.newCall(request).execute()) {
+            second = response.code();
+        }
+
+        // Assert
+        assertThat(first).isEqualTo(200);
+        assertThat(second).isEqualTo(200);
+        assertThat(tokenRequests).hasSize(1);
+        assertThat(tokenRequests.get(0).url().toString())
+                .isEqualTo("https://auth.example.com/token?service=registry.example.com&scope=repository%3Aapp%3Apull%2Cpush");
+        assertThat(tokenRequests.get(0).header("Authorization")).startsWith("Basic ");
+        assertThat(registryRequests).hasSize(3);
+    }
+
+    @Test
+    void testTokenIsGotBeforeRequestOnceTokenServiceIsKnown() throws Exception {
+        // Arrange
+        List<Request> tokenRequests = new ArrayList<>();
+        OkHttpClient tokenClient = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    tokenRequests.add(chain.request());
+                    return response(chain, 200, "{\"token\":\"secret\",\"expires_in\":300}");
+                })
+                .build();
+        List<Request> registryRequests = new ArrayList<>();
+        OkHttpClient client = registryClient(tokenClient, new MutableClock(), registryRequests);
+
+        // Act
+        try (Response response = client.newCall(manifestRequest("app")).execute()) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+        int code;
+        try (Response response = client.newCall(manifestRequest("other")).execute()) {
+            code = response.code();
+        }
+
+        // Assert
+        assertThat(code).isEqualTo(200);
+        assertThat(tokenRequests).hasSize(2);
+        assertThat(tokenRequests.get(1).url().queryParameter("scope")).isEqualTo("repository:other:pull,push");
+        assertThat(registryRequests).hasSize(3);
+    }
+
+    @Test
+    void testExpiredTokenIsRefreshedOnce() throws Exception {
+        // Arrange
+        AtomicInteger tokenRequests = new AtomicInteger();
+        OkHttpClient tokenClient = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    int count = tokenRequests.incrementAndGet();
+                    try {
+                        // Slow enough for the concurrent requests to find the token request in flight
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return response(chain, 200, "{\"token\":\"secret-%d\",\"expires_in\":300}".formatted(count));
+                })
+                .build();
+        MutableClock clock = new MutableClock();
+        List<Request> registryRequests = new CopyOnWriteArrayList<>();
+        OkHttpClient client = registryClient(tokenClient, clock, registryRequests);
+        try (Response response = client.newCall(manifestRequest("app")).execute()) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+        clock.instant = NOW.plusSeconds(225);
+
+        // Act
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<Future<Integer>> codes = new ArrayList<>();
+        try {
+            for (int i = 0; i < 5; i++) {
+                codes.add(executor.submit(() -> {
+                    try (Response response = client.newCall(manifestRequest("app")).execute()) {
+                        return response.code();
+                    }
+                }));
+            }
+            for (Future<Integer> code : codes) {
+                assertThat(code.get(10, TimeUnit.SECONDS)).isEqualTo(200);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Assert
+        assertThat(tokenRequests).hasValue(2);
+        assertThat(registryRequests.subList(2, registryRequests.size()))
+                .allSatisfy(request -> assertThat(request.header("Authorization")).isEqualTo("Bearer secret-2"));
+    }
+
+    @Test
+    void testParseChallenge() {
+        assertThat(RegistryTokenInterceptor.parseChallenge(CHALLENGE)).isEqualTo(Map.of(
+                "realm", "https://auth.example.com/token",
+                "service", "registry.example.com",
+                "scope", "repository:app:pull"));
+        assertThat(RegistryTokenInterceptor.parseChallenge("Basic realm=\"registry\"")).isNull();
+        assertThat(RegistryTokenInterceptor.parseChallenge(null)).isNull();
+    }
+
+    @Test
+    void testScope() {
+        Request manifest = new Request.Builder().get().url("https://registry.example.com/v2/app/manifests/latest").build();
+        Request blob = new Request.Builder().head().url("https://registry.example.com/v2/app/blobs/sha256:abc").build();
+        Request mount = new Request.Builder()
+                .post(RequestBody.create(new byte[0]))
+                .url("https://registry.example.com/v2/app/blobs/uploads/?mount=sha256:abc&from=base")
+                .build();
+
+        Request ping = new Request.Builder().get().url("https://registry.example.com/v2/").build();
+
+        assertThat(RegistryTokenInterceptor.scope(manifest)).isEqualTo("repository:app:pull,push");
+        assertThat(RegistryTokenInterceptor.scope(blob)).isEqualTo("repository:app:pull,push");
+        assertThat(RegistryTokenInterceptor.scope(mount)).isEqualTo("repository:app:pull,push repository:base:pull");
+        assertThat(RegistryTokenInterceptor.scope(ping)).isEmpty();
+    }
+
+    private static OkHttpClient registryClient(OkHttpClient tokenClient, Clock clock, List<Request> registryRequests) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(new RegistryTokenInterceptor(tokenClient, "user", "password", clock))
+                .addInterceptor(chain -> {
+                    registryRequests.add(chain.request());
+                    String authorization = chain.request().header("Authorization");
+                    return authorization != null && authorization.startsWith("Bearer secret")
+                            ? response(chain, 200, "")
+                            : response(chain, 401, "").newBuilder().header("WWW-Authenticate", CHALLENGE).build();
+                })
+                .build();
+    }
+
+    private static Request manifestRequest(String repository) {
+        return new Request.Builder().head().url("https://registry.example.com/v2/%s/manifests/latest".formatted(repository)).build();
+    }
+
+    private static Response response(Interceptor.Chain chain, int code, String body) {
+        return new Response.Builder()
+                .request(chain.request())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Unauthorized")
+                .body(ResponseBody.create(body, MediaType.get("application/json")))
+                .build();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = NOW;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.epam.aidial.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpiringCacheTest {
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Test
+    void testEntriesExpire() {
+        MutableClock clock = new MutableClock();
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10, Duration.ofSeconds(10), clock);
+        cache.put("key", "value");
+
+        clock.instant = NOW.plusSeconds(9);
+        String fresh = cache.get("key");
+        clock.instant = NOW.plusSeconds(10);
+        String expired = cache.get("key");
+
+        assertThat(fresh).isEqualTo("value");
+        assertThat(expired).isNull();
+    }
+
+    @Test
+    void testEntriesExpireAfterTheirOwnTtl() {
+        MutableClock clock = new MutableClock();
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10, Duration.ofSeconds(10), clock);
+        cache.put("key", "value", Duration.ofSeconds(30));
+
+        clock.instant = NOW.plusSeconds(29);
+        String fresh = cache.get("key");
+        clock.instant = NOW.plusSeconds(30);
+        String expired = cache.get("key");
+
+        assertThat(fresh).isEqualTo("value");
+        assertThat(expired).isNull();
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(2, Duration.ofSeconds(10));
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+
+        cache.put("c", "3");
+
+        assertThat(cache.get("a")).isEqualTo("1");
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("c")).isEqualTo("3");
+    }
+
+    @Test
+    void testEntriesAreInvalidated() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10, Duration.ofSeconds(10));
+        cache.put("key", "value");
+
+        cache.invalidate("key");
+
+        assertThat(cache.get("key")).isNull();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = NOW;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.epam.aidial.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LayerUtilsTest {
+    @Test
+    void testLayerListsDirectoriesBeforeFiles() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("lib/util.py", "pass\n".getBytes(StandardCharsets.UTF_8));
+        files.put("app.py", "print('hello')\n".getBytes(StandardCharsets.UTF_8));
+
+        LayerUtils.Layer layer = LayerUtils.layer("/app", files);
+
+        byte[] tar = gunzip(layer.content());
+        assertThat(entries(tar)).containsExactly(
+                Map.entry("app/", ""),
+                Map.entry("app/app.py", "print('hello')\n"),
+                Map.entry("app/lib/", ""),
+                Map.entry("app/lib/util.py", "pass\n"));
+        assertThat(layer.digest()).isEqualTo("sha256:" + DigestUtils.sha256Hex(layer.content()));
+        assertThat(layer.diffId()).isEqualTo("sha256:" + DigestUtils.sha256Hex(tar));
+    }
+
+    @Test
+    void testSameFilesMakeSameLayer() throws IOException {
+        Map<String, byte[]> first = new LinkedHashMap<>();
+        first.put("a.py", new byte[] {1});
+        first.put("b.py", new byte[] {2});
+        Map<String, byte[]> second = new LinkedHashMap<>();
+        second.put("b.py", new byte[] {2});
+        second.put("a.py", new byte[] {1});
+
+        assertThat(LayerUtils.layer("/app", first).digest()).isEqualTo(LayerUtils.layer("/app", second).digest());
+    }
+
+    @Test
+    void testLongPathIsSplit() throws IOException {
+        String directory = "d".repeat(60) + "/" + "e".repeat(60);
+        Map<String, byte[]> files = Map.of(directory + "/app.py", new byte[0]);
+
+        LayerUtils.Layer layer = LayerUtils.layer("/app", files);
+
+        assertThat(entries(gunzip(layer.content()))).containsKey("app/%s/app.py".formatted(directory));
+    }
+
+    @Test
+    void testTooLongPathIsRejected() {
+        Map<String, byte[]> files = Map.of("f".repeat(101), new byte[0]);
+
+        assertThatThrownBy(() -> LayerUtils.layer("/app", files))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] gunzip(byte[] content) throws IOException {
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static Map<String, String> entries(byte[] tar) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        int offset = 0;
+        while (tar[offset] != 0) {
+            String name = field(tar, offset, 100);
+            String prefix = field(tar, offset + 345, 155);
+            int size = Integer.parseInt(field(tar, offset + 124, 12), 8);
+            String path = prefix.isEmpty() ? name : prefix + "/" + name;
+            entries.put(path, new String(tar, offset + 512, size, StandardCharsets.UTF_8));
+            offset += 512 + (size + 511) / 512 * 512;
+        }
+        return entries;
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+}
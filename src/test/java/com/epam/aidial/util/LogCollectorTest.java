@@ -0,0 +1,115 @@
+package com.epam.aidial.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogCollectorTest {
+    private static final Instant FIRST = Instant.parse("2024-01-01T00:00:01Z");
+    private static final Instant SECOND = Instant.parse("2024-01-01T00:00:02Z");
+    private static final Instant THIRD = Instant.parse("2024-01-01T00:00:03.5Z");
+
+    @Test
+    void testTimestampsAreStripped() {
+        LogCollector collector = new LogCollector(null, null);
+
+        collector.accept(FIRST + " a\n");
+        collector.accept(SECOND + " b\n");
+
+        assertThat(collector.content()).isEqualTo("a\nb\n");
+        assertThat(collector.last()).isEqualTo(SECOND);
+    }
+
+    @Test
+    void testLinesUpToCursorAreSkipped() {
+        LogCollector collector = new LogCollector(SECOND, null);
+
+        collector.accept(FIRST + " a\n");
+        collector.accept(SECOND + " b\n");
+        collector.accept(THIRD + " c\n");
+
+        assertThat(collector.content()).isEqualTo("c\n");
+        assertThat(collector.last()).isEqualTo(THIRD);
+    }
+
+    @Test
+    void testLinesBeforeSinceAreSkipped() {
+        LogCollector collector = new LogCollector(null, SECOND);
+
+        collector.accept(FIRST + " a\n");
+        collector.accept(SECOND + " b\n");
+
+        assertThat(collector.content()).isEqualTo("b\n");
+    }
+
+    @Test
+    void testSplitLinesAreSkippedWhole() {
+        LogCollector collector = new LogCollector(FIRST, null);
+
+        collector.accept(FIRST + " long");
+        collector.accept(" line\n");
+        collector.accept(SECOND + " sp");
+        collector.accept("lit\n");
+
+        assertThat(collector.content()).isEqualTo("split\n");
+    }
+
+    @Test
+    void testLimitOnlyCountsCollectedLines() {
+        LogCollector collector = new LogCollector(FIRST, null, 4);
+
+        collector.accept(FIRST + " skipped line\n");
+        collector.accept(SECOND + " b\n");
+        collector.accept(THIRD + " c\n");
+
+        assertThat(collector.content()).isEqualTo("b\nc\n");
+        assertThat(collector.last()).isEqualTo(THIRD);
+        assertThat(collector.isFull()).isFalse();
+    }
+
+    @Test
+    void testLineBeyondLimitIsNotCollected() {
+        LogCollector collector = new LogCollector(null, null, 4);
+
+        collector.accept(FIRST + " a\n");
+        collector.accept(SECOND + " bcd\n");
+        collector.accept(THIRD + " e\n");
+
+        assertThat(collector.content()).isEqualTo("a\n");
+        assertThat(collector.last()).isEqualTo(FIRST);
+        assertThat(collector.isFull()).isTrue();
+    }
+
+    @Test
+    void testLineLongerThanLimitIsTruncated() {
+        LogCollector collector = new LogCollector(null, null, 4);
+
+        collector.accept(FIRST + " abcdef\n");
+
+        assertThat(collector.content()).isEqualTo("abcd");
+        assertThat(collector.last()).isEqualTo(FIRST);
+    }
+
+    @Test
+    void testIncompleteLineIsNotCollected() {
+        LogCollector collector = new LogCollector(null, null);
+
+        collector.accept(FIRST + " a\n");
+        collector.accept(SECOND + " partial");
+
+        assertThat(collector.content()).isEqualTo("a\n");
+        assertThat(collector.last()).isEqualTo(FIRST);
+    }
+
+    @Test
+    void testCursorIsKeptWithoutNewLines() {
+        LogCollector collector = new LogCollector(SECOND, null);
+
+        collector.accept(SECOND + " b\n");
+
+        assertThat(collector.content()).isEmpty();
+        assertThat(collector.last()).isEqualTo(SECOND);
+    }
+}
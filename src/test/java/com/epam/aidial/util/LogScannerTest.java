@@ -0,0 +1,55 @@
+package com.epam.aidial.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogScannerTest {
+    private static final String MARKER = "Error: ";
+
+    @Test
+    void testTailMatchesTruncatedText() {
+        String input = "first line\nsecond line\n\nthird line\nfourth line\n";
+        LogScanner scanner = new LogScanner(MARKER, 2, 30);
+
+        for (int i = 0; i < input.length(); i += 3) {
+            scanner.accept(input.substring(i, Math.min(input.length(), i + 3)));
+        }
+
+        assertThat(scanner.message()).isNull();
+        assertThat(scanner.tail()).isEqualTo(TextUtils.truncateText(input, 2, 30));
+    }
+
+    @Test
+    void testTailOfShortLog() {
+        LogScanner scanner = new LogScanner(MARKER, 5, 100);
+
+        scanner.accept("a\n");
+        scanner.accept("b");
+
+        assertThat(scanner.tail()).isEqualTo("a\nb");
+    }
+
+    @Test
+    void testMarkerSplitBetweenChunks() {
+        LogScanner scanner = new LogScanner(MARKER, 5, 100);
+
+        scanner.accept("log\nErr");
+        scanner.accept("or: invalid");
+        scanner.accept(" package\n");
+
+        assertThat(scanner.message()).isEqualTo("invalid package\n");
+        assertThat(scanner.isComplete()).isFalse();
+    }
+
+    @Test
+    void testMessageIsLimited() {
+        LogScanner scanner = new LogScanner(MARKER, 5, 5);
+
+        scanner.accept("Error: 1234");
+        scanner.accept("5678");
+
+        assertThat(scanner.message()).isEqualTo("12345");
+        assertThat(scanner.isComplete()).isTrue();
+    }
+}
@@ -0,0 +1,79 @@
+package com.epam.aidial.util;
+
+import okio.Buffer;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LogUtilsTest {
+    @Test
+    void testLinesAreReadWithLineBreaks() throws IOException {
+        Buffer input = new Buffer().writeUtf8("a\r\nb\nc");
+
+        List<String> output = readChunks(input, 10);
+
+        assertThat(output).isEqualTo(List.of("a\r\n", "b\n", "c"));
+    }
+
+    @Test
+    void testLongLinesAreSplit() throws IOException {
+        Buffer input = new Buffer().writeUtf8("abcde\nf\n");
+
+        List<String> output = readChunks(input, 2);
+
+        assertThat(output).isEqualTo(List.of("ab", "cd", "e\n", "f\n"));
+    }
+
+    @Test
+    void testMultibyteCharactersAreNotSplit() throws IOException {
+        Buffer input = new Buffer().writeUtf8("aжb");
+
+        List<String> output = readChunks(input, 2);
+
+        assertThat(output).isEqualTo(List.of("a", "ж", "b"));
+    }
+
+    @Test
+    void testLogEntryIsEscaped() {
+        byte[] line = "\"quoted\" \\ \tж\r\n".getBytes(StandardCharsets.UTF_8);
+
+        byte[] output = LogUtils.encodeLogEntry("pod", line);
+
+        assertThat(new String(output, StandardCharsets.UTF_8))
+                .isEqualTo("{\"instance\":\"pod\",\"content\":\"\\\"quoted\\\" \\\\ \\" + "u0009ж\"}\n");
+    }
+
+    @Test
+    void testCursorIsDecoded() {
+        Instant timestamp = Instant.parse("2024-01-01T00:00:00.123456789Z");
+
+        String cursor = LogUtils.encodeCursor("pod", timestamp);
+
+        assertThat(LogUtils.decodeCursor(cursor)).isEqualTo(Pair.of("pod", timestamp));
+    }
+
+    @Test
+    void testInvalidCursorIsRejected() {
+        assertThatThrownBy(() -> LogUtils.decodeCursor("cG9kIHRpbWU"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> LogUtils.decodeCursor("!"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<String> readChunks(Buffer input, long maxBytes) throws IOException {
+        List<String> chunks = new ArrayList<>();
+        String chunk;
+        while ((chunk = LogUtils.readChunk(input, maxBytes)) != null) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}